@@ -1 +1,18 @@
 # Add project specific ProGuard rules here.
+
+# MediaFile was stored as Gson JSON keyed by field name, so its fields keep their names
+# for reading and writing that format.
+-keepclassmembers class com.uici.lecturmultimedia.MediaFile {
+    <fields>;
+    <init>(...);
+}
+
+# Gson reads generic signatures and annotations reflectively.
+-keepattributes Signature, *Annotation*, EnclosingMethod, InnerClasses
+-keep class * extends com.google.gson.TypeAdapter
+-keep class * implements com.google.gson.TypeAdapterFactory
+-keep class * implements com.google.gson.JsonSerializer
+-keep class * implements com.google.gson.JsonDeserializer
+-keepclassmembers,allowobfuscation class * {
+    @com.google.gson.annotations.SerializedName <fields>;
+}
@@ -0,0 +1,40 @@
+package com.uici.lecturmultimedia;
+
+import android.media.MediaDataSource;
+import android.util.Log;
+import java.io.IOException;
+
+// Feeds MediaPlayer from a CachingHttpReader and logs how well buffering kept up when the
+// player lets go of it.
+public class CachingHttpDataSource extends MediaDataSource {
+    private static final String TAG = "PlaybackBuffering";
+
+    private final CachingHttpReader reader;
+
+    public CachingHttpDataSource(CachingHttpReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public int readAt(long position, byte[] buffer, int offset, int size) throws IOException {
+        if (size == 0) {
+            return 0;
+        }
+        return reader.readAt(position, buffer, offset, size);
+    }
+
+    @Override
+    public long getSize() throws IOException {
+        return reader.getSize();
+    }
+
+    @Override
+    public void close() {
+        reader.close();
+        Log.i(TAG, "segments from cache " + reader.getCacheHitCount()
+            + ", from network " + reader.getNetworkFetchCount()
+            + " (" + reader.getNetworkBytes() / 1024 + " KB), stalled "
+            + reader.getTotalStallNanos() / 1_000_000 + " ms, longest "
+            + reader.getMaxStallNanos() / 1_000_000 + " ms");
+    }
+}
@@ -0,0 +1,284 @@
+package com.uici.lecturmultimedia;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Random access reads over an http(s) URL, one fixed-size segment at a time. Segments are
+// fetched with Range requests and kept in a SegmentCache, so replays and seeks into parts
+// that were downloaded before don't touch the network. After each segment the next one is
+// fetched in the background, which keeps sequential playback ahead of the decoder.
+public class CachingHttpReader implements Closeable {
+    public static final int SEGMENT_SIZE = 256 * 1024;
+
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 15_000;
+    // The total length is cached next to the segments under this index.
+    private static final long SIZE_INDEX = -1;
+    private static final long SIZE_NOT_LOADED = -2;
+
+    // Across every reader, where the per-reader figures below are logged on close.
+    private static final Telemetry.Histogram STALL_TIME = Telemetry.histogram("http.stall");
+    private static final Telemetry.Counter CACHE_HITS = Telemetry.counter("http.segment_cache_hit");
+    private static final Telemetry.Counter NETWORK_FETCHES = Telemetry.counter("http.segment_fetch");
+    private static final Telemetry.Counter NETWORK_BYTES = Telemetry.counter("http.bytes_fetched");
+
+    private static final ExecutorService prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "media-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String url;
+    private final String key;
+    private final SegmentCache cache;
+    private final byte[] segment = new byte[SEGMENT_SIZE];
+    private final byte[] prefetchBuffer = new byte[SEGMENT_SIZE];
+    private long segmentIndex = -1;
+    private int segmentLength;
+    private volatile long size = SIZE_NOT_LOADED;
+    private Future<?> prefetch;
+    private long prefetchIndex = -1;
+
+    private volatile long cacheHits;
+    // Also updated by the prefetch thread.
+    private final AtomicLong networkFetches = new AtomicLong();
+    private final AtomicLong networkBytes = new AtomicLong();
+    private volatile long totalStallNanos;
+    private volatile long maxStallNanos;
+
+    public CachingHttpReader(String url, SegmentCache cache) {
+        this.url = url;
+        this.key = cacheKey(url);
+        this.cache = cache;
+    }
+
+    // Returns the number of bytes read, or -1 at the end of the resource.
+    public synchronized int readAt(long position, byte[] buffer, int offset, int count) throws IOException {
+        long length = getSize();
+        if (length >= 0 && position >= length) {
+            return -1;
+        }
+        long index = position / SEGMENT_SIZE;
+        if (index != segmentIndex && !loadSegment(index)) {
+            return -1;
+        }
+        int start = (int) (position - index * SEGMENT_SIZE);
+        if (start >= segmentLength) {
+            return -1;
+        }
+        int read = Math.min(count, segmentLength - start);
+        System.arraycopy(segment, start, buffer, offset, read);
+        return read;
+    }
+
+    // Total length in bytes, or -1 when the server doesn't tell.
+    public synchronized long getSize() throws IOException {
+        if (size == SIZE_NOT_LOADED) {
+            byte[] stored = new byte[Long.BYTES];
+            if (cache.read(key, SIZE_INDEX, stored) == Long.BYTES) {
+                size = ByteBuffer.wrap(stored).getLong();
+            } else {
+                // The first segment's response carries the length.
+                long start = System.nanoTime();
+                segmentLength = fetch(0, segment);
+                segmentIndex = 0;
+                recordStall(System.nanoTime() - start);
+                storeSegment(0, segment, segmentLength);
+            }
+        }
+        return size;
+    }
+
+    public long getCacheHitCount() {
+        return cacheHits;
+    }
+
+    public long getNetworkFetchCount() {
+        return networkFetches.get();
+    }
+
+    public long getNetworkBytes() {
+        return networkBytes.get();
+    }
+
+    // Time readAt spent blocked on the network, the part of playback that can stall.
+    public long getTotalStallNanos() {
+        return totalStallNanos;
+    }
+
+    public long getMaxStallNanos() {
+        return maxStallNanos;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (prefetch != null) {
+            prefetch.cancel(true);
+            prefetch = null;
+        }
+    }
+
+    private boolean loadSegment(long index) throws IOException {
+        long start = System.nanoTime();
+        if (index == prefetchIndex && prefetch != null) {
+            try {
+                prefetch.get();
+            } catch (ExecutionException e) {
+                // Fetched again below.
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while buffering " + url, e);
+            }
+        }
+
+        int length = cache.read(key, index, segment);
+        if (length >= 0) {
+            cacheHits++;
+            CACHE_HITS.increment();
+            if (index == prefetchIndex) {
+                recordStall(System.nanoTime() - start);
+            }
+        } else {
+            length = fetch(index, segment);
+            recordStall(System.nanoTime() - start);
+            storeSegment(index, segment, length);
+        }
+        if (length <= 0) {
+            return false;
+        }
+        segmentIndex = index;
+        segmentLength = length;
+        prefetchAfter(index);
+        return true;
+    }
+
+    private void prefetchAfter(long index) {
+        long next = index + 1;
+        if ((size >= 0 && next * SEGMENT_SIZE >= size) || next == prefetchIndex
+            || (prefetch != null && !prefetch.isDone()) || cache.contains(key, next)) {
+            return;
+        }
+        prefetchIndex = next;
+        prefetch = prefetcher.submit(() -> {
+            int length = fetch(next, prefetchBuffer);
+            storeSegment(next, prefetchBuffer, length);
+            return null;
+        });
+    }
+
+    // Only complete segments are cached: full ones, or the last one of a known length.
+    private void storeSegment(long index, byte[] data, int length) throws IOException {
+        if (length == SEGMENT_SIZE || (length > 0 && size >= 0 && index * SEGMENT_SIZE + length == size)) {
+            cache.put(key, index, data, length);
+        }
+    }
+
+    private int fetch(long index, byte[] dest) throws IOException {
+        long from = index * SEGMENT_SIZE;
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setRequestProperty("Range", "bytes=" + from + "-" + (from + SEGMENT_SIZE - 1));
+        try {
+            int code = connection.getResponseCode();
+            if (code == 416) {
+                return 0;
+            }
+            if (code != HttpURLConnection.HTTP_PARTIAL && code != HttpURLConnection.HTTP_OK) {
+                throw new IOException("HTTP " + code + " for " + url);
+            }
+            try (InputStream in = connection.getInputStream()) {
+                if (code == HttpURLConnection.HTTP_PARTIAL) {
+                    learnSize(parseTotalLength(connection.getHeaderField("Content-Range")));
+                } else {
+                    // No range support: the whole body comes back, skip to the segment.
+                    learnSize(connection.getContentLengthLong());
+                    skipFully(in, from);
+                }
+                int length = 0;
+                int read;
+                while (length < SEGMENT_SIZE && (read = in.read(dest, length, SEGMENT_SIZE - length)) != -1) {
+                    length += read;
+                }
+                networkFetches.incrementAndGet();
+                networkBytes.addAndGet(length);
+                NETWORK_FETCHES.increment();
+                NETWORK_BYTES.add(length);
+                return length;
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private void learnSize(long length) throws IOException {
+        if (size == SIZE_NOT_LOADED) {
+            size = length;
+            if (length >= 0) {
+                cache.put(key, SIZE_INDEX, ByteBuffer.allocate(Long.BYTES).putLong(length).array(), Long.BYTES);
+            }
+        }
+    }
+
+    private void recordStall(long nanos) {
+        STALL_TIME.record(nanos);
+        totalStallNanos += nanos;
+        if (nanos > maxStallNanos) {
+            maxStallNanos = nanos;
+        }
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        while (count > 0) {
+            long skipped = in.skip(count);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    return;
+                }
+                skipped = 1;
+            }
+            count -= skipped;
+        }
+    }
+
+    // "bytes 0-262143/1234567", or "*" for an unknown total.
+    static long parseTotalLength(String contentRange) {
+        if (contentRange == null) {
+            return -1;
+        }
+        int slash = contentRange.lastIndexOf('/');
+        if (slash == -1) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static String cacheKey(String url) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.uici.lecturmultimedia;
+
+// Text of a playback clock held in a reused char buffer. update() only rewrites it when the
+// displayed second changes, so ticking it on every frame allocates nothing.
+public final class ClockText {
+    private final char[] chars = new char[16];
+    private int length;
+    private long shownSecond = -1;
+
+    // Returns true when the text changed and has to be pushed to the view.
+    public boolean update(long milliseconds) {
+        long second = milliseconds / 1000;
+        if (second == shownSecond) {
+            return false;
+        }
+        shownSecond = second;
+        length = MediaFormatter.writeDuration(chars, milliseconds);
+        return true;
+    }
+
+    public char[] getChars() {
+        return chars;
+    }
+
+    public int length() {
+        return length;
+    }
+}
@@ -0,0 +1,41 @@
+package com.uici.lecturmultimedia;
+
+import android.app.Application;
+import androidx.lifecycle.Observer;
+import java.util.ArrayList;
+import java.util.List;
+
+// Starts loading the library as soon as the process starts, while the system splash screen
+// is still being drawn, and warms the thumbnails of the first rows once it is loaded. The
+// library scan is scheduled then too, off the cold start path. Nothing here touches the disk:
+// the store is opened and read on the repository's io thread, the splash waits for the
+// LiveData.
+public class LecteurApplication extends Application {
+    // Rows visible on a typical first screen, with some margin.
+    private static final int WARM_UP_ROWS = 16;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        MediaLibraryRepository repository = MediaLibraryRepository.getInstance(this);
+        ThumbnailLoader thumbnailLoader = ThumbnailLoader.getInstance(this);
+        int thumbnailSize = getResources().getDimensionPixelSize(R.dimen.thumbnail_size);
+
+        repository.getLibrary().observeForever(new Observer<MediaFilePager>() {
+            @Override
+            public void onChanged(MediaFilePager pager) {
+                repository.getLibrary().removeObserver(this);
+                // The first page is preloaded with the pager.
+                List<MediaFile> firstRows = new ArrayList<>(WARM_UP_ROWS);
+                for (int i = 0; i < Math.min(WARM_UP_ROWS, pager.size()); i++) {
+                    MediaFile mediaFile = pager.peek(i);
+                    if (mediaFile != null) {
+                        firstRows.add(mediaFile);
+                    }
+                }
+                thumbnailLoader.warmUp(firstRows, thumbnailSize);
+                LibraryScanWorker.schedule(LecteurApplication.this);
+            }
+        });
+    }
+}
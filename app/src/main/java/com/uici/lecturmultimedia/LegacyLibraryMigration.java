@@ -0,0 +1,164 @@
+package com.uici.lecturmultimedia;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+// Streams the legacy "media_files" JSON array written by the old SharedPreferences based
+// MediaFileManager into the library store, one entry at a time. Progress is checkpointed
+// after every batch so an interrupted migration resumes where it stopped.
+public class LegacyLibraryMigration {
+    private static final String TAG = "LegacyLibraryMigration";
+
+    private static final String PREFS_NAME = "MediaFilesPrefs";
+    private static final String KEY_MEDIA_FILES = "media_files";
+    private static final String KEY_MIGRATED_COUNT = "media_files_migrated_count";
+
+    private static final int BATCH_SIZE = 256;
+
+    private final SharedPreferences sharedPreferences;
+    private final MediaLibraryStore store;
+
+    public LegacyLibraryMigration(Context context, MediaLibraryStore store) {
+        this.sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.store = store;
+    }
+
+    public boolean isPending() {
+        return sharedPreferences.contains(KEY_MEDIA_FILES);
+    }
+
+    public void run() throws IOException {
+        synchronized (LegacyLibraryMigration.class) {
+            runLocked();
+        }
+    }
+
+    private void runLocked() throws IOException {
+        String json = sharedPreferences.getString(KEY_MEDIA_FILES, null);
+        if (json == null) {
+            return;
+        }
+
+        int migrated = sharedPreferences.getInt(KEY_MIGRATED_COUNT, 0);
+        // Only the reads are caught: a blob that can't be parsed is dropped, as it was by Gson
+        // before, while a failed store write is thrown and the migration resumes from the last
+        // checkpoint next time.
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            List<MediaFile> batch = new ArrayList<>(BATCH_SIZE);
+            boolean more = skipMigrated(reader, migrated);
+            while (more) {
+                MediaFile mediaFile;
+                try {
+                    mediaFile = readMediaFile(reader);
+                    more = reader.hasNext();
+                } catch (IOException | IllegalStateException | JsonParseException e) {
+                    logCorrupt(migrated, e);
+                    break;
+                }
+                if (mediaFile != null) {
+                    batch.add(mediaFile);
+                }
+                migrated++;
+                if (batch.size() == BATCH_SIZE) {
+                    commitBatch(batch, migrated);
+                }
+            }
+            commitBatch(batch, migrated);
+        }
+
+        sharedPreferences.edit()
+            .remove(KEY_MEDIA_FILES)
+            .remove(KEY_MIGRATED_COUNT)
+            .commit();
+    }
+
+    // Moves reader to the first entry not migrated yet. Returns false when there is none left
+    // or the blob can't be read.
+    private static boolean skipMigrated(JsonReader reader, int migrated) {
+        try {
+            reader.beginArray();
+            for (int i = 0; i < migrated && reader.hasNext(); i++) {
+                reader.skipValue();
+            }
+            return reader.hasNext();
+        } catch (IOException | IllegalStateException | JsonParseException e) {
+            logCorrupt(migrated, e);
+            return false;
+        }
+    }
+
+    private static void logCorrupt(int migrated, Exception e) {
+        Log.w(TAG, "Legacy library is corrupt after " + migrated + " entries", e);
+    }
+
+    private void commitBatch(List<MediaFile> batch, int migrated) throws IOException {
+        if (!batch.isEmpty()) {
+            store.putAll(batch);
+            store.sync();
+            batch.clear();
+        }
+        // Entries are keyed by id, so replaying a batch after a crash between these two
+        // writes only overwrites the same entries.
+        sharedPreferences.edit().putInt(KEY_MIGRATED_COUNT, migrated).commit();
+    }
+
+    private static MediaFile readMediaFile(JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+            reader.skipValue();
+            return null;
+        }
+
+        String id = null;
+        String name = null;
+        String path = null;
+        String type = null;
+        long duration = 0;
+        long size = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "path":
+                    path = reader.nextString();
+                    break;
+                case "type":
+                    type = reader.nextString();
+                    break;
+                case "duration":
+                    duration = reader.nextLong();
+                    break;
+                case "size":
+                    size = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        if (id == null) {
+            return null;
+        }
+        return new MediaFile(id, name, path, MediaType.fromValue(type), duration, size);
+    }
+}
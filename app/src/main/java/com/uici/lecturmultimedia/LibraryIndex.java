@@ -0,0 +1,341 @@
+package com.uici.lecturmultimedia;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BooleanSupplier;
+
+// Search, filter and sort over one version of the library without going through the entries
+// again. Names are split into lowercase, accent-free tokens kept in a sorted dictionary along
+// with the positions using each, so a prefix is a binary search plus a union of postings.
+// The orders by name, size and duration are sorted once when the index is built, a query
+// only walks the chosen order through the set of matches. Results are positions in the index,
+// getId() gives the entry at each: read by id, they stay right when the library changes.
+public class LibraryIndex {
+
+    public enum TypeFilter {
+        ALL,
+        AUDIO,
+        VIDEO
+    }
+
+    public enum SortOrder {
+        ADDED,
+        NAME,
+        // Largest first.
+        SIZE,
+        // Longest first.
+        DURATION
+    }
+
+    public static class Query {
+        public final String text;
+        public final TypeFilter typeFilter;
+        public final SortOrder sortOrder;
+
+        public Query(String text, TypeFilter typeFilter, SortOrder sortOrder) {
+            this.text = text;
+            this.typeFilter = typeFilter;
+            this.sortOrder = sortOrder;
+        }
+
+        // Whether the result is just the library as it is listed.
+        public boolean isEmpty() {
+            return tokenize(text).isEmpty() && typeFilter == TypeFilter.ALL && sortOrder == SortOrder.ADDED;
+        }
+    }
+
+    // Loops over postings or orders check for a newer query this often.
+    private static final int CANCEL_CHECK_INTERVAL = 4096;
+
+    private final long generation;
+    private final int size;
+    private final String[] ids;
+    private final String[] tokens;
+    // Postings of tokens[i] are postings[postingStarts[i]] to postings[postingStarts[i + 1]].
+    private final int[] postingStarts;
+    private final int[] postings;
+    private final long[] videoBits;
+    private final int[] byName;
+    private final int[] bySize;
+    private final int[] byDuration;
+
+    private LibraryIndex(long generation, int size, String[] ids, String[] tokens, int[] postingStarts,
+                         int[] postings, long[] videoBits, int[] byName, int[] bySize, int[] byDuration) {
+        this.generation = generation;
+        this.size = size;
+        this.ids = ids;
+        this.tokens = tokens;
+        this.postingStarts = postingStarts;
+        this.postings = postings;
+        this.videoBits = videoBits;
+        this.byName = byName;
+        this.bySize = bySize;
+        this.byDuration = byDuration;
+    }
+
+    // The library generation the index was built from.
+    public long getGeneration() {
+        return generation;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String getId(int position) {
+        return ids[position];
+    }
+
+    // Positions matching query, in its order, or null once cancelled returns true.
+    public int[] search(Query query, BooleanSupplier cancelled) {
+        long[] matches = null;
+        for (String token : tokenize(query.text)) {
+            long[] tokenMatches = new long[words(size)];
+            int from = lowerBound(token);
+            int to = lowerBound(token + Character.MAX_VALUE);
+            int visited = 0;
+            for (int i = postingStarts[from]; i < postingStarts[to]; i++) {
+                int position = postings[i];
+                tokenMatches[position >>> 6] |= 1L << position;
+                if (++visited % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                    return null;
+                }
+            }
+            matches = matches == null ? tokenMatches : and(matches, tokenMatches);
+        }
+        if (query.typeFilter != TypeFilter.ALL) {
+            if (matches == null) {
+                matches = allBits(size);
+            }
+            boolean video = query.typeFilter == TypeFilter.VIDEO;
+            for (int i = 0; i < matches.length; i++) {
+                matches[i] &= video ? videoBits[i] : ~videoBits[i];
+            }
+        }
+        if (cancelled.getAsBoolean()) {
+            return null;
+        }
+
+        int[] order = orderOf(query.sortOrder);
+        int[] result = new int[matches != null ? count(matches) : size];
+        int found = 0;
+        for (int i = 0; i < size && found < result.length; i++) {
+            int position = order != null ? order[i] : i;
+            if (matches == null || (matches[position >>> 6] & (1L << position)) != 0) {
+                result[found++] = position;
+            }
+            if (i % CANCEL_CHECK_INTERVAL == 0 && cancelled.getAsBoolean()) {
+                return null;
+            }
+        }
+        return result;
+    }
+
+    private int[] orderOf(SortOrder sortOrder) {
+        switch (sortOrder) {
+            case NAME:
+                return byName;
+            case SIZE:
+                return bySize;
+            case DURATION:
+                return byDuration;
+            default:
+                return null;
+        }
+    }
+
+    // First dictionary index whose token is not below key.
+    private int lowerBound(String key) {
+        int low = 0;
+        int high = tokens.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (tokens[mid].compareTo(key) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Lowercase words of text with accents removed, "Best_of 2019 (live).mp3" is best, of, 2019,
+    // live, mp3.
+    static List<String> tokenize(String text) {
+        List<String> result = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return result;
+        }
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                result.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            result.add(token.toString());
+        }
+        return result;
+    }
+
+    private static int words(int bits) {
+        return (bits + 63) >>> 6;
+    }
+
+    private static long[] allBits(int size) {
+        long[] bits = new long[words(size)];
+        Arrays.fill(bits, -1L);
+        if (size % 64 != 0) {
+            bits[bits.length - 1] = (1L << size) - 1;
+        }
+        return bits;
+    }
+
+    private static long[] and(long[] a, long[] b) {
+        for (int i = 0; i < a.length; i++) {
+            a[i] &= b[i];
+        }
+        return a;
+    }
+
+    private static int count(long[] bits) {
+        int count = 0;
+        for (long word : bits) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    // Takes the entries in store order, their positions are the order of add(). An id already
+    // added is skipped: pages read while the library changes may see an entry twice.
+    public static class Builder {
+        private final Set<String> added = new HashSet<>();
+        private final Map<String, Integer> tokenIds = new HashMap<>();
+        private final List<String> dictionary = new ArrayList<>();
+        private int[] pairTokens = new int[1024];
+        private int[] pairPositions = new int[1024];
+        private int pairCount;
+        private final List<String> sortNames = new ArrayList<>();
+        private String[] ids = new String[1024];
+        private long[] sizes = new long[1024];
+        private long[] durations = new long[1024];
+        private long[] videoBits = new long[16];
+        private int size;
+
+        public void add(MediaFile mediaFile) {
+            if (!added.add(mediaFile.getId())) {
+                return;
+            }
+            int position = size++;
+            if (position == sizes.length) {
+                ids = Arrays.copyOf(ids, position * 2);
+                sizes = Arrays.copyOf(sizes, position * 2);
+                durations = Arrays.copyOf(durations, position * 2);
+            }
+            if (words(size) > videoBits.length) {
+                videoBits = Arrays.copyOf(videoBits, videoBits.length * 2);
+            }
+            ids[position] = mediaFile.getId();
+            sizes[position] = mediaFile.getSize();
+            durations[position] = mediaFile.getDuration();
+            if (mediaFile.isVideo()) {
+                videoBits[position >>> 6] |= 1L << position;
+            }
+
+            List<String> nameTokens = tokenize(mediaFile.getName());
+            sortNames.add(String.join(" ", nameTokens));
+            for (String token : nameTokens) {
+                Integer id = tokenIds.get(token);
+                if (id == null) {
+                    id = dictionary.size();
+                    tokenIds.put(token, id);
+                    dictionary.add(token);
+                }
+                if (pairCount == pairTokens.length) {
+                    pairTokens = Arrays.copyOf(pairTokens, pairCount * 2);
+                    pairPositions = Arrays.copyOf(pairPositions, pairCount * 2);
+                }
+                pairTokens[pairCount] = id;
+                pairPositions[pairCount] = position;
+                pairCount++;
+            }
+        }
+
+        public LibraryIndex build(long generation) {
+            // Dictionary ids in token order, then postings grouped by token with a counting sort.
+            Integer[] sortedIds = new Integer[dictionary.size()];
+            for (int i = 0; i < sortedIds.length; i++) {
+                sortedIds[i] = i;
+            }
+            Arrays.sort(sortedIds, (a, b) -> dictionary.get(a).compareTo(dictionary.get(b)));
+            String[] tokens = new String[sortedIds.length];
+            int[] rank = new int[sortedIds.length];
+            for (int i = 0; i < sortedIds.length; i++) {
+                tokens[i] = dictionary.get(sortedIds[i]);
+                rank[sortedIds[i]] = i;
+            }
+
+            int[] postingStarts = new int[tokens.length + 1];
+            int[] lastPosition = new int[tokens.length];
+            Arrays.fill(lastPosition, -1);
+            int postingCount = 0;
+            for (int i = 0; i < pairCount; i++) {
+                int token = rank[pairTokens[i]];
+                // A token repeated in one name is posted once.
+                if (lastPosition[token] != pairPositions[i]) {
+                    lastPosition[token] = pairPositions[i];
+                    postingStarts[token + 1]++;
+                    postingCount++;
+                }
+            }
+            for (int i = 0; i < tokens.length; i++) {
+                postingStarts[i + 1] += postingStarts[i];
+            }
+            int[] postings = new int[postingCount];
+            int[] next = Arrays.copyOf(postingStarts, tokens.length);
+            Arrays.fill(lastPosition, -1);
+            for (int i = 0; i < pairCount; i++) {
+                int token = rank[pairTokens[i]];
+                if (lastPosition[token] != pairPositions[i]) {
+                    lastPosition[token] = pairPositions[i];
+                    postings[next[token]++] = pairPositions[i];
+                }
+            }
+
+            int[] byName = sortedPositions((a, b) -> sortNames.get(a).compareTo(sortNames.get(b)));
+            int[] bySize = sortedPositions((a, b) -> Long.compare(sizes[b], sizes[a]));
+            int[] byDuration = sortedPositions((a, b) -> Long.compare(durations[b], durations[a]));
+            return new LibraryIndex(generation, size, Arrays.copyOf(ids, size), tokens, postingStarts, postings,
+                Arrays.copyOf(videoBits, words(size)), byName, bySize, byDuration);
+        }
+
+        // Positions sorted by comparator, ties in store order.
+        private int[] sortedPositions(Comparator<Integer> comparator) {
+            Integer[] positions = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                positions[i] = i;
+            }
+            Arrays.sort(positions, comparator);
+            int[] result = new int[size];
+            for (int i = 0; i < size; i++) {
+                result[i] = positions[i];
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.uici.lecturmultimedia;
+
+import android.content.Context;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import java.util.concurrent.TimeUnit;
+
+// Runs LibraryScanner about once a day, while the device is idle and the battery isn't low.
+public class LibraryScanWorker extends Worker {
+    private static final String WORK_NAME = "library-scan";
+    private static final long INTERVAL_HOURS = 24;
+    // WorkManager stops a worker after ten minutes; the scan stops itself before and the
+    // next run resumes it.
+    private static final long TIME_BUDGET_MS = TimeUnit.MINUTES.toMillis(8);
+
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+            .setRequiresDeviceIdle(true)
+            .setRequiresBatteryNotLow(true)
+            .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(
+            LibraryScanWorker.class, INTERVAL_HOURS, TimeUnit.HOURS)
+            .setConstraints(constraints)
+            .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+            WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    public LibraryScanWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        new LibraryScanner(getApplicationContext())
+            .scan(SystemClock.elapsedRealtime() + TIME_BUDGET_MS, this::isStopped);
+        return Result.success();
+    }
+}
@@ -0,0 +1,324 @@
+package com.uici.lecturmultimedia;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.UriPermission;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.util.Log;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+// Checks that the local entries of the library can still be read, so a revoked permission or
+// a deleted file is found before a prepare fails on it. Each entry gets one projected query,
+// run by a small pool with a bounded number in flight; entries are read a page at a time, so
+// memory doesn't grow with the library. Changed files get their new size and date and are
+// probed again; dead entries are removed together in one batch at the end. A scan stopped by
+// its deadline saves its position and the next one resumes there.
+public class LibraryScanner {
+    private static final String TAG = "LibraryScanner";
+
+    private static final String PREFS_NAME = "library_scan";
+    private static final String KEY_POSITION = "position";
+    private static final int PAGE_SIZE = 500;
+    private static final int MAX_PARALLEL_QUERIES = 4;
+    private static final int MAX_IN_FLIGHT = MAX_PARALLEL_QUERIES * 2;
+    private static final int REFRESH_BATCH_SIZE = 50;
+    // A query still running this long after the deadline is given up on, the scan stops.
+    private static final long QUERY_GRACE_MS = 5_000;
+
+    private static final Telemetry.Histogram CHECK_TIME = Telemetry.histogram("scan.check");
+    private static final Telemetry.Counter CHECKED = Telemetry.counter("scan.checked");
+    private static final Telemetry.Counter CHANGED = Telemetry.counter("scan.changed");
+    private static final Telemetry.Counter REMOVED = Telemetry.counter("scan.removed");
+
+    private static final String[] STAT_PROJECTION = {
+        OpenableColumns.SIZE,
+        DocumentsContract.Document.COLUMN_LAST_MODIFIED
+    };
+    private static final String[] BASIC_STAT_PROJECTION = {
+        OpenableColumns.SIZE
+    };
+
+    private enum Status {
+        LIVE,
+        CHANGED,
+        // No persisted grant covers it any more and it can't be read: the grant was released,
+        // or went with the provider's app.
+        REVOKED,
+        // Still granted, but the provider doesn't know the document.
+        MISSING,
+        // Not checked, or the provider failed: kept as it is.
+        UNKNOWN
+    }
+
+    private static final class Check {
+        final Status status;
+        // The entry with its new size and date when CHANGED.
+        final MediaFile mediaFile;
+
+        Check(Status status, MediaFile mediaFile) {
+            this.status = status;
+            this.mediaFile = mediaFile;
+        }
+    }
+
+    private final ContentResolver contentResolver;
+    private final SharedPreferences prefs;
+    private final MediaFileManager mediaFileManager;
+    private final MediaLibraryRepository repository;
+
+    // One scan's findings.
+    private Set<Uri> grants;
+    private final List<String> revoked = new ArrayList<>();
+    private final Map<String, List<String>> missingByAuthority = new HashMap<>();
+    private final Set<String> readableAuthorities = new HashSet<>();
+    private final List<MediaFile> changed = new ArrayList<>(REFRESH_BATCH_SIZE);
+    private int checkedCount;
+    private int changedCount;
+
+    public LibraryScanner(Context context) {
+        contentResolver = context.getContentResolver();
+        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mediaFileManager = new MediaFileManager(context);
+        repository = MediaLibraryRepository.getInstance(context);
+    }
+
+    // Blocks until the library has been checked, the deadline (elapsedRealtime) has passed or
+    // cancelled returns true. Returns whether it went through to the end of the library.
+    // Entries added or removed meanwhile may shift a few others past the scan, they are
+    // checked by the next one.
+    public boolean scan(long deadline, BooleanSupplier cancelled) {
+        long start = SystemClock.elapsedRealtime();
+        grants = persistedGrants();
+        ExecutorService workers = Executors.newFixedThreadPool(MAX_PARALLEL_QUERIES,
+            runnable -> {
+                Thread thread = new Thread(runnable, "library-scan");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        int position = prefs.getInt(KEY_POSITION, 0);
+        if (position >= mediaFileManager.getMediaFileCount()) {
+            position = 0;
+        }
+        boolean complete = true;
+        try {
+            while (position < mediaFileManager.getMediaFileCount()) {
+                if (cancelled.getAsBoolean() || SystemClock.elapsedRealtime() >= deadline) {
+                    complete = false;
+                    break;
+                }
+                List<MediaFile> page = mediaFileManager.getMediaFiles(position, PAGE_SIZE);
+                if (page.isEmpty()) {
+                    break;
+                }
+                if (!checkPage(page, workers, deadline)) {
+                    complete = false;
+                    break;
+                }
+                position += page.size();
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Library scan interrupted", e);
+            complete = false;
+        } finally {
+            // Queries stuck in a provider can't be interrupted, their threads end with them.
+            workers.shutdownNow();
+        }
+
+        refresh();
+        int removed = removeDead();
+        // Removed entries were before the position, a few more than needed may be checked again.
+        prefs.edit().putInt(KEY_POSITION, complete ? 0 : Math.max(0, position - removed)).apply();
+        Log.i(TAG, (complete ? "Scanned " : "Scanned (stopped) ") + checkedCount + " entries in "
+            + (SystemClock.elapsedRealtime() - start) + " ms: " + changedCount + " changed, "
+            + removed + " removed");
+        return complete;
+    }
+
+    // Checks a page with at most MAX_IN_FLIGHT queries queued. Returns false when a query
+    // outlived the deadline and the page was abandoned.
+    private boolean checkPage(List<MediaFile> page, ExecutorService workers, long deadline) {
+        CompletionService<Check> completion = new ExecutorCompletionService<>(workers);
+        int submitted = 0;
+        int done = 0;
+        while (done < page.size()) {
+            while (submitted < page.size() && submitted - done < MAX_IN_FLIGHT) {
+                MediaFile mediaFile = page.get(submitted++);
+                completion.submit(() -> check(mediaFile));
+            }
+            Future<Check> result;
+            try {
+                long wait = Math.max(0, deadline - SystemClock.elapsedRealtime()) + QUERY_GRACE_MS;
+                result = completion.poll(wait, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (result == null) {
+                Log.w(TAG, "Provider query timed out, stopping the scan");
+                return false;
+            }
+            done++;
+            try {
+                record(result.get());
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Unable to check entry", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void record(Check check) {
+        CHECKED.increment();
+        checkedCount++;
+        MediaFile mediaFile = check.mediaFile;
+        switch (check.status) {
+            case CHANGED:
+                changed.add(mediaFile);
+                changedCount++;
+                CHANGED.increment();
+                if (changed.size() == REFRESH_BATCH_SIZE) {
+                    refresh();
+                }
+                // The provider answered.
+                readableAuthorities.add(Uri.parse(mediaFile.getPath()).getAuthority());
+                break;
+            case LIVE:
+                readableAuthorities.add(Uri.parse(mediaFile.getPath()).getAuthority());
+                break;
+            case REVOKED:
+                revoked.add(mediaFile.getId());
+                break;
+            case MISSING:
+                missingByAuthority.computeIfAbsent(Uri.parse(mediaFile.getPath()).getAuthority(),
+                    authority -> new ArrayList<>()).add(mediaFile.getId());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private Check check(MediaFile mediaFile) {
+        Uri uri = Uri.parse(mediaFile.getPath());
+        if (mediaFile.isRemote() || !ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            return new Check(Status.UNKNOWN, mediaFile);
+        }
+        // Without a persisted grant the entry may still be readable through the media
+        // permissions, so it is only revoked once the query fails too.
+        boolean granted = grants.contains(grantedUri(uri));
+        Status unreadable = granted ? Status.MISSING : Status.REVOKED;
+        long startedAt = CHECK_TIME.start();
+        Cursor cursor;
+        try {
+            try {
+                cursor = contentResolver.query(uri, STAT_PROJECTION, null, null, null);
+            } catch (IllegalArgumentException e) {
+                // Providers that only support the OpenableColumns.
+                cursor = contentResolver.query(uri, BASIC_STAT_PROJECTION, null, null, null);
+            }
+        } catch (SecurityException e) {
+            return new Check(granted ? Status.UNKNOWN : Status.REVOKED, mediaFile);
+        } catch (IllegalArgumentException e) {
+            // How document providers answer for an id they don't have.
+            return new Check(unreadable, mediaFile);
+        } finally {
+            CHECK_TIME.stop(startedAt);
+        }
+        // Null when the authority has no provider any more.
+        if (cursor == null) {
+            return new Check(unreadable, mediaFile);
+        }
+        try {
+            if (!cursor.moveToFirst()) {
+                return new Check(unreadable, mediaFile);
+            }
+            long size = mediaFile.getSize();
+            long lastModified = mediaFile.getLastModified();
+            int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
+            if (sizeIndex != -1 && !cursor.isNull(sizeIndex)) {
+                size = cursor.getLong(sizeIndex);
+            }
+            int modifiedIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+            if (modifiedIndex != -1 && !cursor.isNull(modifiedIndex)) {
+                lastModified = cursor.getLong(modifiedIndex);
+            }
+            if (size == mediaFile.getSize() && lastModified == mediaFile.getLastModified()) {
+                return new Check(Status.LIVE, mediaFile);
+            }
+            return new Check(Status.CHANGED, mediaFile.withChangedFile(size, lastModified));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void refresh() {
+        if (!changed.isEmpty()) {
+            repository.refreshMediaFiles(new ArrayList<>(changed));
+            changed.clear();
+        }
+    }
+
+    // Revoked entries go, and missing ones when their provider answered for other entries:
+    // one that answered for none (a removed SD card, a cloud provider without network) may
+    // just be unavailable. Waits for the batch to be stored.
+    private int removeDead() {
+        List<String> dead = new ArrayList<>(revoked);
+        for (Map.Entry<String, List<String>> entry : missingByAuthority.entrySet()) {
+            if (readableAuthorities.contains(entry.getKey())) {
+                dead.addAll(entry.getValue());
+            }
+        }
+        if (dead.isEmpty()) {
+            return 0;
+        }
+        CountDownLatch stored = new CountDownLatch(1);
+        repository.deleteMediaFiles(dead, success -> stored.countDown());
+        try {
+            stored.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        REMOVED.add(dead.size());
+        return dead.size();
+    }
+
+    private Set<Uri> persistedGrants() {
+        Set<Uri> uris = new HashSet<>();
+        for (UriPermission permission : contentResolver.getPersistedUriPermissions()) {
+            if (permission.isReadPermission()) {
+                uris.add(permission.getUri());
+            }
+        }
+        return uris;
+    }
+
+    // Documents listed from a folder are covered by the grant on the folder's tree.
+    private static Uri grantedUri(Uri uri) {
+        if (DocumentsContract.isTreeUri(uri)) {
+            return DocumentsContract.buildTreeDocumentUri(uri.getAuthority(),
+                DocumentsContract.getTreeDocumentId(uri));
+        }
+        return uri;
+    }
+}
@@ -1,65 +1,170 @@
 package com.uici.lecturmultimedia;
 
 import android.Manifest;
+import android.content.ClipData;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.provider.MediaStore;
-import android.provider.OpenableColumns;
+import android.os.Process;
+import android.os.SystemClock;
+import android.text.InputType;
+import android.util.Log;
+import android.view.MenuItem;
 import android.view.View;
+import android.view.ViewTreeObserver;
+import android.widget.EditText;
 import android.widget.Toast;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.core.content.ContextCompat;
+import androidx.core.splashscreen.SplashScreen;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import com.uici.lecturmultimedia.databinding.ActivityMainBinding;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.UUID;
+import java.util.Locale;
 
-public class MainActivity extends AppCompatActivity implements MediaFileAdapter.OnMediaFileActionListener {
+public class MainActivity extends AppCompatActivity
+    implements MediaFileAdapter.OnMediaFileActionListener, MediaImporter.Listener {
+
+    private static final String STARTUP_TAG = "Startup";
+    // The splash is kept up until the library is shown, but never longer than this.
+    private static final long MAX_SPLASH_MS = 2000;
+    // Quiet time after a change of the library before the search results are refreshed.
+    private static final long RESULTS_REFRESH_DELAY_MS = 500;
+    private static final Telemetry.Histogram FIRST_LIST_FRAME_TIME =
+        Telemetry.histogram("startup.first_list_frame");
+
+    private static boolean firstFrameReported;
 
     private ActivityMainBinding binding;
-    private MediaFileManager mediaFileManager;
+    private MediaLibraryRepository repository;
     private MediaFileAdapter mediaFileAdapter;
-    private List<MediaFile> mediaFiles;
+    private MediaImporter mediaImporter;
 
     private ActivityResultLauncher<String> requestPermissionLauncher;
     private ActivityResultLauncher<Intent> pickMediaLauncher;
+    private ActivityResultLauncher<Uri> pickFolderLauncher;
+    private boolean libraryShown;
+
+    private String queryText = "";
+    private LibraryIndex.TypeFilter typeFilter = LibraryIndex.TypeFilter.ALL;
+    private LibraryIndex.SortOrder sortOrder = LibraryIndex.SortOrder.ADDED;
+    private boolean searching;
+    // Runs the query again once the library has stopped changing for a while.
+    private final Runnable refreshResults = this::runQuery;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        SplashScreen splashScreen = SplashScreen.installSplashScreen(this);
         super.onCreate(savedInstanceState);
+        long splashStart = SystemClock.uptimeMillis();
+        splashScreen.setKeepOnScreenCondition(() -> !libraryShown
+            && SystemClock.uptimeMillis() - splashStart < MAX_SPLASH_MS);
+
         binding = ActivityMainBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
-        mediaFileManager = new MediaFileManager(this);
-        mediaFiles = new ArrayList<>();
+        repository = MediaLibraryRepository.getInstance(this);
+        mediaImporter = MediaImporter.getInstance(this);
+        mediaImporter.setListener(this);
 
         setupRecyclerView();
+        setupMenu();
         setupFab();
-        loadMediaFiles();
         setupPermissionLauncher();
         setupMediaPickerLauncher();
+
+        repository.getLibrary().observe(this, this::showLibrary);
     }
 
     @Override
-    protected void onResume() {
-        super.onResume();
-        loadMediaFiles();
+    protected void onDestroy() {
+        super.onDestroy();
+        binding.recyclerViewMediaFiles.removeCallbacks(refreshResults);
+        mediaImporter.setListener(null);
+        repository.cancelSearch();
     }
 
     private void setupRecyclerView() {
-        mediaFileAdapter = new MediaFileAdapter(mediaFiles, this);
+        mediaFileAdapter = new MediaFileAdapter(this, ThumbnailLoader.getInstance(this));
         binding.recyclerViewMediaFiles.setLayoutManager(new LinearLayoutManager(this));
         binding.recyclerViewMediaFiles.setAdapter(mediaFileAdapter);
     }
 
+    private void setupMenu() {
+        binding.toolbar.inflateMenu(R.menu.menu_main);
+        SearchView searchView = (SearchView) binding.toolbar.getMenu()
+            .findItem(R.id.action_search).getActionView();
+        searchView.setQueryHint("Nom du fichier");
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                searchView.clearFocus();
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String text) {
+                queryText = text;
+                runQuery();
+                return true;
+            }
+        });
+        binding.toolbar.setOnMenuItemClickListener(this::onMenuItemSelected);
+    }
+
+    private boolean onMenuItemSelected(MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.sort_added) {
+            sortOrder = LibraryIndex.SortOrder.ADDED;
+        } else if (id == R.id.sort_name) {
+            sortOrder = LibraryIndex.SortOrder.NAME;
+        } else if (id == R.id.sort_size) {
+            sortOrder = LibraryIndex.SortOrder.SIZE;
+        } else if (id == R.id.sort_duration) {
+            sortOrder = LibraryIndex.SortOrder.DURATION;
+        } else if (id == R.id.filter_all) {
+            typeFilter = LibraryIndex.TypeFilter.ALL;
+        } else if (id == R.id.filter_audio) {
+            typeFilter = LibraryIndex.TypeFilter.AUDIO;
+        } else if (id == R.id.filter_video) {
+            typeFilter = LibraryIndex.TypeFilter.VIDEO;
+        } else {
+            return false;
+        }
+        item.setChecked(true);
+        runQuery();
+        return true;
+    }
+
+    // Anything but the plain list goes through the library index, off the main thread. Each
+    // keystroke supersedes the search still running for the previous one.
+    private void runQuery() {
+        binding.recyclerViewMediaFiles.removeCallbacks(refreshResults);
+        LibraryIndex.Query query = new LibraryIndex.Query(queryText, typeFilter, sortOrder);
+        if (query.isEmpty()) {
+            searching = false;
+            repository.cancelSearch();
+            MediaFilePager library = repository.getLibrary().getValue();
+            if (library != null) {
+                showPager(library);
+            }
+        } else {
+            searching = true;
+            repository.search(query, this::showPager);
+        }
+    }
+
     private void setupFab() {
         binding.fabAddMedia.setOnClickListener(v -> showMediaTypeDialog());
     }
@@ -82,26 +187,68 @@ public class MainActivity extends AppCompatActivity implements MediaFileAdapter.
             new ActivityResultContracts.StartActivityForResult(),
             result -> {
                 if (result.getResultCode() == RESULT_OK && result.getData() != null) {
-                    Uri uri = result.getData().getData();
-                    if (uri != null) {
-                        addMediaFileFromUri(uri);
+                    List<Uri> uris = getPickedUris(result.getData());
+                    if (!uris.isEmpty()) {
+                        mediaImporter.importDocuments(uris);
                     }
                 }
             }
         );
+
+        pickFolderLauncher = registerForActivityResult(
+            new ActivityResultContracts.OpenDocumentTree(),
+            treeUri -> {
+                if (treeUri != null) {
+                    mediaImporter.importTree(treeUri);
+                }
+            }
+        );
+    }
+
+    private List<Uri> getPickedUris(Intent data) {
+        List<Uri> uris = new ArrayList<>();
+        ClipData clipData = data.getClipData();
+        if (clipData != null) {
+            for (int i = 0; i < clipData.getItemCount(); i++) {
+                uris.add(clipData.getItemAt(i).getUri());
+            }
+        } else if (data.getData() != null) {
+            uris.add(data.getData());
+        }
+        return uris;
     }
 
     private void showMediaTypeDialog() {
-        String[] options = {"Audio", "Video"};
+        String[] options = {"Audio", "Video", "Dossier", "URL"};
         new AlertDialog.Builder(this)
             .setTitle("Choisir le type de fichier")
             .setItems(options, (dialog, which) -> {
                 if (which == 0) {
                     checkPermissionAndPickMedia("audio/*");
-                } else {
+                } else if (which == 1) {
                     checkPermissionAndPickMedia("video/*");
+                } else if (which == 2) {
+                    pickFolderLauncher.launch(null);
+                } else {
+                    showUrlDialog();
+                }
+            })
+            .show();
+    }
+
+    private void showUrlDialog() {
+        EditText input = new EditText(this);
+        input.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_VARIATION_URI);
+        input.setHint("https://");
+        new AlertDialog.Builder(this)
+            .setTitle("Ajouter une URL")
+            .setView(input)
+            .setPositiveButton("Ajouter", (dialog, which) -> {
+                if (!mediaImporter.importUrl(input.getText().toString())) {
+                    Toast.makeText(this, "URL invalide", Toast.LENGTH_SHORT).show();
                 }
             })
+            .setNegativeButton("Annuler", null)
             .show();
     }
 
@@ -140,95 +287,96 @@ public class MainActivity extends AppCompatActivity implements MediaFileAdapter.
         Intent intent = new Intent(Intent.ACTION_OPEN_DOCUMENT);
         intent.addCategory(Intent.CATEGORY_OPENABLE);
         intent.setType(mimeType);
+        intent.putExtra(Intent.EXTRA_ALLOW_MULTIPLE, true);
         pickMediaLauncher.launch(intent);
     }
 
-    private void addMediaFileFromUri(Uri uri) {
-        try {
-            getContentResolver().takePersistableUriPermission(uri,
-                Intent.FLAG_GRANT_READ_URI_PERMISSION);
-
-            String fileName = getFileName(uri);
-            String mimeType = getContentResolver().getType(uri);
-            String type = mimeType != null && mimeType.startsWith("video") ? "video" : "audio";
-            long duration = getMediaDuration(uri);
-            long size = getFileSize(uri);
-
-            MediaFile mediaFile = new MediaFile(
-                UUID.randomUUID().toString(),
-                fileName,
-                uri.toString(),
-                type,
-                duration,
-                size
-            );
-
-            mediaFileManager.addMediaFile(mediaFile);
-            loadMediaFiles();
-            Toast.makeText(this, "Fichier ajouté", Toast.LENGTH_SHORT).show();
-        } catch (Exception e) {
-            Toast.makeText(this, "Erreur lors de l'ajout du fichier", Toast.LENGTH_SHORT).show();
+    @Override
+    public void onProgress(int done, int total, float filesPerSecond) {
+        binding.toolbar.setSubtitle(String.format(Locale.getDefault(),
+            "Import %d/%d (%.1f fichiers/s)", done, total, filesPerSecond));
+    }
+
+    @Override
+    public void onComplete(int imported, int failed) {
+        binding.toolbar.setSubtitle(null);
+        String message;
+        if (failed == 0) {
+            message = imported == 1 ? "Fichier ajouté" : imported + " fichiers ajoutés";
+        } else if (imported == 0) {
+            message = "Erreur lors de l'ajout du fichier";
+        } else {
+            message = imported + " fichiers ajoutés, " + failed + " en erreur";
         }
+        Toast.makeText(this, message, Toast.LENGTH_SHORT).show();
     }
 
-    private String getFileName(Uri uri) {
-        String result = null;
-        if (uri.getScheme().equals("content")) {
-            try (Cursor cursor = getContentResolver().query(uri, null, null, null, null)) {
-                if (cursor != null && cursor.moveToFirst()) {
-                    int nameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
-                    if (nameIndex != -1) {
-                        result = cursor.getString(nameIndex);
-                    }
-                }
-            }
+    private void showLibrary(MediaFilePager pager) {
+        if (searching) {
+            // Same query over the new version of the library, once it settles: the results
+            // shown meanwhile are read by id, so they stay right, and an import doesn't
+            // rebuild the index for every batch.
+            binding.recyclerViewMediaFiles.removeCallbacks(refreshResults);
+            binding.recyclerViewMediaFiles.postDelayed(refreshResults, RESULTS_REFRESH_DELAY_MS);
+        } else {
+            showPager(pager);
         }
-        if (result == null) {
-            result = uri.getPath();
-            int cut = result.lastIndexOf('/');
-            if (cut != -1) {
-                result = result.substring(cut + 1);
-            }
+        if (!libraryShown) {
+            libraryShown = true;
+            reportFirstListFrame();
         }
-        return result;
     }
 
-    private long getFileSize(Uri uri) {
-        try (Cursor cursor = getContentResolver().query(uri, null, null, null, null)) {
-            if (cursor != null && cursor.moveToFirst()) {
-                int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
-                if (sizeIndex != -1) {
-                    return cursor.getLong(sizeIndex);
-                }
-            }
+    // Logs the time from process start to the first frame drawn with the library in it,
+    // once per process, and tells the system the activity is fully drawn.
+    private void reportFirstListFrame() {
+        if (firstFrameReported) {
+            return;
         }
-        return 0;
-    }
+        firstFrameReported = true;
+        View root = binding.getRoot();
+        root.getViewTreeObserver().addOnDrawListener(new ViewTreeObserver.OnDrawListener() {
+            private boolean drawn;
 
-    private long getMediaDuration(Uri uri) {
-        try (Cursor cursor = getContentResolver().query(uri,
-            new String[]{MediaStore.Video.Media.DURATION}, null, null, null)) {
-            if (cursor != null && cursor.moveToFirst()) {
-                int durationIndex = cursor.getColumnIndex(MediaStore.Video.Media.DURATION);
-                if (durationIndex != -1) {
-                    return cursor.getLong(durationIndex);
+            @Override
+            public void onDraw() {
+                if (drawn) {
+                    return;
                 }
+                drawn = true;
+                long sinceStart = SystemClock.uptimeMillis() - Process.getStartUptimeMillis();
+                FIRST_LIST_FRAME_TIME.recordMillis(sinceStart);
+                Log.i(STARTUP_TAG, "first list frame " + sinceStart + " ms after process start, "
+                    + mediaFileAdapter.getItemCount() + " items");
+                // Listeners can't be removed from inside onDraw.
+                root.post(() -> {
+                    root.getViewTreeObserver().removeOnDrawListener(this);
+                    reportFullyDrawn();
+                });
             }
-        } catch (Exception e) {
-            // Ignore
+        });
+    }
+
+    // adb shell dumpsys activity com.uici.lecturmultimedia/.MainActivity telemetry [reset]
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd, @NonNull PrintWriter writer,
+                     @Nullable String[] args) {
+        if (!Telemetry.dump(writer, args)) {
+            super.dump(prefix, fd, writer, args);
         }
-        return 0;
     }
 
-    private void loadMediaFiles() {
-        mediaFiles.clear();
-        mediaFiles.addAll(mediaFileManager.getMediaFiles());
-        mediaFileAdapter.notifyDataSetChanged();
-        updateEmptyState();
+    private void showPager(MediaFilePager pager) {
+        mediaFileAdapter.submitPager(pager, this::updateEmptyState);
     }
 
     private void updateEmptyState() {
-        if (mediaFiles.isEmpty()) {
+        if (mediaFileAdapter.getItemCount() == 0) {
+            if (searching) {
+                binding.textViewEmpty.setText("Aucun résultat");
+            } else {
+                binding.textViewEmpty.setText(R.string.no_media_files);
+            }
             binding.recyclerViewMediaFiles.setVisibility(View.GONE);
             binding.textViewEmpty.setVisibility(View.VISIBLE);
         } else {
@@ -239,9 +387,23 @@ public class MainActivity extends AppCompatActivity implements MediaFileAdapter.
 
     @Override
     public void onPlayClick(MediaFile mediaFile) {
+        // Only the id goes through Binder, the player takes the file from the registry.
+        String mediaFileId = MediaRegistry.getInstance(this).register(mediaFile);
         Intent intent = new Intent(this, MediaPlayerActivity.class);
-        intent.putExtra("media_file", mediaFile);
+        intent.putExtra(MediaPlayerActivity.EXTRA_MEDIA_ID, mediaFileId);
+        intent.putExtra(MediaPlayerActivity.EXTRA_TAP_TIME, SystemClock.elapsedRealtime());
         startActivity(intent);
+        prepareNextMediaFile(mediaFile);
+    }
+
+    // Users often go through the list in order, so the following row is pre-warmed.
+    private void prepareNextMediaFile(MediaFile mediaFile) {
+        MediaFilePager pager = mediaFileAdapter.getPager();
+        int position = pager.indexOfLoaded(mediaFile.getId());
+        MediaFile next = position != -1 ? pager.peek(position + 1) : null;
+        if (next != null) {
+            PlayerEngine.getInstance(this).prepare(next);
+        }
     }
 
     @Override
@@ -250,9 +412,9 @@ public class MainActivity extends AppCompatActivity implements MediaFileAdapter.
             .setTitle("Supprimer le fichier")
             .setMessage("Voulez-vous vraiment supprimer " + mediaFile.getName() + " ?")
             .setPositiveButton("Oui", (dialog, which) -> {
-                mediaFileManager.deleteMediaFile(mediaFile.getId());
-                loadMediaFiles();
-                Toast.makeText(this, "Fichier supprimé", Toast.LENGTH_SHORT).show();
+                repository.deleteMediaFile(mediaFile.getId(), success -> Toast.makeText(this,
+                    success ? "Fichier supprimé" : "Erreur lors de la suppression du fichier",
+                    Toast.LENGTH_SHORT).show());
             })
             .setNegativeButton("Non", null)
             .show();
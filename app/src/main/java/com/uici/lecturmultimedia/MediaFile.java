@@ -4,27 +4,83 @@ import android.os.Parcel;
 import android.os.Parcelable;
 
 public class MediaFile implements Parcelable {
+    // First int of the compact parcel layout. The original layout starts with the id's
+    // length, which is never below -1 (null), so the two can be told apart.
+    private static final int PARCEL_COMPACT = -2;
+    private static final int PARCEL_FLAG_VIDEO = 1;
+    private static final int PARCEL_FLAG_METADATA = 2;
+
     private String id;
     private String name;
     private String path;
-    private String type;
+    private MediaType type;
     private long duration;
     private long size;
+    private long lastModified;
+    private int bitrate;
+    private String codec;
+    private int width;
+    private int height;
+    private int sampleRate;
+
+    // Computed on first use so list binds don't format on every scroll.
+    private transient String formattedDuration;
+    private transient String formattedSize;
+    // Thumbnail cache key at thumbnailKeySize.
+    private transient String thumbnailKey;
+    private transient int thumbnailKeySize;
+
+    public MediaFile(String id, String name, String path, MediaType type, long duration, long size) {
+        this(id, name, path, type, duration, size, 0, 0, null, 0, 0, 0);
+    }
 
-    public MediaFile(String id, String name, String path, String type, long duration, long size) {
+    public MediaFile(String id, String name, String path, MediaType type, long duration, long size,
+                     long lastModified, int bitrate, String codec, int width, int height, int sampleRate) {
         this.id = id;
         this.name = name;
         this.path = path;
         this.type = type;
         this.duration = duration;
         this.size = size;
+        this.lastModified = lastModified;
+        this.bitrate = bitrate;
+        this.codec = codec;
+        this.width = width;
+        this.height = height;
+        this.sampleRate = sampleRate;
     }
 
     protected MediaFile(Parcel in) {
+        int start = in.dataPosition();
+        if (in.readInt() != PARCEL_COMPACT) {
+            in.setDataPosition(start);
+            readLegacyParcel(in);
+            return;
+        }
         id = in.readString();
         name = in.readString();
         path = in.readString();
-        type = in.readString();
+        int flags = in.readInt();
+        type = (flags & PARCEL_FLAG_VIDEO) != 0 ? MediaType.VIDEO : MediaType.AUDIO;
+        duration = in.readLong();
+        size = in.readLong();
+        if ((flags & PARCEL_FLAG_METADATA) != 0) {
+            lastModified = in.readLong();
+            bitrate = in.readInt();
+            codec = in.readString();
+            width = in.readInt();
+            height = in.readInt();
+            sampleRate = in.readInt();
+        }
+    }
+
+    // The layout before the compact one: four strings, the duration and the size, without
+    // metadata. Its first int is the length of the id, never PARCEL_COMPACT.
+    private void readLegacyParcel(Parcel in) {
+        id = in.readString();
+        name = in.readString();
+        path = in.readString();
+        type = MediaType.fromValue(in.readString());
         duration = in.readLong();
         size = in.readLong();
     }
@@ -53,7 +109,7 @@ public class MediaFile implements Parcelable {
         return path;
     }
 
-    public String getType() {
+    public MediaType getType() {
         return type;
     }
 
@@ -65,39 +121,85 @@ public class MediaFile implements Parcelable {
         return size;
     }
 
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public int getBitrate() {
+        return bitrate;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    // Null until the file has been probed; empty when probing found no usable track.
+    public boolean hasMetadata() {
+        return codec != null;
+    }
+
+    public MediaFile withMetadata(MediaMetadata metadata, long size, long lastModified) {
+        return new MediaFile(id, name, path, type,
+            metadata.getDuration() > 0 ? metadata.getDuration() : duration,
+            size, lastModified, metadata.getBitrate(), metadata.getCodec(),
+            metadata.getWidth(), metadata.getHeight(), metadata.getSampleRate());
+    }
+
+    // The same entry after its file changed: the metadata is dropped so it is probed again,
+    // the old duration is kept until then.
+    public MediaFile withChangedFile(long size, long lastModified) {
+        return new MediaFile(id, name, path, type, duration, size, lastModified, 0, null, 0, 0, 0);
+    }
+
+    // A type missing from old JSON reads as audio, like MediaType.fromValue.
     public boolean isAudio() {
-        return type.equals("audio");
+        return type != MediaType.VIDEO;
     }
 
     public boolean isVideo() {
-        return type.equals("video");
+        return type == MediaType.VIDEO;
     }
 
-    public String getFormattedDuration() {
-        long seconds = duration / 1000;
-        long minutes = seconds / 60;
-        long hours = minutes / 60;
-
-        seconds = seconds % 60;
-        minutes = minutes % 60;
+    // Streamed from an http(s) URL instead of read from a content URI.
+    public boolean isRemote() {
+        return path != null && (path.startsWith("http://") || path.startsWith("https://"));
+    }
 
-        if (hours > 0) {
-            return String.format("%02d:%02d:%02d", hours, minutes, seconds);
-        } else {
-            return String.format("%02d:%02d", minutes, seconds);
+    public String getFormattedDuration() {
+        if (formattedDuration == null) {
+            formattedDuration = MediaFormatter.formatDuration(duration);
         }
+        return formattedDuration;
     }
 
     public String getFormattedSize() {
-        if (size < 1024) {
-            return size + " B";
-        } else if (size < 1024 * 1024) {
-            return String.format("%.2f KB", size / 1024.0);
-        } else if (size < 1024 * 1024 * 1024) {
-            return String.format("%.2f MB", size / (1024.0 * 1024.0));
-        } else {
-            return String.format("%.2f GB", size / (1024.0 * 1024.0 * 1024.0));
+        if (formattedSize == null) {
+            formattedSize = MediaFormatter.formatSize(size);
         }
+        return formattedSize;
+    }
+
+    // Key of the thumbnails of this version at targetSize: a changed file or another view size
+    // never gets a stale or wrongly scaled one. Built once, a bind that hits the memory cache
+    // allocates nothing. Read on the main thread and by the decoders.
+    public synchronized String getThumbnailKey(int targetSize) {
+        if (thumbnailKey == null || thumbnailKeySize != targetSize) {
+            thumbnailKey = id + '_' + lastModified + '_' + targetSize;
+            thumbnailKeySize = targetSize;
+        }
+        return thumbnailKey;
     }
 
     @Override
@@ -105,13 +207,24 @@ public class MediaFile implements Parcelable {
         return 0;
     }
 
+    // The type is a flag instead of a string, and the metadata fields are only written once
+    // the file has been probed.
     @Override
     public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(PARCEL_COMPACT);
         dest.writeString(id);
         dest.writeString(name);
         dest.writeString(path);
-        dest.writeString(type);
+        dest.writeInt((isVideo() ? PARCEL_FLAG_VIDEO : 0) | (hasMetadata() ? PARCEL_FLAG_METADATA : 0));
         dest.writeLong(duration);
         dest.writeLong(size);
+        if (hasMetadata()) {
+            dest.writeLong(lastModified);
+            dest.writeInt(bitrate);
+            dest.writeString(codec);
+            dest.writeInt(width);
+            dest.writeInt(height);
+            dest.writeInt(sampleRate);
+        }
     }
 }
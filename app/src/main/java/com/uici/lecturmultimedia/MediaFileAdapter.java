@@ -1,25 +1,82 @@
 package com.uici.lecturmultimedia;
 
+import android.content.res.ColorStateList;
+import android.graphics.Bitmap;
 import android.view.LayoutInflater;
+import android.view.View;
 import android.view.ViewGroup;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 import com.uici.lecturmultimedia.databinding.ItemMediaFileBinding;
-import java.util.List;
 
+// Shows the library through a MediaFilePager: only the rows around what is on screen are
+// loaded, the others are bound as placeholders and rebound once their page arrives.
 public class MediaFileAdapter extends RecyclerView.Adapter<MediaFileAdapter.MediaFileViewHolder> {
+    private static final Telemetry.Histogram BIND_TIME = Telemetry.histogram("list.bind");
 
-    private List<MediaFile> mediaFiles;
     private OnMediaFileActionListener listener;
+    private final ThumbnailLoader thumbnailLoader;
+    private MediaFilePager pager;
+    // Added to placeholder positions so a placeholder id of one version of the library is
+    // never taken by another: the previous versions' sizes summed.
+    private long placeholderIdBase;
+    private final MediaFilePager.Listener pageListener = this::notifyItemRangeChanged;
+    // Incremented by every submitPager, a diff that isn't the last one submitted is dropped.
+    private int submitGeneration;
 
     public interface OnMediaFileActionListener {
         void onPlayClick(MediaFile mediaFile);
         void onDeleteClick(MediaFile mediaFile);
     }
 
-    public MediaFileAdapter(List<MediaFile> mediaFiles, OnMediaFileActionListener listener) {
-        this.mediaFiles = mediaFiles;
+    public MediaFileAdapter(OnMediaFileActionListener listener, ThumbnailLoader thumbnailLoader) {
         this.listener = listener;
+        this.thumbnailLoader = thumbnailLoader;
+        setHasStableIds(true);
+    }
+
+    // A new version of the library. The rows loaded in both versions are diffed by id, see
+    // PagerDiff, without reading a list that isn't in memory. The diff is calculated on the
+    // pager's background thread and the list keeps the previous version until it is applied;
+    // one overtaken by a later version is dropped. committed runs once the list shows pager.
+    public void submitPager(MediaFilePager pager, Runnable committed) {
+        int generation = ++submitGeneration;
+        MediaFilePager previous = this.pager;
+        if (previous == null) {
+            show(pager);
+            notifyDataSetChanged();
+            committed.run();
+            return;
+        }
+        PagerDiff diff = PagerDiff.prepare(previous, pager);
+        pager.getBackgroundExecutor().execute(() -> {
+            diff.calculate();
+            pager.getMainExecutor().execute(() -> {
+                if (generation != submitGeneration) {
+                    return;
+                }
+                previous.setListener(null);
+                placeholderIdBase += previous.size();
+                show(pager);
+                diff.dispatchUpdatesTo(new AdapterListUpdateCallback(this));
+                committed.run();
+            });
+        });
+    }
+
+    private void show(MediaFilePager pager) {
+        this.pager = pager;
+        pager.setListener(pageListener);
+    }
+
+    public MediaFilePager getPager() {
+        return pager;
+    }
+
+    @Override
+    public int getItemCount() {
+        return pager != null ? pager.size() : 0;
     }
 
     @NonNull
@@ -32,40 +89,123 @@ public class MediaFileAdapter extends RecyclerView.Adapter<MediaFileAdapter.Medi
 
     @Override
     public void onBindViewHolder(@NonNull MediaFileViewHolder holder, int position) {
-        holder.bind(mediaFiles.get(position));
+        long startedAt = BIND_TIME.start();
+        try {
+            MediaFile mediaFile = pager.get(position);
+            if (mediaFile != null) {
+                holder.bind(mediaFile);
+            } else {
+                holder.bindPlaceholder();
+            }
+        } finally {
+            BIND_TIME.stop(startedAt);
+        }
     }
 
     @Override
-    public int getItemCount() {
-        return mediaFiles.size();
+    public void onViewRecycled(@NonNull MediaFileViewHolder holder) {
+        holder.cancelThumbnail();
+    }
+
+    @Override
+    public long getItemId(int position) {
+        MediaFile mediaFile = pager.peek(position);
+        if (mediaFile == null) {
+            // Placeholders are negative, below RecyclerView.NO_ID.
+            return -2 - (placeholderIdBase + position);
+        }
+        return MediaLibraryStore.idKey(mediaFile.getId()) & Long.MAX_VALUE;
     }
 
     class MediaFileViewHolder extends RecyclerView.ViewHolder {
+        private static final String LABEL_AUDIO = "Audio";
+        private static final String LABEL_VIDEO = "Video";
+        private static final String UNKNOWN_DURATION = "--:--";
+
         private ItemMediaFileBinding binding;
+        private MediaFile mediaFile;
+        private int boundIconRes;
+        private final ColorStateList iconTint;
+        private final int thumbnailSize;
+        private final ThumbnailLoader.Target thumbnailTarget = this::showThumbnail;
+        private ThumbnailLoader.Request thumbnailRequest;
 
         public MediaFileViewHolder(ItemMediaFileBinding binding) {
             super(binding.getRoot());
             this.binding = binding;
+
+            // Created once per holder; they read the file bound last.
+            View.OnClickListener playListener = v -> {
+                if (mediaFile != null) {
+                    listener.onPlayClick(mediaFile);
+                }
+            };
+            binding.imageButtonPlay.setOnClickListener(playListener);
+            binding.imageButtonDelete.setOnClickListener(v -> {
+                if (mediaFile != null) {
+                    listener.onDeleteClick(mediaFile);
+                }
+            });
+            itemView.setOnClickListener(playListener);
+
+            iconTint = binding.imageViewFileIcon.getImageTintList();
+            thumbnailSize = binding.imageViewFileIcon.getLayoutParams().width;
         }
 
         public void bind(MediaFile mediaFile) {
+            this.mediaFile = mediaFile;
+            boolean audio = mediaFile.isAudio();
+
             binding.textViewFileName.setText(mediaFile.getName());
-            binding.textViewFileType.setText(mediaFile.isAudio() ? "Audio" : "Video");
+            binding.textViewFileType.setText(audio ? LABEL_AUDIO : LABEL_VIDEO);
             binding.textViewFileSize.setText(mediaFile.getFormattedSize());
 
             if (mediaFile.getDuration() > 0) {
                 binding.textViewFileDuration.setText(mediaFile.getFormattedDuration());
             } else {
-                binding.textViewFileDuration.setText("--:--");
+                binding.textViewFileDuration.setText(UNKNOWN_DURATION);
+            }
+
+            cancelThumbnail();
+            Bitmap thumbnail = thumbnailLoader.getCached(mediaFile, thumbnailSize);
+            if (thumbnail != null) {
+                showThumbnail(thumbnail);
+            } else {
+                showIcon(audio ? R.drawable.ic_audio : R.drawable.ic_video);
+                thumbnailRequest = thumbnailLoader.load(mediaFile, thumbnailSize, thumbnailTarget);
             }
+        }
+
+        void bindPlaceholder() {
+            mediaFile = null;
+            binding.textViewFileName.setText(null);
+            binding.textViewFileType.setText(null);
+            binding.textViewFileSize.setText(null);
+            binding.textViewFileDuration.setText(null);
+            cancelThumbnail();
+            showIcon(R.drawable.ic_audio);
+        }
 
-            int iconRes = mediaFile.isAudio() ? R.drawable.ic_audio : R.drawable.ic_video;
-            binding.imageViewFileIcon.setImageResource(iconRes);
+        void cancelThumbnail() {
+            if (thumbnailRequest != null) {
+                thumbnailRequest.cancel();
+                thumbnailRequest = null;
+            }
+        }
 
-            binding.imageButtonPlay.setOnClickListener(v -> listener.onPlayClick(mediaFile));
-            binding.imageButtonDelete.setOnClickListener(v -> listener.onDeleteClick(mediaFile));
+        private void showIcon(int iconRes) {
+            if (iconRes != boundIconRes) {
+                binding.imageViewFileIcon.setImageTintList(iconTint);
+                binding.imageViewFileIcon.setImageResource(iconRes);
+                boundIconRes = iconRes;
+            }
+        }
 
-            itemView.setOnClickListener(v -> listener.onPlayClick(mediaFile));
+        private void showThumbnail(Bitmap thumbnail) {
+            thumbnailRequest = null;
+            binding.imageViewFileIcon.setImageTintList(null);
+            binding.imageViewFileIcon.setImageBitmap(thumbnail);
+            boundIconRes = 0;
         }
     }
 }
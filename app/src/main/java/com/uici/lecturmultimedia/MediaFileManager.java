@@ -1,52 +1,214 @@
 package com.uici.lecturmultimedia;
 
 import android.content.Context;
-import android.content.SharedPreferences;
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-import java.lang.reflect.Type;
-import java.util.ArrayList;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 public class MediaFileManager {
-    private static final String PREFS_NAME = "MediaFilesPrefs";
-    private static final String KEY_MEDIA_FILES = "media_files";
+    private static final String TAG = "MediaFileManager";
+    private static final String LIBRARY_FILE_NAME = "media_library.log";
 
-    private SharedPreferences sharedPreferences;
-    private Gson gson;
+    // Opening indexes the whole log; writes are puts, deletes and rewrites alike.
+    private static final Telemetry.Histogram OPEN_TIME = Telemetry.histogram("library.open");
+    private static final Telemetry.Histogram READ_ALL_TIME = Telemetry.histogram("library.read_all");
+    private static final Telemetry.Histogram READ_PAGE_TIME = Telemetry.histogram("library.read_page");
+    private static final Telemetry.Histogram WRITE_TIME = Telemetry.histogram("library.write");
 
+    private static MediaLibraryStore sharedStore;
+
+    private final Context context;
+    private MediaLibraryStore store;
+    private LegacyLibraryMigration legacyMigration;
+
+    // Opens nothing: the store is opened by the first call, which is made off the main thread.
     public MediaFileManager(Context context) {
-        sharedPreferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        gson = new Gson();
+        this.context = context.getApplicationContext();
+    }
+
+    private synchronized MediaLibraryStore store() {
+        if (store == null) {
+            store = getSharedStore(context);
+            legacyMigration = new LegacyLibraryMigration(context, store);
+        }
+        return store;
+    }
+
+    private LegacyLibraryMigration legacyMigration() {
+        store();
+        return legacyMigration;
+    }
+
+    private static synchronized MediaLibraryStore getSharedStore(Context context) {
+        if (sharedStore == null) {
+            long startedAt = OPEN_TIME.start();
+            try {
+                sharedStore = new MediaLibraryStore(new File(context.getFilesDir(), LIBRARY_FILE_NAME));
+                if (sharedStore.getQuarantinedFile() != null) {
+                    Log.w(TAG, "Library file corrupt, entries after the damage are lost; copy kept in "
+                        + sharedStore.getQuarantinedFile());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            } finally {
+                OPEN_TIME.stop(startedAt);
+            }
+        }
+        return sharedStore;
+    }
+
+    public boolean hasLegacyLibrary() {
+        return legacyMigration().isPending();
+    }
+
+    public void migrateLegacyLibrary() {
+        try {
+            legacyMigration().run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
     public void saveMediaFiles(List<MediaFile> mediaFiles) {
-        String json = gson.toJson(mediaFiles);
-        sharedPreferences.edit().putString(KEY_MEDIA_FILES, json).apply();
+        long startedAt = WRITE_TIME.start();
+        try {
+            store().replaceAll(mediaFiles);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            WRITE_TIME.stop(startedAt);
+        }
     }
 
+    // Reads every entry, prefer getMediaFiles(start, count) for anything shown as a list.
     public List<MediaFile> getMediaFiles() {
-        String json = sharedPreferences.getString(KEY_MEDIA_FILES, null);
-        if (json != null) {
-            Type type = new TypeToken<ArrayList<MediaFile>>() {}.getType();
-            return gson.fromJson(json, type);
+        long startedAt = READ_ALL_TIME.start();
+        try {
+            return store().getAll();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            READ_ALL_TIME.stop(startedAt);
+        }
+    }
+
+    public List<MediaFile> getMediaFiles(int start, int count) {
+        long startedAt = READ_PAGE_TIME.start();
+        try {
+            return store().getRange(start, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            READ_PAGE_TIME.stop(startedAt);
+        }
+    }
+
+    public List<MediaFile> getMediaFiles(String[] ids, int start, int count) {
+        long startedAt = READ_PAGE_TIME.start();
+        try {
+            return store().getAll(ids, start, count);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            READ_PAGE_TIME.stop(startedAt);
+        }
+    }
+
+    public int getMediaFileCount() {
+        return store().size();
+    }
+
+    public long getGeneration() {
+        return store().getGeneration();
+    }
+
+    public MediaLibraryStore getStore() {
+        return store();
+    }
+
+    public MediaFile getMediaFile(String mediaFileId) {
+        try {
+            return store().get(mediaFileId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // -1 when the library doesn't have it.
+    public int getPosition(String mediaFileId) {
+        try {
+            return store().positionOf(mediaFileId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return new ArrayList<>();
     }
 
     public void addMediaFile(MediaFile mediaFile) {
-        List<MediaFile> mediaFiles = getMediaFiles();
-        mediaFiles.add(mediaFile);
-        saveMediaFiles(mediaFiles);
+        long startedAt = WRITE_TIME.start();
+        try {
+            store().put(mediaFile);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            WRITE_TIME.stop(startedAt);
+        }
+    }
+
+    public void addMediaFiles(List<MediaFile> mediaFiles) {
+        long startedAt = WRITE_TIME.start();
+        try {
+            store().putAll(mediaFiles);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            WRITE_TIME.stop(startedAt);
+        }
+    }
+
+    // Entries deleted meanwhile are skipped rather than added back.
+    public void updateMediaFiles(List<MediaFile> mediaFiles) {
+        long startedAt = WRITE_TIME.start();
+        try {
+            store().updateAll(mediaFiles);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            WRITE_TIME.stop(startedAt);
+        }
     }
 
     public void deleteMediaFile(String mediaFileId) {
-        List<MediaFile> mediaFiles = getMediaFiles();
-        mediaFiles.removeIf(file -> file.getId().equals(mediaFileId));
-        saveMediaFiles(mediaFiles);
+        long startedAt = WRITE_TIME.start();
+        try {
+            store().delete(mediaFileId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            WRITE_TIME.stop(startedAt);
+        }
+    }
+
+    public int deleteMediaFiles(List<String> mediaFileIds) {
+        long startedAt = WRITE_TIME.start();
+        try {
+            return store().deleteAll(mediaFileIds);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            WRITE_TIME.stop(startedAt);
+        }
     }
 
     public void clearAllMediaFiles() {
-        sharedPreferences.edit().remove(KEY_MEDIA_FILES).apply();
+        long startedAt = WRITE_TIME.start();
+        try {
+            store().clear();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            WRITE_TIME.stop(startedAt);
+        }
     }
 }
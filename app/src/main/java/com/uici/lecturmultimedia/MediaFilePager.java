@@ -0,0 +1,142 @@
+package com.uici.lecturmultimedia;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+// A window over one version of the library for the list. Rows are read a page at a time
+// around the positions being bound and only the most recently used pages are kept, so the
+// memory held by the list follows what is on screen rather than the size of the library.
+// A row whose page isn't loaded yet is a placeholder (null) until the page arrives, and so
+// is one the source no longer has an entry for.
+// Everything but preload() is called on the main thread.
+public class MediaFilePager {
+    public static final int PAGE_SIZE = 50;
+    // A screen of rows plus the pages on either side while flinging.
+    static final int MAX_PAGES = 5;
+    // Binding a row this close to the edge of its page loads the neighbouring page.
+    private static final int PREFETCH_DISTANCE = PAGE_SIZE / 2;
+
+    public interface PageSource {
+        // Called on the background executor.
+        List<MediaFile> loadPage(int start, int count);
+    }
+
+    public interface Listener {
+        void onRowsLoaded(int start, int count);
+    }
+
+    private final PageSource source;
+    private final int size;
+    private final Executor background;
+    private final Executor main;
+    private final LinkedHashMap<Integer, List<MediaFile>> pages =
+        new LinkedHashMap<Integer, List<MediaFile>>(MAX_PAGES * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, List<MediaFile>> eldest) {
+                return size() > MAX_PAGES;
+            }
+        };
+    private final Set<Integer> loading = new HashSet<>();
+    private Listener listener;
+    private volatile int lastPosition;
+
+    public MediaFilePager(PageSource source, int size, Executor background, Executor main) {
+        this.source = source;
+        this.size = size;
+        this.background = background;
+        this.main = main;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Where the pages are read, and where their results are delivered.
+    public Executor getBackgroundExecutor() {
+        return background;
+    }
+
+    public Executor getMainExecutor() {
+        return main;
+    }
+
+    // The row at position, or null while its page loads.
+    public MediaFile get(int position) {
+        lastPosition = position;
+        int page = position / PAGE_SIZE;
+        int offset = position % PAGE_SIZE;
+        List<MediaFile> rows = pages.get(page);
+        if (rows == null) {
+            request(page);
+        }
+        request(offset < PREFETCH_DISTANCE ? page - 1 : page + 1);
+        return rows != null && offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    // The row at position if its page is loaded, without loading anything.
+    public MediaFile peek(int position) {
+        List<MediaFile> rows = pages.get(position / PAGE_SIZE);
+        int offset = position % PAGE_SIZE;
+        return rows != null && offset < rows.size() ? rows.get(offset) : null;
+    }
+
+    // Position of a loaded row, or -1.
+    public int indexOfLoaded(String id) {
+        for (Map.Entry<Integer, List<MediaFile>> entry : pages.entrySet()) {
+            List<MediaFile> rows = entry.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                MediaFile row = rows.get(i);
+                if (row != null && row.getId().equals(id)) {
+                    return entry.getKey() * PAGE_SIZE + i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    // The last position bound, where the next version of the library should start loading.
+    public int getLastPosition() {
+        return lastPosition;
+    }
+
+    // Loads the pages around position on the calling thread, before the pager is handed to
+    // the list, so the rows on screen don't flash as placeholders when the library changes.
+    public void preload(int position) {
+        int page = Math.min(position, Math.max(0, size - 1)) / PAGE_SIZE;
+        lastPosition = position;
+        for (int p = Math.max(0, page - 1); p <= page + 1 && p * PAGE_SIZE < size; p++) {
+            pages.put(p, source.loadPage(p * PAGE_SIZE, PAGE_SIZE));
+        }
+    }
+
+    private void request(int page) {
+        if (page < 0 || page * PAGE_SIZE >= size || pages.containsKey(page) || !loading.add(page)) {
+            return;
+        }
+        background.execute(() -> {
+            List<MediaFile> rows;
+            try {
+                rows = source.loadPage(page * PAGE_SIZE, PAGE_SIZE);
+            } catch (RuntimeException e) {
+                // Asked again the next time one of its rows is bound.
+                main.execute(() -> loading.remove(page));
+                return;
+            }
+            main.execute(() -> {
+                loading.remove(page);
+                pages.put(page, rows);
+                if (listener != null) {
+                    listener.onRowsLoaded(page * PAGE_SIZE, rows.size());
+                }
+            });
+        });
+    }
+}
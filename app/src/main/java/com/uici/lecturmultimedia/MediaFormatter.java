@@ -0,0 +1,107 @@
+package com.uici.lecturmultimedia;
+
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+
+// Hand-rolled equivalents of the String.format patterns used for media metadata,
+// writing into a caller supplied StringBuilder instead of building a Formatter.
+public final class MediaFormatter {
+    private static final long KB = 1024;
+    private static final long MB = KB * 1024;
+    private static final long GB = MB * 1024;
+
+    private static volatile Locale separatorLocale;
+    private static volatile char decimalSeparator;
+
+    private MediaFormatter() {
+    }
+
+    // Same output as "%02d:%02d" or "%02d:%02d:%02d" for hours > 0.
+    public static StringBuilder appendDuration(StringBuilder sb, long milliseconds) {
+        long seconds = milliseconds / 1000;
+        long minutes = seconds / 60;
+        long hours = minutes / 60;
+
+        seconds = seconds % 60;
+        minutes = minutes % 60;
+
+        if (hours > 0) {
+            appendTwoDigits(sb, hours).append(':');
+        }
+        appendTwoDigits(sb, minutes).append(':');
+        return appendTwoDigits(sb, seconds);
+    }
+
+    // appendDuration into a caller supplied buffer, returning the length written. dest needs
+    // room for 8 chars below 100 hours.
+    public static int writeDuration(char[] dest, long milliseconds) {
+        long seconds = milliseconds / 1000;
+        long minutes = seconds / 60;
+        long hours = minutes / 60;
+
+        int length = 0;
+        if (hours > 0) {
+            length = writeTwoDigits(dest, length, hours);
+            dest[length++] = ':';
+        }
+        length = writeTwoDigits(dest, length, minutes % 60);
+        dest[length++] = ':';
+        return writeTwoDigits(dest, length, seconds % 60);
+    }
+
+    // Same output as "%d B" or "%.2f KB/MB/GB" in the default locale.
+    public static StringBuilder appendSize(StringBuilder sb, long size) {
+        if (size < KB) {
+            return sb.append(size).append(" B");
+        } else if (size < MB) {
+            return appendHundredths(sb, size, KB).append(" KB");
+        } else if (size < GB) {
+            return appendHundredths(sb, size, MB).append(" MB");
+        } else {
+            return appendHundredths(sb, size, GB).append(" GB");
+        }
+    }
+
+    public static String formatDuration(long milliseconds) {
+        return appendDuration(new StringBuilder(8), milliseconds).toString();
+    }
+
+    public static String formatSize(long size) {
+        return appendSize(new StringBuilder(12), size).toString();
+    }
+
+    static StringBuilder appendTwoDigits(StringBuilder sb, long value) {
+        if (value < 10) {
+            sb.append('0');
+        }
+        return sb.append(value);
+    }
+
+    private static int writeTwoDigits(char[] dest, int offset, long value) {
+        int digits = 2;
+        for (long rest = value / 100; rest > 0; rest /= 10) {
+            digits++;
+        }
+        for (int i = offset + digits - 1; i >= offset; i--) {
+            dest[i] = (char) ('0' + value % 10);
+            value /= 10;
+        }
+        return offset + digits;
+    }
+
+    private static StringBuilder appendHundredths(StringBuilder sb, long size, long unit) {
+        long hundredths = Math.round(size * 100.0 / unit);
+        sb.append(hundredths / 100).append(decimalSeparator());
+        return appendTwoDigits(sb, hundredths % 100);
+    }
+
+    // DecimalFormatSymbols.getInstance() allocates, so the separator is cached per locale.
+    private static char decimalSeparator() {
+        Locale locale = Locale.getDefault(Locale.Category.FORMAT);
+        if (locale != separatorLocale) {
+            decimalSeparator = DecimalFormatSymbols.getInstance(locale).getDecimalSeparator();
+            separatorLocale = locale;
+        }
+        return decimalSeparator;
+    }
+}
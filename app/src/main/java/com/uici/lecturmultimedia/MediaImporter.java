@@ -0,0 +1,346 @@
+package com.uici.lecturmultimedia;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.util.Log;
+import android.webkit.MimeTypeMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Imports picked documents or whole folders in the background. Metadata is resolved by
+// a small worker pool with one projected query per document (or one query per folder
+// listing), and results are committed to the library in batches.
+public class MediaImporter {
+    private static final String TAG = "MediaImporter";
+
+    private static final int MAX_PARALLEL_QUERIES = 4;
+    private static final int MAX_IN_FLIGHT = MAX_PARALLEL_QUERIES * 2;
+    private static final int COMMIT_BATCH_SIZE = 50;
+    private static final long PROGRESS_INTERVAL_MS = 250;
+
+    // A picked document from permission to MediaFile, and each provider query within it.
+    private static final Telemetry.Histogram RESOLVE_TIME = Telemetry.histogram("import.resolve");
+    private static final Telemetry.Histogram QUERY_TIME = Telemetry.histogram("import.query");
+    private static final Telemetry.Counter IMPORTED = Telemetry.counter("import.imported");
+    private static final Telemetry.Counter FAILED = Telemetry.counter("import.failed");
+
+    private static final String[] DOCUMENT_PROJECTION = {
+        OpenableColumns.DISPLAY_NAME,
+        OpenableColumns.SIZE,
+        DocumentsContract.Document.COLUMN_LAST_MODIFIED
+    };
+    private static final String[] BASIC_DOCUMENT_PROJECTION = {
+        OpenableColumns.DISPLAY_NAME,
+        OpenableColumns.SIZE
+    };
+    private static final String[] CHILD_PROJECTION = {
+        DocumentsContract.Document.COLUMN_DOCUMENT_ID,
+        DocumentsContract.Document.COLUMN_DISPLAY_NAME,
+        DocumentsContract.Document.COLUMN_SIZE,
+        DocumentsContract.Document.COLUMN_MIME_TYPE,
+        DocumentsContract.Document.COLUMN_LAST_MODIFIED
+    };
+
+    private static MediaImporter instance;
+
+    private final ContentResolver contentResolver;
+    private final MediaLibraryRepository repository;
+    private final ExecutorService coordinator = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "media-import"));
+    private final ExecutorService workers = Executors.newFixedThreadPool(MAX_PARALLEL_QUERIES,
+        runnable -> new Thread(runnable, "media-import-query"));
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Listener listener;
+
+    public interface Listener {
+        void onProgress(int done, int total, float filesPerSecond);
+
+        void onComplete(int imported, int failed);
+    }
+
+    public static synchronized MediaImporter getInstance(Context context) {
+        if (instance == null) {
+            instance = new MediaImporter(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private MediaImporter(Context context) {
+        contentResolver = context.getContentResolver();
+        repository = MediaLibraryRepository.getInstance(context);
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void importDocuments(List<Uri> uris) {
+        coordinator.execute(() -> runImport(uris));
+    }
+
+    public void importTree(Uri treeUri) {
+        coordinator.execute(() -> {
+            try {
+                contentResolver.takePersistableUriPermission(treeUri,
+                    Intent.FLAG_GRANT_READ_URI_PERMISSION);
+                commit(listTree(treeUri), SystemClock.elapsedRealtime());
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Unable to list " + treeUri, e);
+                postComplete(0, 1);
+            }
+        });
+    }
+
+    // Adds an http(s) media URL. Returns false when it isn't one; nothing is fetched here,
+    // the stream is only opened when it is played.
+    public boolean importUrl(String url) {
+        Uri uri = Uri.parse(url.trim());
+        String scheme = uri.getScheme();
+        if (!("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme)) || uri.getHost() == null) {
+            return false;
+        }
+        String extension = MimeTypeMap.getFileExtensionFromUrl(uri.toString());
+        String mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension.toLowerCase());
+        String name = uri.getLastPathSegment() != null ? uri.getLastPathSegment() : uri.getHost();
+        MediaFile mediaFile = newMediaFile(uri, name, mimeType, 0, 0);
+        repository.addMediaFile(mediaFile, success -> notifyComplete(success ? 1 : 0, success ? 0 : 1));
+        return true;
+    }
+
+    private void runImport(List<Uri> uris) {
+        long start = SystemClock.elapsedRealtime();
+        CompletionService<MediaFile> completion = new ExecutorCompletionService<>(workers);
+        ImportResult result = new ImportResult(start);
+        List<MediaFile> batch = new ArrayList<>(COMMIT_BATCH_SIZE);
+        int total = uris.size();
+        int submitted = 0;
+        int done = 0;
+        int resolved = 0;
+        long lastProgress = 0;
+
+        while (done < total) {
+            // Bound the number of queries queued behind the worker pool.
+            while (submitted < total && submitted - done < MAX_IN_FLIGHT) {
+                Uri uri = uris.get(submitted++);
+                completion.submit(() -> resolveDocument(uri));
+            }
+
+            MediaFile mediaFile = null;
+            try {
+                mediaFile = completion.take().get();
+            } catch (ExecutionException e) {
+                Log.w(TAG, "Unable to import document", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+            done++;
+
+            if (mediaFile != null) {
+                batch.add(mediaFile);
+                resolved++;
+            }
+            if (batch.size() == COMMIT_BATCH_SIZE) {
+                result.commit(new ArrayList<>(batch));
+                batch.clear();
+            }
+
+            long now = SystemClock.elapsedRealtime();
+            if (now - lastProgress >= PROGRESS_INTERVAL_MS) {
+                lastProgress = now;
+                postProgress(done, total, start);
+            }
+        }
+
+        // Documents never resolved (or not reached when interrupted) failed too.
+        result.finish(batch, total - resolved);
+    }
+
+    private void commit(List<MediaFile> mediaFiles, long start) {
+        ImportResult result = new ImportResult(start);
+        int total = mediaFiles.size();
+        int from = 0;
+        for (; total - from > COMMIT_BATCH_SIZE; from += COMMIT_BATCH_SIZE) {
+            int to = from + COMMIT_BATCH_SIZE;
+            result.commit(new ArrayList<>(mediaFiles.subList(from, to)));
+            postProgress(to, total, start);
+        }
+        result.finish(new ArrayList<>(mediaFiles.subList(from, total)), 0);
+        postProgress(total, total, start);
+    }
+
+    // Adds up what the batches of one import stored. Their callbacks run on the main thread in
+    // the order the batches were committed, so the last one has seen every result.
+    private final class ImportResult {
+        private final long start;
+        private int imported;
+        private int failed;
+
+        ImportResult(long start) {
+            this.start = start;
+        }
+
+        void commit(List<MediaFile> batch) {
+            commit(batch, 0, false);
+        }
+
+        // Commits the last batch and reports the import once it is stored.
+        void finish(List<MediaFile> batch, int unresolved) {
+            commit(batch, unresolved, true);
+        }
+
+        private void commit(List<MediaFile> batch, int unresolved, boolean last) {
+            int count = batch.size();
+            repository.addMediaFiles(batch, success -> {
+                if (success) {
+                    imported += count;
+                } else {
+                    failed += count;
+                }
+                failed += unresolved;
+                if (last) {
+                    logThroughput(imported, start);
+                    notifyComplete(imported, failed);
+                }
+            });
+        }
+    }
+
+    private MediaFile resolveDocument(Uri uri) {
+        long startedAt = RESOLVE_TIME.start();
+        try {
+            contentResolver.takePersistableUriPermission(uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+            String name = null;
+            long size = 0;
+            long lastModified = 0;
+            long queryStartedAt = QUERY_TIME.start();
+            try {
+                Cursor cursor;
+                try {
+                    cursor = contentResolver.query(uri, DOCUMENT_PROJECTION, null, null, null);
+                } catch (IllegalArgumentException e) {
+                    // Providers that only support the OpenableColumns.
+                    cursor = contentResolver.query(uri, BASIC_DOCUMENT_PROJECTION, null, null, null);
+                }
+                if (cursor != null) {
+                    try {
+                        if (cursor.moveToFirst()) {
+                            int nameIndex = cursor.getColumnIndex(OpenableColumns.DISPLAY_NAME);
+                            if (nameIndex != -1) {
+                                name = cursor.getString(nameIndex);
+                            }
+                            int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
+                            if (sizeIndex != -1 && !cursor.isNull(sizeIndex)) {
+                                size = cursor.getLong(sizeIndex);
+                            }
+                            int modifiedIndex =
+                                cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                            if (modifiedIndex != -1 && !cursor.isNull(modifiedIndex)) {
+                                lastModified = cursor.getLong(modifiedIndex);
+                            }
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            } finally {
+                QUERY_TIME.stop(queryStartedAt);
+            }
+
+            if (name == null) {
+                name = uri.getLastPathSegment();
+            }
+            return newMediaFile(uri, name, contentResolver.getType(uri), size, lastModified);
+        } finally {
+            RESOLVE_TIME.stop(startedAt);
+        }
+    }
+
+    private List<MediaFile> listTree(Uri treeUri) {
+        List<MediaFile> mediaFiles = new ArrayList<>();
+        ArrayDeque<String> directories = new ArrayDeque<>();
+        directories.add(DocumentsContract.getTreeDocumentId(treeUri));
+
+        while (!directories.isEmpty()) {
+            Uri childrenUri = DocumentsContract.buildChildDocumentsUriUsingTree(
+                treeUri, directories.poll());
+            long queryStartedAt = QUERY_TIME.start();
+            try (Cursor cursor = contentResolver.query(childrenUri, CHILD_PROJECTION, null, null, null)) {
+                if (cursor == null) {
+                    continue;
+                }
+                while (cursor.moveToNext()) {
+                    String documentId = cursor.getString(0);
+                    String mimeType = cursor.getString(3);
+                    if (DocumentsContract.Document.MIME_TYPE_DIR.equals(mimeType)) {
+                        directories.add(documentId);
+                    } else if (mimeType != null
+                        && (mimeType.startsWith("audio/") || mimeType.startsWith("video/"))) {
+                        Uri uri = DocumentsContract.buildDocumentUriUsingTree(treeUri, documentId);
+                        long size = cursor.isNull(2) ? 0 : cursor.getLong(2);
+                        long lastModified = cursor.isNull(4) ? 0 : cursor.getLong(4);
+                        mediaFiles.add(newMediaFile(uri, cursor.getString(1), mimeType, size, lastModified));
+                    }
+                }
+            } finally {
+                QUERY_TIME.stop(queryStartedAt);
+            }
+        }
+        return mediaFiles;
+    }
+
+    // Duration and the other stream fields are filled in later by MediaMetadataExtractor.
+    private static MediaFile newMediaFile(Uri uri, String name, String mimeType, long size, long lastModified) {
+        MediaType type = mimeType != null && mimeType.startsWith("video") ? MediaType.VIDEO : MediaType.AUDIO;
+        return new MediaFile(UUID.randomUUID().toString(), name, uri.toString(), type, 0, size,
+            lastModified, 0, null, 0, 0, 0);
+    }
+
+    private void postProgress(int done, int total, long start) {
+        float filesPerSecond = filesPerSecond(done, start);
+        mainHandler.post(() -> {
+            if (listener != null) {
+                listener.onProgress(done, total, filesPerSecond);
+            }
+        });
+    }
+
+    private void postComplete(int imported, int failed) {
+        mainHandler.post(() -> notifyComplete(imported, failed));
+    }
+
+    private void notifyComplete(int imported, int failed) {
+        IMPORTED.add(imported);
+        FAILED.add(failed);
+        if (listener != null) {
+            listener.onComplete(imported, failed);
+        }
+    }
+
+    private static void logThroughput(int imported, long start) {
+        long elapsed = SystemClock.elapsedRealtime() - start;
+        Log.i(TAG, "Imported " + imported + " files in " + elapsed + " ms ("
+            + filesPerSecond(imported, start) + " files/s)");
+    }
+
+    private static float filesPerSecond(int done, long start) {
+        long elapsed = Math.max(1, SystemClock.elapsedRealtime() - start);
+        return done * 1000f / elapsed;
+    }
+}
@@ -0,0 +1,409 @@
+package com.uici.lecturmultimedia;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MutableLiveData;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+// Runs every MediaFileManager call on a single background thread and publishes a pager over
+// each new version of the library, so the UI never touches the disk. Pages are read on their
+// own thread, a scroll doesn't wait behind an import.
+public class MediaLibraryRepository {
+    private static final String TAG = "MediaLibraryRepository";
+    // Entries checked for missing metadata at a time when the library loads.
+    private static final int METADATA_BATCH_SIZE = 500;
+    // Entries read at a time while building the search index.
+    private static final int INDEX_BATCH_SIZE = 1000;
+
+    private static MediaLibraryRepository instance;
+
+    private final MediaFileManager mediaFileManager;
+    private final MediaMetadataExtractor metadataExtractor;
+    private final ExecutorService executor;
+    private final ExecutorService pageExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "media-library-pages");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "media-library-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicInteger searchSequence = new AtomicInteger();
+    // Only touched on the search thread.
+    private LibraryIndex libraryIndex;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final MutableLiveData<MediaFilePager> library = new MutableLiveData<>();
+    private boolean loadRequested;
+    private long publishedGeneration = -1;
+    private MediaFilePager publishedPager;
+
+    public interface Callback {
+        void onComplete(boolean success);
+    }
+
+    public interface QueueSourceCallback {
+        // source is null when the library doesn't have the file.
+        void onLoaded(PlaybackQueue.Source source, int position);
+    }
+
+    public interface MediaFileCallback {
+        void onLoaded(MediaFile mediaFile);
+    }
+
+    public interface SearchCallback {
+        void onResults(MediaFilePager results);
+    }
+
+    // Called from Application.onCreate: builds the objects only, the store is opened by the
+    // first call on the io thread.
+    public static synchronized MediaLibraryRepository getInstance(Context context) {
+        if (instance == null) {
+            Context appContext = context.getApplicationContext();
+            instance = new MediaLibraryRepository(appContext, new MediaFileManager(appContext));
+        }
+        return instance;
+    }
+
+    MediaLibraryRepository(Context context, MediaFileManager mediaFileManager) {
+        this.mediaFileManager = mediaFileManager;
+        this.metadataExtractor = new MediaMetadataExtractor(context, this::updateMediaFiles);
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "media-library-io");
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    public LiveData<MediaFilePager> getLibrary() {
+        synchronized (this) {
+            if (!loadRequested) {
+                loadRequested = true;
+                executor.execute(this::load);
+            }
+        }
+        return library;
+    }
+
+    // The library as a playback queue source, with the position of mediaFileId in it. The
+    // queue reads each entry by position when it gets to it, on the page thread; entries
+    // added or removed meanwhile shift the ones after them, as in the list.
+    public void getQueueSource(String mediaFileId, QueueSourceCallback callback) {
+        pageExecutor.execute(() -> {
+            int position;
+            int count;
+            try {
+                position = mediaFileManager.getPosition(mediaFileId);
+                count = mediaFileManager.getMediaFileCount();
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Unable to find " + mediaFileId, e);
+                position = -1;
+                count = 0;
+            }
+            PlaybackQueue.Source source = position != -1 ? new LibrarySource(count) : null;
+            int found = position;
+            mainHandler.post(() -> callback.onLoaded(source, found));
+        });
+    }
+
+    // One entry, or null when the library doesn't have it. Read on the page thread, which only
+    // does short reads, so opening a file doesn't wait behind an import.
+    public void getMediaFile(String mediaFileId, MediaFileCallback callback) {
+        pageExecutor.execute(() -> {
+            MediaFile mediaFile;
+            try {
+                mediaFile = mediaFileManager.getMediaFile(mediaFileId);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Unable to read " + mediaFileId, e);
+                mediaFile = null;
+            }
+            MediaFile loaded = mediaFile;
+            mainHandler.post(() -> callback.onLoaded(loaded));
+        });
+    }
+
+    // Runs query off the main thread, on an index built on first use and again whenever the
+    // library changed. A later call supersedes this one: it stops at its next check, even in
+    // the middle of building the index, and its results are never delivered, so typing only
+    // pays for the last keystroke. The results are read by id, an entry removed since is a
+    // placeholder until the query is run again.
+    public void search(LibraryIndex.Query query, SearchCallback callback) {
+        int sequence = searchSequence.incrementAndGet();
+        BooleanSupplier superseded = () -> searchSequence.get() != sequence;
+        searchExecutor.execute(() -> {
+            if (superseded.getAsBoolean()) {
+                return;
+            }
+            String[] ids;
+            try {
+                LibraryIndex index = getLibraryIndex(superseded);
+                if (index == null) {
+                    return;
+                }
+                long start = System.nanoTime();
+                int[] positions = index.search(query, superseded);
+                if (positions == null) {
+                    return;
+                }
+                ids = new String[positions.length];
+                for (int i = 0; i < positions.length; i++) {
+                    ids[i] = index.getId(positions[i]);
+                }
+                Log.d(TAG, "Query \"" + query.text + "\" " + query.typeFilter + " " + query.sortOrder + ": "
+                    + positions.length + " results in " + (System.nanoTime() - start) / 1000 + " us");
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Search failed", e);
+                return;
+            }
+            MediaFilePager results = new MediaFilePager(
+                (start, count) -> mediaFileManager.getMediaFiles(ids, start, count),
+                ids.length, pageExecutor, mainHandler::post);
+            try {
+                results.preload(0);
+            } catch (RuntimeException e) {
+                // The list loads the pages itself as rows are bound.
+            }
+            mainHandler.post(() -> {
+                if (!superseded.getAsBoolean()) {
+                    callback.onResults(results);
+                }
+            });
+        });
+    }
+
+    // Drops any pending search and, once the search is closed, the index.
+    public void cancelSearch() {
+        searchSequence.incrementAndGet();
+        searchExecutor.execute(() -> libraryIndex = null);
+    }
+
+    public void addMediaFile(MediaFile mediaFile, Callback callback) {
+        executor.execute(() -> {
+            boolean success = true;
+            try {
+                mediaFileManager.addMediaFile(mediaFile);
+                metadataExtractor.enqueue(Collections.singletonList(mediaFile));
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Unable to add " + mediaFile.getId(), e);
+                success = false;
+            }
+            publish();
+            deliver(callback, success);
+        });
+    }
+
+    public void addMediaFiles(List<MediaFile> batch, Callback callback) {
+        executor.execute(() -> {
+            boolean success = true;
+            try {
+                mediaFileManager.addMediaFiles(batch);
+                metadataExtractor.enqueue(batch);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Unable to add " + batch.size() + " files", e);
+                success = false;
+            }
+            publish();
+            deliver(callback, success);
+        });
+    }
+
+    public void deleteMediaFile(String mediaFileId, Callback callback) {
+        executor.execute(() -> {
+            boolean success = true;
+            try {
+                mediaFileManager.deleteMediaFile(mediaFileId);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Unable to delete " + mediaFileId, e);
+                success = false;
+            }
+            publish();
+            deliver(callback, success);
+        });
+    }
+
+    // Removes entries found dead by LibraryScanner as one batch: a single store mutation and
+    // a single new pager, however many there are.
+    public void deleteMediaFiles(List<String> mediaFileIds, Callback callback) {
+        executor.execute(() -> {
+            boolean success = true;
+            try {
+                mediaFileManager.deleteMediaFiles(mediaFileIds);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Unable to delete " + mediaFileIds.size() + " files", e);
+                success = false;
+            }
+            publish();
+            deliver(callback, success);
+        });
+    }
+
+    // Entries whose file changed since it was probed: stored with the new size and date,
+    // then probed again.
+    public void refreshMediaFiles(List<MediaFile> changed) {
+        executor.execute(() -> {
+            try {
+                mediaFileManager.updateMediaFiles(changed);
+                metadataExtractor.enqueue(changed);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Unable to refresh " + changed.size() + " files", e);
+            }
+            publish();
+        });
+    }
+
+    // Replaces entries with their probed versions, skipping files deleted in the meantime.
+    public void updateMediaFiles(List<MediaFile> updated) {
+        executor.execute(() -> {
+            try {
+                mediaFileManager.updateMediaFiles(updated);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Unable to update " + updated.size() + " files", e);
+            }
+            publish();
+        });
+    }
+
+    private void load() {
+        publish();
+        if (mediaFileManager.hasLegacyLibrary()) {
+            try {
+                mediaFileManager.migrateLegacyLibrary();
+            } catch (RuntimeException e) {
+                // Progress is checkpointed, the next launch resumes the migration.
+                Log.e(TAG, "Legacy library migration interrupted", e);
+            }
+            publish();
+        }
+        enqueueUnprobed(0);
+    }
+
+    // Hands the entries never probed (added while the app was stopped mid-probe) to the
+    // extractor a page at a time, each page its own task so mutations queued meanwhile don't
+    // wait for the whole library. An entry shifted past the scan by a deletion is probed on
+    // the next launch.
+    private void enqueueUnprobed(int start) {
+        List<MediaFile> page;
+        try {
+            page = mediaFileManager.getMediaFiles(start, METADATA_BATCH_SIZE);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unable to read entries " + start + "-" + (start + METADATA_BATCH_SIZE), e);
+            return;
+        }
+        List<MediaFile> unprobed = new ArrayList<>();
+        for (MediaFile mediaFile : page) {
+            if (!mediaFile.hasMetadata()) {
+                unprobed.add(mediaFile);
+            }
+        }
+        if (!unprobed.isEmpty()) {
+            metadataExtractor.enqueue(unprobed);
+        }
+        if (page.size() == METADATA_BATCH_SIZE) {
+            executor.execute(() -> enqueueUnprobed(start + METADATA_BATCH_SIZE));
+        }
+    }
+
+    private void publish() {
+        long generation = mediaFileManager.getGeneration();
+        if (generation == publishedGeneration) {
+            return;
+        }
+        publishedGeneration = generation;
+        MediaFilePager pager = new MediaFilePager(this::loadPage, mediaFileManager.getMediaFileCount(),
+            pageExecutor, mainHandler::post);
+        try {
+            // Around where the list was, so the rows on screen are there right away.
+            pager.preload(publishedPager != null ? publishedPager.getLastPosition() : 0);
+        } catch (RuntimeException e) {
+            // The list loads the pages itself as rows are bound.
+        }
+        publishedPager = pager;
+        library.postValue(pager);
+    }
+
+    // Null once superseded returns true, checked between batches. The generation is read
+    // first: if the library changes while the index is being built, its batches may come from
+    // both versions, so it is tagged with the older one and rebuilt by the next query. Its
+    // results are ids, the entries shown are always read from the current version.
+    private LibraryIndex getLibraryIndex(BooleanSupplier superseded) {
+        long generation = mediaFileManager.getGeneration();
+        if (libraryIndex == null || libraryIndex.getGeneration() != generation) {
+            long start = System.nanoTime();
+            LibraryIndex.Builder builder = new LibraryIndex.Builder();
+            int count = mediaFileManager.getMediaFileCount();
+            for (int position = 0; position < count; position += INDEX_BATCH_SIZE) {
+                if (superseded.getAsBoolean()) {
+                    return null;
+                }
+                for (MediaFile mediaFile : mediaFileManager.getMediaFiles(position, INDEX_BATCH_SIZE)) {
+                    builder.add(mediaFile);
+                }
+            }
+            libraryIndex = builder.build(generation);
+            Log.d(TAG, "Indexed " + libraryIndex.size() + " entries in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        return libraryIndex;
+    }
+
+    private List<MediaFile> loadPage(int start, int count) {
+        try {
+            return mediaFileManager.getMediaFiles(start, count);
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Unable to read entries " + start + "-" + (start + count), e);
+            throw e;
+        }
+    }
+
+    private class LibrarySource implements PlaybackQueue.Source {
+        private final int size;
+
+        LibrarySource(int size) {
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void get(int position, Consumer<MediaFile> callback) {
+            pageExecutor.execute(() -> {
+                MediaFile mediaFile;
+                try {
+                    List<MediaFile> entries = mediaFileManager.getMediaFiles(position, 1);
+                    mediaFile = entries.isEmpty() ? null : entries.get(0);
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Unable to read entry " + position, e);
+                    mediaFile = null;
+                }
+                MediaFile loaded = mediaFile;
+                mainHandler.post(() -> callback.accept(loaded));
+            });
+        }
+    }
+
+    private void deliver(Callback callback, boolean success) {
+        if (callback != null) {
+            mainHandler.post(() -> callback.onComplete(success));
+        }
+    }
+}
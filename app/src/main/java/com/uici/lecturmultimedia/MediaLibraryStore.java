@@ -0,0 +1,1073 @@
+package com.uici.lecturmultimedia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.UTFDataFormatException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+// Append-only log of PUT/DELETE records keyed by MediaFile id. Only an index of where each
+// live record sits in the log is kept in memory, a few primitive slots per entry, and the
+// entries themselves are read back a page at a time, so the heap used by the library doesn't
+// grow with its size. Every mutation is a single record. Records are buffered and written
+// behind by a flusher thread, which coalesces a burst of mutations into one write. The log
+// is rewritten (compacted) once dead records outnumber live ones.
+//
+// Each record is framed by its length and followed by a CRC32 of its bytes. On open, a
+// record cut short by the end of the file is the torn tail of an interrupted append and is
+// dropped; a bad checksum or an unknown record type anywhere else is corruption, or a newer
+// format. The log is then kept aside as a copy (getQuarantinedFile()) and only the records
+// before that point are loaded, instead of silently losing everything after it.
+public class MediaLibraryStore {
+    private static final int MAGIC = 0x4D4C4942;
+    private static final int VERSION = 2;
+    // Records without length or checksum, upgraded to VERSION when opened.
+    private static final int LEGACY_VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // Three strings of at most 64 KB and a few numbers.
+    private static final int MAX_RECORD_SIZE = 256 * 1024;
+
+    private static final byte OP_PUT = 1;
+    private static final byte OP_DELETE = 2;
+    // PUT followed by the probed metadata fields.
+    private static final byte OP_PUT_EXTENDED = 3;
+    // PUT with a flags byte for the type and the optional fields, numbers as varints and the
+    // metadata fields only once probed. The only record written now; the record type is the
+    // version, older ones are still read.
+    private static final byte OP_PUT_COMPACT = 4;
+
+    private static final int FLAG_VIDEO = 1;
+    private static final int FLAG_NAME = 2;
+    private static final int FLAG_PATH = 4;
+    private static final int FLAG_METADATA = 8;
+
+    private static final int MIN_DEAD_RECORDS_FOR_COMPACTION = 1024;
+    private static final long FLUSH_DELAY_MS = 200;
+    private static final int MAX_PENDING_BYTES = 64 * 1024;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private final File file;
+    private Index index = new Index();
+    private final RecordBuffer pendingBytes = new RecordBuffer();
+    // Each record is encoded here first and only appended to pendingBytes once complete.
+    private final RecordBuffer recordBytes = new RecordBuffer();
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+    private final CRC32 checksum = new CRC32();
+    // Format of the file on disk, VERSION once opened.
+    private int version = VERSION;
+    private File quarantined;
+    private final ScheduledExecutorService flusher;
+    private FileOutputStream log;
+    private RandomAccessFile reader;
+    // Length of the log on disk; records past it are still in pendingBytes.
+    private long flushedLength;
+    // A window of the log read ahead, consecutive records are usually next to each other.
+    private byte[] readBuffer = new byte[READ_BUFFER_SIZE];
+    private long readBufferStart = -1;
+    private int readBufferLength;
+    private int deadRecords;
+    private boolean flushScheduled;
+    private IOException flushFailure;
+    // A failed flush left part of the buffer in the file and it couldn't be cut back.
+    private boolean tornTail;
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong totalFlushNanos = new AtomicLong();
+    private final AtomicLong maxFlushNanos = new AtomicLong();
+
+    public MediaLibraryStore(File file) throws IOException {
+        this.file = file;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "media-library-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        load();
+    }
+
+    public synchronized MediaFile get(String id) throws IOException {
+        long offset = index.offsetOf(idKey(id), recordOf(id));
+        return offset < 0 ? null : readAt(offset);
+    }
+
+    public synchronized boolean contains(String id) throws IOException {
+        return index.offsetOf(idKey(id), recordOf(id)) >= 0;
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    // The position of id in insertion order, or -1 when it isn't there.
+    public synchronized int positionOf(String id) throws IOException {
+        return index.positionOf(idKey(id), recordOf(id));
+    }
+
+    // Entries from position start, in insertion order, read from the log.
+    public synchronized List<MediaFile> getRange(int start, int count) throws IOException {
+        int end = Math.min(start + count, index.size());
+        if (start >= end) {
+            return new ArrayList<>(0);
+        }
+        List<MediaFile> page = new ArrayList<>(end - start);
+        for (int slot = index.slotAt(start); page.size() < end - start; slot = index.nextLive(slot + 1)) {
+            page.add(readAt(index.offsetAt(slot)));
+        }
+        return page;
+    }
+
+    // The entries of ids[start] to ids[start + count - 1], as found by a search. An entry
+    // removed since is null, so the others keep their positions.
+    public synchronized List<MediaFile> getAll(String[] ids, int start, int count) throws IOException {
+        int end = Math.min(start + count, ids.length);
+        List<MediaFile> page = new ArrayList<>(Math.max(0, end - start));
+        for (int i = start; i < end; i++) {
+            page.add(get(ids[i]));
+        }
+        return page;
+    }
+
+    // Materializes the whole library, for callers that really need every entry at once.
+    public synchronized List<MediaFile> getAll() throws IOException {
+        return getRange(0, index.size());
+    }
+
+    // Incremented on every mutation, so callers can skip a reload when nothing changed.
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    // A copy of the log taken when it was found corrupt on open, or null.
+    public File getQuarantinedFile() {
+        return quarantined;
+    }
+
+    // Records read without going to the disk: from the read-ahead window or the write buffer.
+    public long getCacheHits() {
+        return cacheHits.get();
+    }
+
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    public long getTotalFlushNanos() {
+        return totalFlushNanos.get();
+    }
+
+    public long getMaxFlushNanos() {
+        return maxFlushNanos.get();
+    }
+
+    public synchronized void put(MediaFile mediaFile) throws IOException {
+        retryFailedFlush();
+        appendPut(mediaFile);
+        onMutated();
+    }
+
+    public synchronized void putAll(List<MediaFile> mediaFiles) throws IOException {
+        retryFailedFlush();
+        if (mediaFiles.isEmpty()) {
+            return;
+        }
+        int appended = 0;
+        try {
+            for (MediaFile mediaFile : mediaFiles) {
+                appendPut(mediaFile);
+                appended++;
+            }
+        } finally {
+            // An entry that can't be encoded stops the batch, the ones before it are kept.
+            if (appended > 0) {
+                onMutated();
+            }
+        }
+    }
+
+    // Replaces the entries that are still present and skips the others, checked and written
+    // under the same lock so an entry deleted meanwhile isn't brought back. Returns how many
+    // were replaced.
+    public synchronized int updateAll(List<MediaFile> mediaFiles) throws IOException {
+        retryFailedFlush();
+        int updated = 0;
+        for (MediaFile mediaFile : mediaFiles) {
+            if (appendUpdate(mediaFile)) {
+                updated++;
+            }
+        }
+        if (updated > 0) {
+            onMutated();
+        }
+        return updated;
+    }
+
+    public synchronized boolean delete(String id) throws IOException {
+        retryFailedFlush();
+        if (!appendDelete(id)) {
+            return false;
+        }
+        onMutated();
+        return true;
+    }
+
+    // Removes the entries of ids that are present as one mutation: the tombstones go out in
+    // a single write, and the generation moves once. Returns how many were removed.
+    public synchronized int deleteAll(Collection<String> ids) throws IOException {
+        retryFailedFlush();
+        int removed = 0;
+        for (String id : ids) {
+            if (appendDelete(id)) {
+                removed++;
+            }
+        }
+        if (removed > 0) {
+            onMutated();
+        }
+        return removed;
+    }
+
+    public synchronized void replaceAll(List<MediaFile> mediaFiles) throws IOException {
+        rewrite(mediaFiles);
+        generation.incrementAndGet();
+    }
+
+    public synchronized void clear() throws IOException {
+        rewrite(Collections.emptyList());
+        generation.incrementAndGet();
+    }
+
+    public synchronized void compact() throws IOException {
+        rewrite(null);
+    }
+
+    public synchronized void flush() throws IOException {
+        if (tornTail) {
+            // The buffered records are rewritten along with the rest.
+            rewrite(null);
+            return;
+        }
+        if (pendingBytes.size() == 0) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            pendingBytes.writeTo(log);
+        } catch (IOException e) {
+            // Keep the buffered records so the next flush retries them, after cutting the
+            // file back to the last complete record so no byte is appended twice.
+            flushFailure = e;
+            try {
+                log.getChannel().truncate(flushedLength);
+            } catch (IOException truncateFailure) {
+                e.addSuppressed(truncateFailure);
+                tornTail = true;
+            }
+            throw e;
+        }
+        flushedLength += pendingBytes.size();
+        pendingBytes.reset();
+        flushFailure = null;
+
+        long elapsed = System.nanoTime() - start;
+        flushCount.incrementAndGet();
+        totalFlushNanos.addAndGet(elapsed);
+        if (elapsed > maxFlushNanos.get()) {
+            maxFlushNanos.set(elapsed);
+        }
+    }
+
+    public synchronized void sync() throws IOException {
+        flush();
+        log.getFD().sync();
+    }
+
+    public synchronized void close() throws IOException {
+        flush();
+        closeLog();
+        flusher.shutdown();
+    }
+
+    private void appendPut(MediaFile mediaFile) throws IOException {
+        recordBytes.reset();
+        writePut(record, mediaFile);
+        long offset = flushedLength + pendingBytes.size();
+        writeRecord(new DataOutputStream(pendingBytes));
+        if (!index.put(idKey(mediaFile.getId()), offset, recordOf(mediaFile.getId()))) {
+            deadRecords++;
+        }
+    }
+
+    private boolean appendUpdate(MediaFile mediaFile) throws IOException {
+        recordBytes.reset();
+        writePut(record, mediaFile);
+        long offset = flushedLength + pendingBytes.size();
+        if (!index.replace(idKey(mediaFile.getId()), offset, recordOf(mediaFile.getId()))) {
+            return false;
+        }
+        writeRecord(new DataOutputStream(pendingBytes));
+        deadRecords++;
+        return true;
+    }
+
+    private boolean appendDelete(String id) throws IOException {
+        recordBytes.reset();
+        record.writeByte(OP_DELETE);
+        record.writeUTF(id);
+        if (!index.remove(idKey(id), recordOf(id))) {
+            return false;
+        }
+        writeRecord(new DataOutputStream(pendingBytes));
+        // Both the original PUT and this tombstone are now dead.
+        deadRecords += 2;
+        return true;
+    }
+
+    // Writes the live entries, or replacement when it isn't null, to a new log and swaps it
+    // in. The index is rebuilt alongside and only replaces the current one on success.
+    private void rewrite(List<MediaFile> replacement) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        // Ids are unique in both cases, so the new index doesn't need to check them.
+        Index rebuilt = new Index();
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fos));
+            writeHeader(out);
+            if (replacement != null) {
+                // An id listed twice keeps its first position and its last value, as with puts.
+                Map<String, MediaFile> unique = new LinkedHashMap<>();
+                for (MediaFile mediaFile : replacement) {
+                    unique.put(mediaFile.getId(), mediaFile);
+                }
+                for (MediaFile mediaFile : unique.values()) {
+                    recordBytes.reset();
+                    writePut(record, mediaFile);
+                    rebuilt.add(idKey(mediaFile.getId()), out.size());
+                    writeRecord(out);
+                }
+            } else {
+                for (int slot = index.nextLive(0); slot != -1; slot = index.nextLive(slot + 1)) {
+                    MediaFile mediaFile = readAt(index.offsetAt(slot));
+                    recordBytes.reset();
+                    writePut(record, mediaFile);
+                    rebuilt.add(idKey(mediaFile.getId()), out.size());
+                    writeRecord(out);
+                }
+            }
+            out.flush();
+            fos.getFD().sync();
+        }
+        closeLog();
+        if (!tmp.renameTo(file)) {
+            openLog();
+            throw new IOException("Unable to replace " + file);
+        }
+        // The new file already reflects every buffered record.
+        version = VERSION;
+        index = rebuilt;
+        flushedLength = file.length();
+        pendingBytes.reset();
+        flushFailure = null;
+        tornTail = false;
+        deadRecords = 0;
+        openLog();
+    }
+
+    private MediaFile readAt(long offset) throws IOException {
+        return readRecord(offset, MediaLibraryStore::readPut);
+    }
+
+    private interface RecordReader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    // Reads the record at offset from the write buffer, the read-ahead window or the file,
+    // growing the window for a record larger than it.
+    private <T> T readRecord(long offset, RecordReader<T> recordReader) throws IOException {
+        if (offset >= flushedLength) {
+            cacheHits.incrementAndGet();
+            int start = (int) (offset - flushedLength);
+            return recordReader.read(recordAt(pendingBytes.array(), start, pendingBytes.size()));
+        }
+        if (offset >= readBufferStart && offset < readBufferStart + readBufferLength) {
+            try {
+                T result = recordReader.read(
+                    recordAt(readBuffer, (int) (offset - readBufferStart), readBufferLength));
+                cacheHits.incrementAndGet();
+                return result;
+            } catch (EOFException e) {
+                // The record runs past the window, read again from its start below.
+            }
+        }
+        while (true) {
+            reader.seek(offset);
+            readBufferStart = offset;
+            readBufferLength = Math.max(0, reader.read(readBuffer, 0, readBuffer.length));
+            try {
+                return recordReader.read(recordAt(readBuffer, 0, readBufferLength));
+            } catch (EOFException e) {
+                if (readBufferLength < readBuffer.length) {
+                    throw e;
+                }
+                // A record larger than the buffer, paths can be long.
+                readBuffer = new byte[readBuffer.length * 2];
+            }
+        }
+    }
+
+    // The bytes of the record starting at data[start], checked against its checksum. Throws
+    // EOFException when the record runs past end.
+    private DataInputStream recordAt(byte[] data, int start, int end) throws IOException {
+        if (version == LEGACY_VERSION) {
+            return new DataInputStream(new ByteArrayInputStream(data, start, end - start));
+        }
+        ByteArrayInputStream bytes = new ByteArrayInputStream(data, start, end - start);
+        DataInputStream in = new DataInputStream(bytes);
+        long length = readVarLong(in);
+        int bodyStart = end - bytes.available();
+        if (length <= 0 || length > MAX_RECORD_SIZE) {
+            throw new IOException("Bad record length " + length + " in " + file);
+        }
+        if (bodyStart + length + Integer.BYTES > end) {
+            throw new EOFException();
+        }
+        in.skipBytes((int) length);
+        checksum.reset();
+        checksum.update(data, bodyStart, (int) length);
+        if (in.readInt() != (int) checksum.getValue()) {
+            throw new IOException("Bad record checksum in " + file);
+        }
+        return new DataInputStream(new ByteArrayInputStream(data, bodyStart, (int) length));
+    }
+
+    // Frames the record encoded in recordBytes: length, bytes, checksum.
+    private void writeRecord(DataOutputStream out) throws IOException {
+        writeVarLong(out, recordBytes.size());
+        recordBytes.writeTo(out);
+        checksum.reset();
+        checksum.update(recordBytes.array(), 0, recordBytes.size());
+        out.writeInt((int) checksum.getValue());
+    }
+
+    private void onMutated() throws IOException {
+        generation.incrementAndGet();
+        if (deadRecords >= MIN_DEAD_RECORDS_FOR_COMPACTION && deadRecords > index.size()) {
+            compact();
+        } else if (pendingBytes.size() >= MAX_PENDING_BYTES) {
+            flush();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            flusher.schedule(this::flushInBackground, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void flushInBackground() {
+        flushScheduled = false;
+        try {
+            flush();
+        } catch (IOException e) {
+            // Retried, and reported, by the next mutation through retryFailedFlush().
+        }
+    }
+
+    private void retryFailedFlush() throws IOException {
+        if (flushFailure != null) {
+            flush();
+        }
+    }
+
+    private void load() throws IOException {
+        if (!file.exists() || file.length() < HEADER_SIZE) {
+            compact();
+            return;
+        }
+
+        long validLength;
+        boolean corrupt = false;
+        // Records already indexed are read back through the reader to compare ids.
+        flushedLength = file.length();
+        reader = new RandomAccessFile(file, "r");
+        try (CountingInputStream counter = new CountingInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            DataInputStream in = new DataInputStream(counter);
+            int magic = in.readInt();
+            version = in.readInt();
+            if (magic != MAGIC || (version != VERSION && version != LEGACY_VERSION)) {
+                throw new IOException("Unsupported library file " + file);
+            }
+            validLength = counter.count;
+            while (true) {
+                try {
+                    if (version == LEGACY_VERSION) {
+                        loadLegacyRecord(in, validLength);
+                    } else {
+                        loadRecord(in, validLength);
+                    }
+                } catch (EOFException e) {
+                    // The end of the file in the middle of a record.
+                    break;
+                } catch (CorruptRecordException | UTFDataFormatException e) {
+                    corrupt = true;
+                    break;
+                }
+                validLength = counter.count;
+            }
+        } finally {
+            reader.close();
+        }
+
+        if (validLength < file.length()) {
+            // Without framing, a torn legacy record can't be told from a corrupt one.
+            if ((corrupt || version == LEGACY_VERSION) && !isZeroFilled(validLength)) {
+                quarantine();
+            }
+            // Drop a record left half-written by a crash during the last append, or whatever
+            // follows the corrupt one, which is kept in the quarantined copy.
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.setLength(validLength);
+            }
+        }
+        flushedLength = validLength;
+        openLog();
+        if (version == LEGACY_VERSION) {
+            compact();
+        }
+    }
+
+    private void loadRecord(DataInputStream in, long offset) throws IOException {
+        long length = readVarLong(in);
+        if (length <= 0 || length > MAX_RECORD_SIZE) {
+            throw new CorruptRecordException("Bad record length " + length + " at " + offset);
+        }
+        byte[] body = new byte[(int) length];
+        in.readFully(body);
+        int expected = in.readInt();
+        checksum.reset();
+        checksum.update(body, 0, body.length);
+        if (expected != (int) checksum.getValue()) {
+            throw new CorruptRecordException("Bad record checksum at " + offset);
+        }
+        try {
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(body));
+            byte op = record.readByte();
+            if (isPut(op)) {
+                // Only the id is needed here, the entry is read again when it is shown.
+                applyPut(record.readUTF(), offset);
+            } else if (op == OP_DELETE) {
+                applyDelete(record.readUTF());
+            } else {
+                // Written by a newer version.
+                throw new CorruptRecordException("Unknown record type " + op + " at " + offset);
+            }
+        } catch (EOFException e) {
+            // A record with a valid checksum is complete, it just doesn't parse.
+            throw new CorruptRecordException("Malformed record at " + offset);
+        }
+    }
+
+    private void loadLegacyRecord(DataInputStream in, long offset) throws IOException {
+        byte op = in.readByte();
+        if (isPut(op)) {
+            String id = in.readUTF();
+            skipPutFields(in, op);
+            applyPut(id, offset);
+        } else if (op == OP_DELETE) {
+            applyDelete(in.readUTF());
+        } else {
+            throw new CorruptRecordException("Unknown record type " + op + " at " + offset);
+        }
+    }
+
+    private void applyPut(String id, long offset) throws IOException {
+        if (!index.put(idKey(id), offset, recordOf(id))) {
+            deadRecords++;
+        }
+    }
+
+    private void applyDelete(String id) throws IOException {
+        if (index.remove(idKey(id), recordOf(id))) {
+            deadRecords++;
+        }
+        deadRecords++;
+    }
+
+    // A crash can leave zeros instead of the last appended bytes; that's a torn tail too.
+    private boolean isZeroFilled(long from) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            skipFully(new DataInputStream(in), from);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private void quarantine() throws IOException {
+        quarantined = new File(file.getPath() + ".corrupt-" + System.currentTimeMillis());
+        Files.copy(file.toPath(), quarantined.toPath());
+    }
+
+    private static boolean isPut(byte op) {
+        return op == OP_PUT || op == OP_PUT_EXTENDED || op == OP_PUT_COMPACT;
+    }
+
+    private static void skipPutFields(DataInputStream in, byte op) throws IOException {
+        if (op == OP_PUT_COMPACT) {
+            int flags = in.readUnsignedByte();
+            if ((flags & FLAG_NAME) != 0) {
+                skipFully(in, in.readUnsignedShort());
+            }
+            if ((flags & FLAG_PATH) != 0) {
+                skipFully(in, in.readUnsignedShort());
+            }
+            readVarLong(in);
+            readVarLong(in);
+            if ((flags & FLAG_METADATA) != 0) {
+                readVarLong(in);
+                readVarLong(in);
+                skipFully(in, in.readUnsignedShort());
+                readVarLong(in);
+                readVarLong(in);
+                readVarLong(in);
+            }
+            return;
+        }
+        skipNullableString(in);
+        skipNullableString(in);
+        skipNullableString(in);
+        skipFully(in, 2 * Long.BYTES);
+        if (op == OP_PUT_EXTENDED) {
+            skipFully(in, Long.BYTES + Integer.BYTES);
+            skipNullableString(in);
+            skipFully(in, 3 * Integer.BYTES);
+        }
+    }
+
+    // Tells whether the record at an offset is the one of id: ids are indexed by a 64-bit hash
+    // and two of them may share it.
+    private RecordCheck recordOf(String id) {
+        return offset -> id.equals(readRecord(offset, MediaLibraryStore::readId));
+    }
+
+    private static String readId(DataInputStream in) throws IOException {
+        in.readByte();
+        return in.readUTF();
+    }
+
+    private static MediaFile readPut(DataInputStream in) throws IOException {
+        byte op = in.readByte();
+        if (!isPut(op)) {
+            throw new IOException("No entry record at this offset");
+        }
+        return readPut(in, op);
+    }
+
+    private static MediaFile readPut(DataInputStream in, byte op) throws IOException {
+        String id = in.readUTF();
+        if (op == OP_PUT_COMPACT) {
+            int flags = in.readUnsignedByte();
+            String name = (flags & FLAG_NAME) != 0 ? in.readUTF() : null;
+            String path = (flags & FLAG_PATH) != 0 ? in.readUTF() : null;
+            MediaType type = (flags & FLAG_VIDEO) != 0 ? MediaType.VIDEO : MediaType.AUDIO;
+            long duration = readVarLong(in);
+            long size = readVarLong(in);
+            if ((flags & FLAG_METADATA) == 0) {
+                return new MediaFile(id, name, path, type, duration, size);
+            }
+            return new MediaFile(id, name, path, type, duration, size,
+                readVarLong(in), (int) readVarLong(in), in.readUTF(),
+                (int) readVarLong(in), (int) readVarLong(in), (int) readVarLong(in));
+        }
+        String name = readNullableString(in);
+        String path = readNullableString(in);
+        MediaType type = MediaType.fromValue(readNullableString(in));
+        long duration = in.readLong();
+        long size = in.readLong();
+        if (op == OP_PUT_EXTENDED) {
+            return new MediaFile(id, name, path, type, duration, size,
+                in.readLong(), in.readInt(), readNullableString(in),
+                in.readInt(), in.readInt(), in.readInt());
+        }
+        return new MediaFile(id, name, path, type, duration, size);
+    }
+
+    private void openLog() throws IOException {
+        log = new FileOutputStream(file, true);
+        reader = new RandomAccessFile(file, "r");
+        readBufferStart = -1;
+        readBufferLength = 0;
+    }
+
+    private void closeLog() throws IOException {
+        if (log != null) {
+            log.close();
+            log = null;
+        }
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+    }
+
+    // FNV-1a over the id. Also used by the list as a stable row id.
+    static long idKey(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // 0 marks a free cell of the index table.
+        return hash != 0 ? hash : 1;
+    }
+
+    private static void writeHeader(DataOutputStream out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+    }
+
+    private static void writePut(DataOutputStream out, MediaFile mediaFile) throws IOException {
+        int flags = (mediaFile.isVideo() ? FLAG_VIDEO : 0)
+            | (mediaFile.getName() != null ? FLAG_NAME : 0)
+            | (mediaFile.getPath() != null ? FLAG_PATH : 0)
+            | (mediaFile.hasMetadata() ? FLAG_METADATA : 0);
+        out.writeByte(OP_PUT_COMPACT);
+        out.writeUTF(mediaFile.getId());
+        out.writeByte(flags);
+        if (mediaFile.getName() != null) {
+            out.writeUTF(mediaFile.getName());
+        }
+        if (mediaFile.getPath() != null) {
+            out.writeUTF(mediaFile.getPath());
+        }
+        writeVarLong(out, mediaFile.getDuration());
+        writeVarLong(out, mediaFile.getSize());
+        if (mediaFile.hasMetadata()) {
+            writeVarLong(out, mediaFile.getLastModified());
+            writeVarLong(out, mediaFile.getBitrate());
+            out.writeUTF(mediaFile.getCodec());
+            writeVarLong(out, mediaFile.getWidth());
+            writeVarLong(out, mediaFile.getHeight());
+            writeVarLong(out, mediaFile.getSampleRate());
+        }
+    }
+
+    // Zigzag then 7 bits per byte, low group first: a duration in ms takes 3 bytes, not 8.
+    private static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long bits = (value << 1) ^ (value >> 63);
+        while ((bits & ~0x7FL) != 0) {
+            out.writeByte((int) (bits & 0x7F) | 0x80);
+            bits >>>= 7;
+        }
+        out.writeByte((int) bits);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long bits = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            bits |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (bits >>> 1) ^ -(bits & 1);
+            }
+        }
+        throw new CorruptRecordException("Malformed varint");
+    }
+
+    private static String readNullableString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void skipNullableString(DataInputStream in) throws IOException {
+        if (in.readBoolean()) {
+            skipFully(in, in.readUnsignedShort());
+        }
+    }
+
+    // DataInputStream.skipBytes stops short at the end instead of failing like the reads.
+    private static void skipFully(DataInputStream in, int count) throws IOException {
+        if (in.skipBytes(count) != count) {
+            throw new EOFException();
+        }
+    }
+
+    private static void skipFully(DataInputStream in, long count) throws IOException {
+        while (count > 0) {
+            int step = (int) Math.min(count, Integer.MAX_VALUE);
+            skipFully(in, step);
+            count -= step;
+        }
+    }
+
+    private static class CorruptRecordException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        CorruptRecordException(String message) {
+            super(message);
+        }
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    private static class RecordBuffer extends ByteArrayOutputStream {
+        byte[] array() {
+            return buf;
+        }
+    }
+
+    // Whether the record at a log offset is the one looked for.
+    private interface RecordCheck {
+        boolean matches(long offset) throws IOException;
+    }
+
+    // Log offsets of the live records. Ids are reduced to 64-bit keys in an open-addressing
+    // table that points to slots numbered in insertion order; a Fenwick tree over which slots
+    // are still live finds the slot at a list position once entries have been deleted.
+    // Deleted slots stay empty until the next rewrite. Cells with an equal key are only the
+    // entry once check confirms it, colliding ids get cells further along the probe run.
+    private static final class Index {
+        private long[] keys = new long[16];
+        private int[] slots = new int[16];
+        private long[] offsets = new long[16];
+        private int[] liveTree = new int[17];
+        private int slotCount;
+        private int size;
+
+        int size() {
+            return size;
+        }
+
+        long offsetOf(long key, RecordCheck check) throws IOException {
+            int cell = find(key, check);
+            return cell == -1 ? -1 : offsets[slots[cell]];
+        }
+
+        int positionOf(long key, RecordCheck check) throws IOException {
+            int cell = find(key, check);
+            if (cell == -1) {
+                return -1;
+            }
+            // The live slots before this one.
+            int position = 0;
+            for (int i = slots[cell]; i > 0; i -= i & -i) {
+                position += liveTree[i];
+            }
+            return position;
+        }
+
+        long offsetAt(int slot) {
+            return offsets[slot];
+        }
+
+        // Returns false when the entry was already there, its record is then replaced.
+        boolean put(long key, long offset, RecordCheck check) throws IOException {
+            int mask = keys.length - 1;
+            int cell = home(key, mask);
+            while (keys[cell] != 0) {
+                if (keys[cell] == key && check.matches(offsets[slots[cell]])) {
+                    offsets[slots[cell]] = offset;
+                    return false;
+                }
+                cell = (cell + 1) & mask;
+            }
+            insert(cell, key, offset);
+            return true;
+        }
+
+        // Returns false when the entry isn't there, nothing is added then.
+        boolean replace(long key, long offset, RecordCheck check) throws IOException {
+            int cell = find(key, check);
+            if (cell == -1) {
+                return false;
+            }
+            offsets[slots[cell]] = offset;
+            return true;
+        }
+
+        // Adds an entry known not to be there yet.
+        void add(long key, long offset) {
+            int mask = keys.length - 1;
+            int cell = home(key, mask);
+            while (keys[cell] != 0) {
+                cell = (cell + 1) & mask;
+            }
+            insert(cell, key, offset);
+        }
+
+        private void insert(int cell, long key, long offset) {
+            if (slotCount == offsets.length) {
+                growSlots();
+            }
+            int slot = slotCount++;
+            offsets[slot] = offset;
+            addLive(slot, 1);
+            keys[cell] = key;
+            slots[cell] = slot;
+            if (++size * 2 > keys.length) {
+                growTable();
+            }
+        }
+
+        boolean remove(long key, RecordCheck check) throws IOException {
+            int cell = find(key, check);
+            if (cell == -1) {
+                return false;
+            }
+            int slot = slots[cell];
+            offsets[slot] = -1;
+            addLive(slot, -1);
+            size--;
+
+            // Shift the following cells of the probe run back, so no tombstone is needed.
+            int mask = keys.length - 1;
+            int hole = cell;
+            int next = cell;
+            while (true) {
+                next = (next + 1) & mask;
+                if (keys[next] == 0) {
+                    break;
+                }
+                int home = home(keys[next], mask);
+                boolean between = hole <= next ? hole < home && home <= next : hole < home || home <= next;
+                if (!between) {
+                    keys[hole] = keys[next];
+                    slots[hole] = slots[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = 0;
+            return true;
+        }
+
+        // The slot holding the entry at position, 0 <= position < size.
+        int slotAt(int position) {
+            int slot = 0;
+            int remaining = position + 1;
+            for (int step = Integer.highestOneBit(offsets.length); step > 0; step >>= 1) {
+                if (slot + step < liveTree.length && liveTree[slot + step] < remaining) {
+                    slot += step;
+                    remaining -= liveTree[slot];
+                }
+            }
+            return slot;
+        }
+
+        // The first live slot from slot on, or -1.
+        int nextLive(int slot) {
+            while (slot < slotCount && offsets[slot] < 0) {
+                slot++;
+            }
+            return slot < slotCount ? slot : -1;
+        }
+
+        private int find(long key, RecordCheck check) throws IOException {
+            int mask = keys.length - 1;
+            int cell = home(key, mask);
+            while (keys[cell] != 0) {
+                if (keys[cell] == key && check.matches(offsets[slots[cell]])) {
+                    return cell;
+                }
+                cell = (cell + 1) & mask;
+            }
+            return -1;
+        }
+
+        private void addLive(int slot, int delta) {
+            for (int i = slot + 1; i < liveTree.length; i += i & -i) {
+                liveTree[i] += delta;
+            }
+        }
+
+        private void growSlots() {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            liveTree = new int[offsets.length + 1];
+            for (int i = 1; i < liveTree.length; i++) {
+                if (i <= slotCount && offsets[i - 1] >= 0) {
+                    liveTree[i]++;
+                }
+                int parent = i + (i & -i);
+                if (parent < liveTree.length) {
+                    liveTree[parent] += liveTree[i];
+                }
+            }
+        }
+
+        private void growTable() {
+            long[] oldKeys = keys;
+            int[] oldSlots = slots;
+            keys = new long[oldKeys.length * 2];
+            slots = new int[oldSlots.length * 2];
+            int mask = keys.length - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int cell = home(oldKeys[i], mask);
+                    while (keys[cell] != 0) {
+                        cell = (cell + 1) & mask;
+                    }
+                    keys[cell] = oldKeys[i];
+                    slots[cell] = oldSlots[i];
+                }
+            }
+        }
+
+        private static int home(long key, int mask) {
+            return (int) (key ^ (key >>> 32)) & mask;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.uici.lecturmultimedia;
+
+public class MediaMetadata {
+    public static final MediaMetadata UNKNOWN = new MediaMetadata(0, 0, "", 0, 0, 0);
+
+    private final long duration;
+    private final int bitrate;
+    private final String codec;
+    private final int width;
+    private final int height;
+    private final int sampleRate;
+
+    public MediaMetadata(long duration, int bitrate, String codec, int width, int height, int sampleRate) {
+        this.duration = duration;
+        this.bitrate = bitrate;
+        this.codec = codec;
+        this.width = width;
+        this.height = height;
+        this.sampleRate = sampleRate;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public int getBitrate() {
+        return bitrate;
+    }
+
+    public String getCodec() {
+        return codec;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+}
@@ -0,0 +1,230 @@
+package com.uici.lecturmultimedia;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.provider.OpenableColumns;
+import android.util.Log;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Probes library entries for duration, bitrate, codec, resolution and sample rate on a
+// small worker pool. Results are cached by URI, size and last-modified time, so each file
+// is probed at most once, and handed back in batches.
+public class MediaMetadataExtractor {
+    private static final String TAG = "MediaMetadataExtractor";
+
+    private static final String CACHE_FILE_NAME = "media_metadata.cache";
+    private static final int WORKER_COUNT = 2;
+    private static final int RESULT_BATCH_SIZE = 25;
+
+    private static final String[] STAT_PROJECTION = {
+        OpenableColumns.SIZE,
+        DocumentsContract.Document.COLUMN_LAST_MODIFIED
+    };
+
+    private final Context context;
+    private final ContentResolver contentResolver;
+    // Created by the first worker, getFilesDir() may create the directory.
+    private MetadataCache cache;
+    private final Callback callback;
+    private final ExecutorService workers = Executors.newFixedThreadPool(WORKER_COUNT, runnable -> {
+        Thread thread = new Thread(runnable, "media-metadata");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final List<MediaFile> results = new ArrayList<>();
+
+    public interface Callback {
+        // Called on a worker thread.
+        void onMetadataExtracted(List<MediaFile> updated);
+    }
+
+    public MediaMetadataExtractor(Context context, Callback callback) {
+        this.context = context.getApplicationContext();
+        this.contentResolver = context.getContentResolver();
+        this.callback = callback;
+    }
+
+    private synchronized MetadataCache cache() {
+        if (cache == null) {
+            cache = new MetadataCache(new File(context.getFilesDir(), CACHE_FILE_NAME));
+        }
+        return cache;
+    }
+
+    public void enqueue(List<MediaFile> mediaFiles) {
+        for (MediaFile mediaFile : mediaFiles) {
+            if (mediaFile.hasMetadata() || !queued.add(mediaFile.getId())) {
+                continue;
+            }
+            inFlight.incrementAndGet();
+            workers.execute(() -> {
+                try {
+                    MediaFile updated = process(mediaFile);
+                    if (updated != null) {
+                        addResult(updated);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    Log.w(TAG, "Unable to probe " + mediaFile.getPath(), e);
+                } finally {
+                    queued.remove(mediaFile.getId());
+                    if (inFlight.decrementAndGet() == 0) {
+                        deliverResults();
+                    }
+                }
+            });
+        }
+    }
+
+    private MediaFile process(MediaFile mediaFile) throws IOException {
+        Uri uri = Uri.parse(mediaFile.getPath());
+        if (!ContentResolver.SCHEME_CONTENT.equals(uri.getScheme())) {
+            return null;
+        }
+
+        long size = mediaFile.getSize();
+        long lastModified = mediaFile.getLastModified();
+        Cursor cursor;
+        try {
+            cursor = contentResolver.query(uri, STAT_PROJECTION, null, null, null);
+        } catch (IllegalArgumentException e) {
+            cursor = contentResolver.query(uri, new String[]{OpenableColumns.SIZE}, null, null, null);
+        }
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    int sizeIndex = cursor.getColumnIndex(OpenableColumns.SIZE);
+                    if (sizeIndex != -1 && !cursor.isNull(sizeIndex)) {
+                        size = cursor.getLong(sizeIndex);
+                    }
+                    int modifiedIndex = cursor.getColumnIndex(DocumentsContract.Document.COLUMN_LAST_MODIFIED);
+                    if (modifiedIndex != -1 && !cursor.isNull(modifiedIndex)) {
+                        lastModified = cursor.getLong(modifiedIndex);
+                    }
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        String key = MetadataCache.key(mediaFile.getPath(), size, lastModified);
+        MetadataCache cache = cache();
+        MediaMetadata metadata = cache.get(key);
+        if (metadata == null) {
+            metadata = probe(uri, size);
+            cache.put(key, metadata);
+        }
+        return mediaFile.withMetadata(metadata, size, lastModified);
+    }
+
+    private MediaMetadata probe(Uri uri, long size) {
+        MediaExtractor extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(context, uri, null);
+
+            long durationUs = 0;
+            int bitrate = 0;
+            String videoCodec = null;
+            String audioCodec = null;
+            int width = 0;
+            int height = 0;
+            int sampleRate = 0;
+
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                if (mime == null) {
+                    continue;
+                }
+                if (format.containsKey(MediaFormat.KEY_DURATION)) {
+                    durationUs = Math.max(durationUs, format.getLong(MediaFormat.KEY_DURATION));
+                }
+                if (format.containsKey(MediaFormat.KEY_BIT_RATE)) {
+                    bitrate += format.getInteger(MediaFormat.KEY_BIT_RATE);
+                }
+                if (mime.startsWith("video/") && videoCodec == null) {
+                    videoCodec = mime;
+                    width = format.containsKey(MediaFormat.KEY_WIDTH) ? format.getInteger(MediaFormat.KEY_WIDTH) : 0;
+                    height = format.containsKey(MediaFormat.KEY_HEIGHT) ? format.getInteger(MediaFormat.KEY_HEIGHT) : 0;
+                } else if (mime.startsWith("audio/") && audioCodec == null) {
+                    audioCodec = mime;
+                    sampleRate = format.containsKey(MediaFormat.KEY_SAMPLE_RATE)
+                        ? format.getInteger(MediaFormat.KEY_SAMPLE_RATE) : 0;
+                }
+            }
+
+            long duration = durationUs / 1000;
+            if (duration == 0) {
+                duration = retrieveDuration(uri);
+            }
+            if (bitrate == 0 && duration > 0 && size > 0) {
+                bitrate = (int) Math.min(Integer.MAX_VALUE, size * 8 * 1000 / duration);
+            }
+            String codec = videoCodec != null ? videoCodec : audioCodec != null ? audioCodec : "";
+            return new MediaMetadata(duration, bitrate, codec, width, height, sampleRate);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "No readable track in " + uri, e);
+            return MediaMetadata.UNKNOWN;
+        } finally {
+            extractor.release();
+        }
+    }
+
+    private long retrieveDuration(Uri uri) {
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, uri);
+            String duration = retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION);
+            return duration != null ? Long.parseLong(duration) : 0;
+        } catch (RuntimeException e) {
+            return 0;
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException e) {
+                // Nothing left to release.
+            }
+        }
+    }
+
+    private void addResult(MediaFile mediaFile) {
+        List<MediaFile> batch = null;
+        synchronized (results) {
+            results.add(mediaFile);
+            if (results.size() >= RESULT_BATCH_SIZE) {
+                batch = new ArrayList<>(results);
+                results.clear();
+            }
+        }
+        if (batch != null) {
+            callback.onMetadataExtracted(batch);
+        }
+    }
+
+    private void deliverResults() {
+        List<MediaFile> batch;
+        synchronized (results) {
+            if (results.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(results);
+            results.clear();
+        }
+        callback.onMetadataExtracted(batch);
+    }
+}
@@ -1,41 +1,167 @@
 package com.uici.lecturmultimedia;
 
-import android.media.MediaPlayer;
-import android.net.Uri;
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
 import android.os.Bundle;
-import android.os.Handler;
+import android.os.IBinder;
+import android.os.Parcel;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.SurfaceHolder;
 import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.SeekBar;
 import android.widget.Toast;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AppCompatActivity;
 import com.uici.lecturmultimedia.databinding.ActivityMediaPlayerBinding;
-import java.io.IOException;
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+import java.util.Collections;
 
-public class MediaPlayerActivity extends AppCompatActivity {
+public class MediaPlayerActivity extends AppCompatActivity implements PlayerEngine.Listener {
+
+    public static final String EXTRA_MEDIA_ID = "media_id";
+    public static final String EXTRA_TAP_TIME = "tap_time";
+
+    private static final String LATENCY_TAG = "PlaybackLatency";
+    // From the tap in the list to the first frame of this activity.
+    private static final Telemetry.Histogram LAUNCH_TIME = Telemetry.histogram("player.launch");
 
     private ActivityMediaPlayerBinding binding;
+    // The file asked for by the last Intent, mediaFile stays null until it is resolved.
+    private String mediaFileId;
     private MediaFile mediaFile;
-    private MediaPlayer mediaPlayer;
-    private Handler handler;
-    private Runnable updateSeekBar;
+    // Set while bound to PlaybackService, which owns the player and the queue.
+    private PlayerEngine playerEngine;
+    private SurfaceHolder surfaceHolder;
+    private boolean startQueue;
+    private ProgressTicker progressTicker;
+    private final ClockText durationText = new ClockText();
     private boolean isPlaying = false;
 
+    private final ServiceConnection connection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service) {
+            playerEngine = ((PlaybackService.LocalBinder) service).getPlayerEngine();
+            if (mediaFile != null) {
+                onPlayerConnected();
+            }
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            playerEngine = null;
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         binding = ActivityMediaPlayerBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
 
-        mediaFile = getIntent().getParcelableExtra("media_file");
-        if (mediaFile == null) {
-            Toast.makeText(this, "Erreur: Fichier introuvable", Toast.LENGTH_SHORT).show();
-            finish();
+        mediaFileId = getIntent().getStringExtra(EXTRA_MEDIA_ID);
+        if (mediaFileId == null) {
+            showNotFound();
             return;
         }
 
-        setupUI();
-        setupMediaPlayer();
+        startQueue = savedInstanceState == null;
         setupControls();
+        setupSurface();
+        if (savedInstanceState == null) {
+            logLaunch();
+        }
+        resolveMediaFile();
+    }
+
+    @Override
+    protected void onNewIntent(Intent intent) {
+        super.onNewIntent(intent);
+        String requested = intent.getStringExtra(EXTRA_MEDIA_ID);
+        if (requested != null) {
+            setIntent(intent);
+            mediaFileId = requested;
+            startQueue = true;
+            resolveMediaFile();
+        }
+    }
+
+    // Usually answered right away from the registry; after the process was killed the entry
+    // is read from the store, and a newer Intent arriving meanwhile wins.
+    private void resolveMediaFile() {
+        String requested = mediaFileId;
+        MediaRegistry.getInstance(this).resolve(requested, resolved -> {
+            if (isDestroyed() || !requested.equals(mediaFileId)) {
+                return;
+            }
+            if (resolved == null) {
+                showNotFound();
+                return;
+            }
+            mediaFile = resolved;
+            setupUI();
+            if (playerEngine != null) {
+                onPlayerConnected();
+            }
+        });
+    }
+
+    private void showNotFound() {
+        Toast.makeText(this, "Erreur: Fichier introuvable", Toast.LENGTH_SHORT).show();
+        finish();
+    }
+
+    // Size of the extras that went through Binder and the time from the tap in the list to
+    // the first frame of this activity.
+    private void logLaunch() {
+        long tapTime = getIntent().getLongExtra(EXTRA_TAP_TIME, 0);
+        if (tapTime == 0) {
+            return;
+        }
+        Parcel parcel = Parcel.obtain();
+        parcel.writeBundle(getIntent().getExtras());
+        int extrasBytes = parcel.dataSize();
+        parcel.recycle();
+        View root = binding.getRoot();
+        root.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                root.getViewTreeObserver().removeOnPreDrawListener(this);
+                long launchTime = SystemClock.elapsedRealtime() - tapTime;
+                LAUNCH_TIME.recordMillis(launchTime);
+                Log.i(LATENCY_TAG, "player launch " + launchTime + " ms, extras " + extrasBytes + " bytes");
+                return true;
+            }
+        });
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        bindService(new Intent(this, PlaybackService.class), connection, BIND_AUTO_CREATE);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (playerEngine != null) {
+            // Audio keeps playing in PlaybackService, a video has nothing to show in the background.
+            if (mediaFile != null && mediaFile.isVideo() && !isChangingConfigurations()) {
+                playerEngine.pause();
+            }
+            playerEngine.setDisplay(null);
+            playerEngine.detach(this);
+            playerEngine = null;
+        }
+        unbindService(connection);
+        progressTicker.stop();
     }
 
     private void setupUI() {
@@ -49,166 +175,296 @@ public class MediaPlayerActivity extends AppCompatActivity {
         binding.textViewMediaSize.setText(mediaFile.getFormattedSize());
 
         if (mediaFile.isVideo()) {
-            binding.videoView.setVisibility(View.VISIBLE);
+            binding.surfaceView.setVisibility(View.VISIBLE);
             binding.imageViewAudioPlaceholder.setVisibility(View.GONE);
         } else {
-            binding.videoView.setVisibility(View.GONE);
+            binding.surfaceView.setVisibility(View.GONE);
             binding.imageViewAudioPlaceholder.setVisibility(View.VISIBLE);
         }
+        showWaveform();
+    }
+
+    // From memory or the peak file when the file was analysed before, otherwise once the
+    // analysis finishes; streams and videos keep the plain seek bar.
+    private void showWaveform() {
+        MediaFile shown = mediaFile;
+        WaveformLoader loader = WaveformLoader.getInstance(this);
+        binding.waveformView.setWaveform(loader.getCached(shown));
+        loader.load(shown, waveform -> {
+            if (shown != mediaFile || isDestroyed()) {
+                return;
+            }
+            binding.waveformView.setWaveform(waveform);
+            binding.waveformView.setVisibility(waveform != null ? View.VISIBLE : View.GONE);
+        });
     }
 
-    private void setupMediaPlayer() {
-        try {
-            Uri uri = Uri.parse(mediaFile.getPath());
-
-            if (mediaFile.isVideo()) {
-                binding.videoView.setVideoURI(uri);
-                binding.videoView.setOnPreparedListener(mp -> {
-                    mediaPlayer = mp;
-                    int duration = mediaPlayer.getDuration();
-                    binding.seekBar.setMax(duration);
-                    binding.textViewDuration.setText(formatTime(duration));
-                    binding.textViewCurrentTime.setText("00:00");
-                    startSeekBarUpdate();
-                });
-
-                binding.videoView.setOnCompletionListener(mp -> {
-                    isPlaying = false;
-                    binding.buttonPlayPause.setImageResource(R.drawable.ic_play);
-                    stopSeekBarUpdate();
-                });
-
-                binding.videoView.setOnErrorListener((mp, what, extra) -> {
-                    Toast.makeText(this, "Erreur de lecture", Toast.LENGTH_SHORT).show();
-                    return true;
-                });
-            } else {
-                mediaPlayer = new MediaPlayer();
-                mediaPlayer.setDataSource(this, uri);
-                mediaPlayer.setOnPreparedListener(mp -> {
-                    int duration = mediaPlayer.getDuration();
-                    binding.seekBar.setMax(duration);
-                    binding.textViewDuration.setText(formatTime(duration));
-                    binding.textViewCurrentTime.setText("00:00");
-                });
-
-                mediaPlayer.setOnCompletionListener(mp -> {
-                    isPlaying = false;
-                    binding.buttonPlayPause.setImageResource(R.drawable.ic_play);
-                    stopSeekBarUpdate();
-                });
-
-                mediaPlayer.prepareAsync();
-            }
-        } catch (IOException e) {
-            Toast.makeText(this, "Erreur lors du chargement du fichier", Toast.LENGTH_SHORT).show();
-            finish();
+    // Opening the file that is already playing only re-attaches, without a prepare or a
+    // rewind. Otherwise a queue over the library starts from the tapped file. A recreated
+    // activity only re-attaches, the engine may have moved on to another item meanwhile.
+    private void onPlayerConnected() {
+        MediaFile current = playerEngine.getCurrentMediaFile();
+        if (current == null || (startQueue && !current.getId().equals(mediaFile.getId()))) {
+            startLibraryQueue();
+        } else {
+            startQueue = false;
         }
+        playerEngine.attach(this);
+        if (surfaceHolder != null) {
+            playerEngine.setDisplay(surfaceHolder);
+        }
+        updateQueueModes();
+    }
+
+    // The position of the file in the library is looked up off the main thread; the queue
+    // then reads the other entries as it gets to them. If the activity stops, or another file
+    // is opened, before it arrives, the result is dropped and the next connection asks again.
+    private void startLibraryQueue() {
+        MediaFile requested = mediaFile;
+        long tapTime = getIntent().getLongExtra(EXTRA_TAP_TIME, 0);
+        MediaLibraryRepository.getInstance(this).getQueueSource(requested.getId(), (source, position) -> {
+            if (playerEngine == null || requested != mediaFile) {
+                return;
+            }
+            if (source == null) {
+                source = new PlaybackQueue.ListSource(Collections.singletonList(requested));
+                position = 0;
+            }
+            playerEngine.playQueue(source, position, requested, tapTime);
+            startQueue = false;
+        });
+    }
+
+    private void setupSurface() {
+        binding.surfaceView.getHolder().addCallback(new SurfaceHolder.Callback() {
+            @Override
+            public void surfaceCreated(@NonNull SurfaceHolder holder) {
+                surfaceHolder = holder;
+                if (playerEngine != null) {
+                    playerEngine.setDisplay(holder);
+                }
+            }
+
+            @Override
+            public void surfaceChanged(@NonNull SurfaceHolder holder, int format, int width, int height) {
+            }
+
+            @Override
+            public void surfaceDestroyed(@NonNull SurfaceHolder holder) {
+                surfaceHolder = null;
+                if (playerEngine != null) {
+                    playerEngine.setDisplay(null);
+                }
+            }
+        });
+    }
+
+    @Override
+    public void onMediaFileChanged(MediaFile mediaFile) {
+        this.mediaFile = mediaFile;
+        setupUI();
+        progressTicker.show(0);
+        showDuration(0);
+    }
+
+    @Override
+    public void onPrepared(int duration) {
+        binding.seekBar.setMax(duration);
+        binding.waveformView.setDuration(duration);
+        showDuration(duration);
+        progressTicker.show(playerEngine.getCurrentPosition());
+        onPlaybackStateChanged(playerEngine.isPlaying());
+    }
+
+    @Override
+    public void onPlaybackStateChanged(boolean playing) {
+        isPlaying = playing;
+        binding.buttonPlayPause.setImageResource(playing ? R.drawable.ic_pause : R.drawable.ic_play);
+        if (binding.seekBar.isPressed() || binding.waveformView.isPressed()) {
+            // finishScrub restarts the ticker.
+            return;
+        }
+        if (playing) {
+            progressTicker.start(playerEngine);
+        } else {
+            progressTicker.stop();
+            progressTicker.show(playerEngine.getCurrentPosition());
+        }
+    }
+
+    @Override
+    public void onCompletion() {
+        isPlaying = false;
+        binding.buttonPlayPause.setImageResource(R.drawable.ic_play);
+        progressTicker.stop();
+    }
+
+    @Override
+    public void onError() {
+        Toast.makeText(this, "Erreur de lecture", Toast.LENGTH_SHORT).show();
+    }
+
+    @Override
+    public void onVideoSizeChanged(int width, int height) {
+        View container = (View) binding.surfaceView.getParent();
+        int containerWidth = container.getWidth();
+        int containerHeight = container.getHeight();
+        if (containerWidth == 0 || containerHeight == 0) {
+            container.post(() -> onVideoSizeChanged(width, height));
+            return;
+        }
+        float scale = Math.min((float) containerWidth / width, (float) containerHeight / height);
+        ViewGroup.LayoutParams params = binding.surfaceView.getLayoutParams();
+        params.width = Math.round(width * scale);
+        params.height = Math.round(height * scale);
+        binding.surfaceView.setLayoutParams(params);
     }
 
     private void setupControls() {
+        progressTicker = new ProgressTicker(binding.seekBar, binding.waveformView, binding.textViewCurrentTime);
         binding.buttonPlayPause.setOnClickListener(v -> togglePlayPause());
+        binding.buttonNext.setOnClickListener(v -> {
+            if (playerEngine != null) {
+                playerEngine.getQueue().skipToNext();
+            }
+        });
+        binding.buttonPrevious.setOnClickListener(v -> {
+            if (playerEngine != null) {
+                playerEngine.getQueue().skipToPrevious();
+            }
+        });
+        binding.buttonShuffle.setOnClickListener(v -> {
+            if (playerEngine != null) {
+                PlaybackQueue queue = playerEngine.getQueue();
+                queue.setShuffle(!queue.isShuffle());
+                updateQueueModes();
+            }
+        });
+        binding.buttonRepeat.setOnClickListener(v -> {
+            if (playerEngine != null) {
+                PlaybackQueue queue = playerEngine.getQueue();
+                PlaybackQueue.RepeatMode[] modes = PlaybackQueue.RepeatMode.values();
+                queue.setRepeatMode(modes[(queue.getRepeatMode().ordinal() + 1) % modes.length]);
+                updateQueueModes();
+            }
+        });
 
         binding.seekBar.setOnSeekBarChangeListener(new SeekBar.OnSeekBarChangeListener() {
             @Override
             public void onProgressChanged(SeekBar seekBar, int progress, boolean fromUser) {
-                if (fromUser) {
-                    if (mediaFile.isVideo()) {
-                        binding.videoView.seekTo(progress);
-                    } else if (mediaPlayer != null) {
-                        mediaPlayer.seekTo(progress);
+                if (fromUser && playerEngine != null) {
+                    // Keys and accessibility actions change the progress without a drag.
+                    if (seekBar.isPressed()) {
+                        playerEngine.seekPreview(progress);
+                    } else {
+                        playerEngine.seekTo(progress);
                     }
-                    binding.textViewCurrentTime.setText(formatTime(progress));
+                    progressTicker.showTime(progress);
                 }
             }
 
+            // The ticker would fight the user's finger for the thumb.
             @Override
             public void onStartTrackingTouch(SeekBar seekBar) {
+                progressTicker.stop();
             }
 
             @Override
             public void onStopTrackingTouch(SeekBar seekBar) {
+                finishScrub(seekBar.getProgress());
             }
         });
 
-        handler = new Handler();
-        updateSeekBar = new Runnable() {
+        // Same as dragging the seek bar.
+        binding.waveformView.setOnScrubListener(new WaveformView.OnScrubListener() {
             @Override
-            public void run() {
-                if (isPlaying) {
-                    int currentPosition = 0;
-                    if (mediaFile.isVideo()) {
-                        currentPosition = binding.videoView.getCurrentPosition();
-                    } else if (mediaPlayer != null) {
-                        currentPosition = mediaPlayer.getCurrentPosition();
-                    }
-                    binding.seekBar.setProgress(currentPosition);
-                    binding.textViewCurrentTime.setText(formatTime(currentPosition));
-                    handler.postDelayed(this, 100);
-                }
+            public void onScrubStarted() {
+                progressTicker.stop();
             }
-        };
-    }
 
-    private void togglePlayPause() {
-        if (mediaFile.isVideo()) {
-            if (isPlaying) {
-                binding.videoView.pause();
-                binding.buttonPlayPause.setImageResource(R.drawable.ic_play);
-                stopSeekBarUpdate();
-            } else {
-                binding.videoView.start();
-                binding.buttonPlayPause.setImageResource(R.drawable.ic_pause);
-                startSeekBarUpdate();
-            }
-        } else {
-            if (mediaPlayer != null) {
-                if (isPlaying) {
-                    mediaPlayer.pause();
-                    binding.buttonPlayPause.setImageResource(R.drawable.ic_play);
-                    stopSeekBarUpdate();
-                } else {
-                    mediaPlayer.start();
-                    binding.buttonPlayPause.setImageResource(R.drawable.ic_pause);
-                    startSeekBarUpdate();
+            @Override
+            public void onScrubbed(int position) {
+                if (playerEngine != null) {
+                    playerEngine.seekPreview(position);
                 }
+                progressTicker.show(position);
             }
+
+            @Override
+            public void onScrubFinished(int position) {
+                progressTicker.show(position);
+                finishScrub(position);
+            }
+        });
+    }
+
+    private void finishScrub(int position) {
+        if (playerEngine == null) {
+            return;
+        }
+        playerEngine.seekTo(position);
+        if (isPlaying) {
+            progressTicker.start(playerEngine);
         }
-        isPlaying = !isPlaying;
     }
 
-    private void startSeekBarUpdate() {
-        handler.post(updateSeekBar);
+    private void showDuration(int duration) {
+        if (durationText.update(duration)) {
+            binding.textViewDuration.setText(durationText.getChars(), 0, durationText.length());
+        }
     }
 
-    private void stopSeekBarUpdate() {
-        handler.removeCallbacks(updateSeekBar);
+    private void updateQueueModes() {
+        PlaybackQueue queue = playerEngine.getQueue();
+        binding.buttonShuffle.setAlpha(queue.isShuffle() ? 1f : 0.4f);
+        PlaybackQueue.RepeatMode repeatMode = queue.getRepeatMode();
+        binding.buttonRepeat.setImageResource(repeatMode == PlaybackQueue.RepeatMode.ONE
+            ? R.drawable.ic_repeat_one : R.drawable.ic_repeat);
+        binding.buttonRepeat.setAlpha(repeatMode == PlaybackQueue.RepeatMode.OFF ? 0.4f : 1f);
     }
 
-    private String formatTime(int milliseconds) {
-        int seconds = milliseconds / 1000;
-        int minutes = seconds / 60;
-        seconds = seconds % 60;
-        return String.format("%02d:%02d", minutes, seconds);
+    // The button image follows onPlaybackStateChanged, so notification controls update it too.
+    private void togglePlayPause() {
+        if (playerEngine == null || !playerEngine.isPrepared()) {
+            return;
+        }
+        if (playerEngine.isPlaying()) {
+            playerEngine.pause();
+        } else {
+            playerEngine.start();
+        }
     }
 
     @Override
-    protected void onPause() {
-        super.onPause();
-        if (isPlaying) {
-            togglePlayPause();
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_player, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        menu.findItem(R.id.action_normalize_volume)
+            .setChecked(PlayerEngine.getInstance(this).isNormalizeVolume());
+        return super.onPrepareOptionsMenu(menu);
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_normalize_volume) {
+            boolean normalize = !item.isChecked();
+            item.setChecked(normalize);
+            PlayerEngine.getInstance(this).setNormalizeVolume(normalize);
+            return true;
         }
+        return super.onOptionsItemSelected(item);
     }
 
+    // adb shell dumpsys activity com.uici.lecturmultimedia/.MediaPlayerActivity telemetry [reset]
     @Override
-    protected void onDestroy() {
-        super.onDestroy();
-        if (mediaPlayer != null) {
-            mediaPlayer.release();
-            mediaPlayer = null;
-        }
-        if (handler != null) {
-            handler.removeCallbacks(updateSeekBar);
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd, @NonNull PrintWriter writer,
+                     @Nullable String[] args) {
+        if (!Telemetry.dump(writer, args)) {
+            super.dump(prefix, fd, writer, args);
         }
     }
 
@@ -0,0 +1,65 @@
+package com.uici.lecturmultimedia;
+
+import android.content.Context;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Hands MediaFiles between activities and the playback service by id, so an Intent carries
+// a short string instead of a parcel that grows with the metadata. The last few registered
+// files are kept in memory for the life of the process; an id that isn't there, after the
+// process was killed and the activity restored, is read back from the library store.
+public class MediaRegistry {
+    private static final int MAX_ENTRIES = 16;
+
+    private static MediaRegistry instance;
+
+    private final MediaLibraryRepository repository;
+    private final LinkedHashMap<String, MediaFile> entries =
+        new LinkedHashMap<String, MediaFile>(MAX_ENTRIES * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MediaFile> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+
+    public interface Callback {
+        // On the main thread; null when the file is no longer in the library.
+        void onResolved(MediaFile mediaFile);
+    }
+
+    public static synchronized MediaRegistry getInstance(Context context) {
+        if (instance == null) {
+            instance = new MediaRegistry(MediaLibraryRepository.getInstance(context));
+        }
+        return instance;
+    }
+
+    private MediaRegistry(MediaLibraryRepository repository) {
+        this.repository = repository;
+    }
+
+    // Returns the id to put in the Intent.
+    public synchronized String register(MediaFile mediaFile) {
+        entries.put(mediaFile.getId(), mediaFile);
+        return mediaFile.getId();
+    }
+
+    public synchronized MediaFile get(String id) {
+        return entries.get(id);
+    }
+
+    // Calls back right away when the file is registered, otherwise once the store was read.
+    public void resolve(String id, Callback callback) {
+        MediaFile mediaFile = get(id);
+        if (mediaFile != null) {
+            callback.onResolved(mediaFile);
+            return;
+        }
+        repository.getMediaFile(id, loaded -> {
+            if (loaded != null) {
+                register(loaded);
+            }
+            callback.onResolved(loaded);
+        });
+    }
+}
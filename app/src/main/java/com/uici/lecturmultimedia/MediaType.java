@@ -0,0 +1,27 @@
+package com.uici.lecturmultimedia;
+
+import com.google.gson.annotations.SerializedName;
+
+// Which player and which list row a file gets. Serialized as the strings MediaFile used to
+// hold, so existing JSON and library records read back the same.
+public enum MediaType {
+    @SerializedName("audio")
+    AUDIO("audio"),
+    @SerializedName("video")
+    VIDEO("video");
+
+    private final String value;
+
+    MediaType(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    // Anything that isn't "video" plays as audio, as the importer always decided.
+    public static MediaType fromValue(String value) {
+        return VIDEO.value.equals(value) ? VIDEO : AUDIO;
+    }
+}
@@ -0,0 +1,139 @@
+package com.uici.lecturmultimedia;
+
+import android.util.Log;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Probe results keyed by URI, size and last-modified time, so a file is only probed again
+// when its content changes. Entries are appended to a small log and loaded on first use.
+// Only the most recently used entries are kept; the log is rewritten with just those once
+// evicted and stale records dominate it, so it stays bounded too.
+public class MetadataCache {
+    private static final String TAG = "MetadataCache";
+    private static final int MAGIC = 0x4D4D4554;
+    private static final int VERSION = 1;
+    static final int MAX_ENTRIES = 4096;
+    private static final int MIN_RECORDS_FOR_REWRITE = 256;
+
+    private final File file;
+    private final LinkedHashMap<String, MediaMetadata> entries =
+        new LinkedHashMap<String, MediaMetadata>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, MediaMetadata> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    private DataOutputStream log;
+    private int records;
+
+    public MetadataCache(File file) {
+        this.file = file;
+    }
+
+    public static String key(String uri, long size, long lastModified) {
+        return uri + '|' + size + '|' + lastModified;
+    }
+
+    public synchronized MediaMetadata get(String key) throws IOException {
+        ensureLoaded();
+        return entries.get(key);
+    }
+
+    public synchronized void put(String key, MediaMetadata metadata) throws IOException {
+        ensureLoaded();
+        entries.put(key, metadata);
+        writeEntry(log, key, metadata);
+        log.flush();
+        records++;
+        // Entries for files that changed stay behind as stale keys; rewrite once they dominate.
+        if (needsRewrite()) {
+            rewrite();
+        }
+    }
+
+    private boolean needsRewrite() {
+        return records > MIN_RECORDS_FOR_REWRITE && records > entries.size() * 2;
+    }
+
+    private void ensureLoaded() throws IOException {
+        if (log != null) {
+            return;
+        }
+        // Rewritten only when it can't just be appended to: missing, from another version,
+        // ending in a torn entry, corrupt, or mostly stale.
+        boolean dirty = true;
+        if (file.exists()) {
+            byte[] data = Files.readAllBytes(file.toPath());
+            ByteArrayInputStream bytes = new ByteArrayInputStream(data);
+            DataInputStream in = new DataInputStream(bytes);
+            try {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                    while (bytes.available() > 0) {
+                        String key = in.readUTF();
+                        entries.put(key, new MediaMetadata(in.readLong(), in.readInt(),
+                            in.readBoolean() ? in.readUTF() : null,
+                            in.readInt(), in.readInt(), in.readInt()));
+                        records++;
+                    }
+                    dirty = needsRewrite();
+                }
+            } catch (EOFException e) {
+                // A torn last entry, which is simply probed again.
+            } catch (IOException e) {
+                // Nothing read from a corrupt log can be trusted: it starts over empty and
+                // the files are probed again.
+                Log.w(TAG, "Discarding corrupt metadata cache " + file, e);
+                entries.clear();
+                records = 0;
+            }
+        }
+        if (dirty) {
+            rewrite();
+        } else {
+            log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+        }
+    }
+
+    private void rewrite() throws IOException {
+        if (log != null) {
+            log.close();
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            for (Map.Entry<String, MediaMetadata> entry : entries.entrySet()) {
+                writeEntry(out, entry.getKey(), entry.getValue());
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            throw new IOException("Unable to replace " + file);
+        }
+        records = entries.size();
+        log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+    }
+
+    private static void writeEntry(DataOutputStream out, String key, MediaMetadata metadata)
+            throws IOException {
+        out.writeUTF(key);
+        out.writeLong(metadata.getDuration());
+        out.writeInt(metadata.getBitrate());
+        out.writeBoolean(metadata.getCodec() != null);
+        if (metadata.getCodec() != null) {
+            out.writeUTF(metadata.getCodec());
+        }
+        out.writeInt(metadata.getWidth());
+        out.writeInt(metadata.getHeight());
+        out.writeInt(metadata.getSampleRate());
+    }
+}
@@ -0,0 +1,167 @@
+package com.uici.lecturmultimedia;
+
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+import java.util.Objects;
+
+// The changes from one version of the library to the next, for the list. Only the pages
+// around the last bound position are loaded in both pagers: those rows are diffed by id, so
+// an entry added or removed on screen animates and the others keep their views. The rows
+// outside them are marked changed in place, and the difference in size is at the end.
+// prepare() and dispatchUpdatesTo() are called on the main thread, which owns the pagers'
+// pages; calculate() only reads the rows prepare() copied, on any thread.
+public final class PagerDiff {
+    // Pages diffed on either side of the one holding the last bound position.
+    private static final int WINDOW_PAGES = 1;
+
+    private final int oldSize;
+    private final int newSize;
+    private final int start;
+    private final MediaFile[] oldRows;
+    private final MediaFile[] newRows;
+    private DiffUtil.DiffResult result;
+
+    private PagerDiff(int oldSize, int newSize, int start, MediaFile[] oldRows, MediaFile[] newRows) {
+        this.oldSize = oldSize;
+        this.newSize = newSize;
+        this.start = start;
+        this.oldRows = oldRows;
+        this.newRows = newRows;
+    }
+
+    // The whole diff on the calling thread.
+    public static void dispatch(MediaFilePager oldPager, MediaFilePager newPager,
+                                ListUpdateCallback callback) {
+        PagerDiff diff = prepare(oldPager, newPager);
+        diff.calculate();
+        diff.dispatchUpdatesTo(callback);
+    }
+
+    public static PagerDiff prepare(MediaFilePager oldPager, MediaFilePager newPager) {
+        int oldSize = oldPager.size();
+        int newSize = newPager.size();
+        int page = newPager.getLastPosition() / MediaFilePager.PAGE_SIZE;
+        int start = Math.min(Math.max(0, page - WINDOW_PAGES) * MediaFilePager.PAGE_SIZE,
+            Math.min(oldSize, newSize));
+        int end = (page + WINDOW_PAGES + 1) * MediaFilePager.PAGE_SIZE;
+        int oldEnd = Math.max(start, Math.min(end, oldSize));
+        int newEnd = Math.max(start, Math.min(end, newSize));
+        // When the last rows of the window don't line up, the entries added or removed are in
+        // it: its end is moved by the change in size, or the rows pushed across it would be
+        // diffed as removed and inserted there.
+        int last = Math.min(oldEnd, newEnd) - 1;
+        if (last >= start && !sameEntry(oldPager.peek(last), newPager.peek(last))) {
+            int delta = newSize - oldSize;
+            int shiftedOldEnd = Math.max(start, Math.min(oldEnd, newEnd - delta));
+            newEnd = Math.max(start, Math.min(newEnd, oldEnd + delta));
+            oldEnd = shiftedOldEnd;
+        }
+        return new PagerDiff(oldSize, newSize, start, rows(oldPager, start, oldEnd),
+            rows(newPager, start, newEnd));
+    }
+
+    private static MediaFile[] rows(MediaFilePager pager, int start, int end) {
+        MediaFile[] rows = new MediaFile[end - start];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = pager.peek(start + i);
+        }
+        return rows;
+    }
+
+    public void calculate() {
+        result = DiffUtil.calculateDiff(new WindowCallback(oldRows, newRows), false);
+    }
+
+    public void dispatchUpdatesTo(ListUpdateCallback callback) {
+        int oldEnd = start + oldRows.length;
+        int newEnd = start + newRows.length;
+        if (start > 0) {
+            callback.onChanged(0, start, null);
+        }
+        result.dispatchUpdatesTo(new OffsetCallback(callback, start));
+        int oldTail = oldSize - oldEnd;
+        int newTail = newSize - newEnd;
+        int common = Math.min(oldTail, newTail);
+        if (common > 0) {
+            callback.onChanged(newEnd, common, null);
+        }
+        if (newTail > common) {
+            callback.onInserted(newEnd + common, newTail - common);
+        } else if (oldTail > common) {
+            callback.onRemoved(newEnd + common, oldTail - common);
+        }
+    }
+
+    private static boolean sameEntry(MediaFile oldItem, MediaFile newItem) {
+        return oldItem != null && newItem != null && oldItem.getId().equals(newItem.getId());
+    }
+
+    // Placeholders are never the same item: their row is bound again once its page arrives.
+    private static final class WindowCallback extends DiffUtil.Callback {
+        private final MediaFile[] oldRows;
+        private final MediaFile[] newRows;
+
+        WindowCallback(MediaFile[] oldRows, MediaFile[] newRows) {
+            this.oldRows = oldRows;
+            this.newRows = newRows;
+        }
+
+        @Override
+        public int getOldListSize() {
+            return oldRows.length;
+        }
+
+        @Override
+        public int getNewListSize() {
+            return newRows.length;
+        }
+
+        @Override
+        public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+            return sameEntry(oldRows[oldItemPosition], newRows[newItemPosition]);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+            MediaFile oldItem = oldRows[oldItemPosition];
+            MediaFile newItem = newRows[newItemPosition];
+            return Objects.equals(oldItem.getName(), newItem.getName())
+                && Objects.equals(oldItem.getPath(), newItem.getPath())
+                && oldItem.getType() == newItem.getType()
+                && oldItem.getDuration() == newItem.getDuration()
+                && oldItem.getSize() == newItem.getSize()
+                && oldItem.getLastModified() == newItem.getLastModified();
+        }
+    }
+
+    private static final class OffsetCallback implements ListUpdateCallback {
+        private final ListUpdateCallback callback;
+        private final int offset;
+
+        OffsetCallback(ListUpdateCallback callback, int offset) {
+            this.callback = callback;
+            this.offset = offset;
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            callback.onInserted(offset + position, count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            callback.onRemoved(offset + position, count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            callback.onMoved(offset + fromPosition, offset + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, @Nullable Object payload) {
+            callback.onChanged(offset + position, count, payload);
+        }
+    }
+}
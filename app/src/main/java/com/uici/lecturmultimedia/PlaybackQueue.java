@@ -0,0 +1,278 @@
+package com.uici.lecturmultimedia;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+// Order of play over a source of media files with next/previous, shuffle and repeat. It
+// drives a Player, which is told what to play now and what to pre-buffer next. Only the
+// current and the next entries are held: the others are read from the source by position
+// when the queue gets to them, so a queue over the whole library doesn't load it.
+public class PlaybackQueue {
+
+    public enum RepeatMode {
+        OFF,
+        ALL,
+        ONE
+    }
+
+    public interface Player {
+        // Switch to mediaFile and play it from the start.
+        void open(MediaFile mediaFile);
+
+        // Pre-buffer the item that follows the current one, or null when there is none.
+        // The same file as the current one means it should loop.
+        void setNext(MediaFile mediaFile);
+    }
+
+    // The entries of a queue by position.
+    public interface Source {
+        int size();
+
+        // Passes the entry at position to callback on the main thread, possibly after reading
+        // it elsewhere; null when it is gone.
+        void get(int position, Consumer<MediaFile> callback);
+    }
+
+    // A source over entries already in memory, answering right away.
+    public static class ListSource implements Source {
+        private final List<MediaFile> items;
+
+        public ListSource(List<MediaFile> items) {
+            this.items = new ArrayList<>(items);
+        }
+
+        @Override
+        public int size() {
+            return items.size();
+        }
+
+        @Override
+        public void get(int position, Consumer<MediaFile> callback) {
+            callback.accept(position < items.size() ? items.get(position) : null);
+        }
+    }
+
+    private final Player player;
+    private final Random random;
+    private Source source = new ListSource(new ArrayList<>());
+    private int size;
+    // Source positions in play order when shuffled; in order otherwise, without an array.
+    private int[] order;
+    private int position;
+    private MediaFile current;
+    private MediaFile next;
+    // The queue position next was read for, or -1.
+    private int nextPosition = -1;
+    // Bumped on every change of the current or the next item, so a read answering for an
+    // older one is dropped.
+    private int openSequence;
+    private int nextSequence;
+    private boolean shuffle;
+    private RepeatMode repeatMode = RepeatMode.OFF;
+
+    public PlaybackQueue(Player player, Random random) {
+        this.player = player;
+        this.random = random;
+    }
+
+    public void setItems(List<MediaFile> items, int startIndex) {
+        setItems(new ListSource(items), startIndex, null);
+    }
+
+    // startItem, the entry at startIndex, may be given when the caller has it already, which
+    // saves reading it before the player can open it.
+    public void setItems(Source source, int startIndex, MediaFile startItem) {
+        this.source = source;
+        size = source.size();
+        buildOrder(startIndex);
+        if (startItem != null) {
+            open(startItem);
+        } else {
+            openAt(position);
+        }
+    }
+
+    // Null while it is being read.
+    public MediaFile current() {
+        return current;
+    }
+
+    public MediaFile peekNext() {
+        return next;
+    }
+
+    public boolean hasNext() {
+        return size > 0 && (position + 1 < size || repeatMode != RepeatMode.OFF);
+    }
+
+    public boolean hasPrevious() {
+        return size > 0 && (position > 0 || repeatMode == RepeatMode.ALL);
+    }
+
+    // User pressed next. Repeat-one does not trap an explicit skip.
+    public boolean skipToNext() {
+        if (!hasNext()) {
+            return false;
+        }
+        position = (position + 1) % size;
+        if (next != null && nextPosition == position) {
+            open(next);
+        } else {
+            openAt(position);
+        }
+        return true;
+    }
+
+    public boolean skipToPrevious() {
+        if (!hasPrevious()) {
+            return false;
+        }
+        position = (position - 1 + size) % size;
+        openAt(position);
+        return true;
+    }
+
+    // The current item ended without a gapless hand-off. Returns false at the end of the queue.
+    public boolean onCompletion() {
+        if (size == 0) {
+            return false;
+        }
+        if (repeatMode == RepeatMode.ONE) {
+            if (current != null) {
+                open(current);
+            }
+            return true;
+        }
+        return skipToNext();
+    }
+
+    // The player already switched to the pre-buffered item on its own.
+    public void onAdvancedToNext() {
+        if (repeatMode != RepeatMode.ONE) {
+            position = (position + 1) % size;
+            openSequence++;
+            current = next;
+        }
+        loadNext();
+    }
+
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    public void setShuffle(boolean shuffle) {
+        if (this.shuffle == shuffle || size == 0) {
+            this.shuffle = shuffle;
+            return;
+        }
+        int currentIndex = indexAt(position);
+        this.shuffle = shuffle;
+        buildOrder(currentIndex);
+        loadNext();
+    }
+
+    public RepeatMode getRepeatMode() {
+        return repeatMode;
+    }
+
+    public void setRepeatMode(RepeatMode repeatMode) {
+        this.repeatMode = repeatMode;
+        loadNext();
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void open(MediaFile mediaFile) {
+        openSequence++;
+        current = mediaFile;
+        player.open(mediaFile);
+        loadNext();
+    }
+
+    private void openAt(int target) {
+        int request = ++openSequence;
+        nextSequence++;
+        current = null;
+        next = null;
+        nextPosition = -1;
+        if (size == 0) {
+            return;
+        }
+        source.get(indexAt(target), mediaFile -> {
+            // A file removed from the library meanwhile just isn't played.
+            if (request == openSequence && mediaFile != null) {
+                open(mediaFile);
+            }
+        });
+    }
+
+    private void loadNext() {
+        int request = ++nextSequence;
+        int target = nextQueuePosition();
+        next = null;
+        nextPosition = -1;
+        if (current == null) {
+            return;
+        }
+        if (target == -1) {
+            player.setNext(null);
+        } else if (target == position) {
+            // Repeat-one, or repeat-all over a single item.
+            next = current;
+            nextPosition = target;
+            player.setNext(current);
+        } else {
+            source.get(indexAt(target), mediaFile -> {
+                if (request == nextSequence) {
+                    next = mediaFile;
+                    nextPosition = mediaFile != null ? target : -1;
+                    player.setNext(mediaFile);
+                }
+            });
+        }
+    }
+
+    // The queue position played after the current one, or -1 at the end.
+    private int nextQueuePosition() {
+        if (size == 0) {
+            return -1;
+        }
+        if (repeatMode == RepeatMode.ONE) {
+            return position;
+        }
+        if (position + 1 < size) {
+            return position + 1;
+        }
+        return repeatMode == RepeatMode.OFF ? -1 : 0;
+    }
+
+    private int indexAt(int queuePosition) {
+        return order != null ? order[queuePosition] : queuePosition;
+    }
+
+    // Shuffled: the current item first, then the rest in random order.
+    private void buildOrder(int currentIndex) {
+        if (!shuffle || size == 0) {
+            order = null;
+            position = currentIndex;
+            return;
+        }
+        order = new int[size];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        order[0] = currentIndex;
+        order[currentIndex] = 0;
+        for (int i = order.length - 1; i > 1; i--) {
+            int j = 1 + random.nextInt(i);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        position = 0;
+    }
+}
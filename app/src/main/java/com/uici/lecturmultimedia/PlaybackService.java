@@ -0,0 +1,264 @@
+package com.uici.lecturmultimedia;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.content.Intent;
+import android.content.pm.ServiceInfo;
+import android.graphics.drawable.Icon;
+import android.media.MediaMetadata;
+import android.media.session.MediaSession;
+import android.media.session.PlaybackState;
+import android.os.Binder;
+import android.os.Build;
+import android.os.IBinder;
+import android.os.SystemClock;
+
+// Foreground service that keeps playback going when no activity is visible. It owns the
+// PlayerEngine (and so the queue) for the lifetime of the playback, publishes it through a
+// MediaSession and a media notification, and hands it to activities that bind to it.
+public class PlaybackService extends Service implements PlayerEngine.Listener {
+    private static final String CHANNEL_ID = "playback";
+    private static final int NOTIFICATION_ID = 1;
+
+    private static final String ACTION_PLAY = "com.uici.lecturmultimedia.action.PLAY";
+    private static final String ACTION_PAUSE = "com.uici.lecturmultimedia.action.PAUSE";
+    private static final String ACTION_NEXT = "com.uici.lecturmultimedia.action.NEXT";
+    private static final String ACTION_PREVIOUS = "com.uici.lecturmultimedia.action.PREVIOUS";
+    private static final String ACTION_STOP = "com.uici.lecturmultimedia.action.STOP";
+
+    private static final long SESSION_ACTIONS = PlaybackState.ACTION_PLAY | PlaybackState.ACTION_PAUSE
+        | PlaybackState.ACTION_PLAY_PAUSE | PlaybackState.ACTION_SKIP_TO_NEXT
+        | PlaybackState.ACTION_SKIP_TO_PREVIOUS | PlaybackState.ACTION_SEEK_TO | PlaybackState.ACTION_STOP;
+
+    private final LocalBinder binder = new LocalBinder();
+    private PlayerEngine playerEngine;
+    private MediaSession mediaSession;
+    private NotificationManager notificationManager;
+    private boolean started;
+    private boolean foreground;
+    // What the notification shows, it is only rebuilt when one of them changes.
+    private MediaFile notifiedMediaFile;
+    private boolean notifiedPlaying;
+
+    public class LocalBinder extends Binder {
+        public PlayerEngine getPlayerEngine() {
+            return playerEngine;
+        }
+    }
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        notificationManager = getSystemService(NotificationManager.class);
+        notificationManager.createNotificationChannel(new NotificationChannel(CHANNEL_ID,
+            "Lecture en cours", NotificationManager.IMPORTANCE_LOW));
+
+        mediaSession = new MediaSession(this, "PlaybackService");
+        mediaSession.setCallback(new MediaSession.Callback() {
+            @Override
+            public void onPlay() {
+                playerEngine.start();
+            }
+
+            @Override
+            public void onPause() {
+                playerEngine.pause();
+            }
+
+            @Override
+            public void onSkipToNext() {
+                playerEngine.getQueue().skipToNext();
+            }
+
+            @Override
+            public void onSkipToPrevious() {
+                playerEngine.getQueue().skipToPrevious();
+            }
+
+            @Override
+            public void onSeekTo(long position) {
+                playerEngine.seekTo((int) position);
+            }
+
+            @Override
+            public void onStop() {
+                stopPlayback();
+            }
+        });
+        mediaSession.setActive(true);
+
+        playerEngine = PlayerEngine.getInstance(this);
+        playerEngine.attach(this);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        started = true;
+        String action = intent != null ? intent.getAction() : null;
+        if (ACTION_PLAY.equals(action)) {
+            playerEngine.start();
+        } else if (ACTION_PAUSE.equals(action)) {
+            playerEngine.pause();
+        } else if (ACTION_NEXT.equals(action)) {
+            playerEngine.getQueue().skipToNext();
+        } else if (ACTION_PREVIOUS.equals(action)) {
+            playerEngine.getQueue().skipToPrevious();
+        } else if (ACTION_STOP.equals(action)) {
+            stopPlayback();
+        }
+        return START_NOT_STICKY;
+    }
+
+    @Override
+    public void onTaskRemoved(Intent rootIntent) {
+        if (!playerEngine.isPlaying()) {
+            stopPlayback();
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        playerEngine.detach(this);
+        mediaSession.release();
+        super.onDestroy();
+    }
+
+    @Override
+    public void onMediaFileChanged(MediaFile mediaFile) {
+        mediaSession.setMetadata(new MediaMetadata.Builder()
+            .putString(MediaMetadata.METADATA_KEY_TITLE, mediaFile.getName())
+            .putLong(MediaMetadata.METADATA_KEY_DURATION, mediaFile.getDuration())
+            .build());
+        updatePlaybackState();
+    }
+
+    @Override
+    public void onPrepared(int duration) {
+        MediaFile mediaFile = playerEngine.getCurrentMediaFile();
+        if (mediaFile != null && mediaFile.getDuration() != duration) {
+            mediaSession.setMetadata(new MediaMetadata.Builder()
+                .putString(MediaMetadata.METADATA_KEY_TITLE, mediaFile.getName())
+                .putLong(MediaMetadata.METADATA_KEY_DURATION, duration)
+                .build());
+        }
+        updatePlaybackState();
+    }
+
+    @Override
+    public void onCompletion() {
+    }
+
+    @Override
+    public void onError() {
+        updatePlaybackState();
+    }
+
+    @Override
+    public void onVideoSizeChanged(int width, int height) {
+    }
+
+    @Override
+    public void onPlaybackStateChanged(boolean playing) {
+        updatePlaybackState();
+    }
+
+    private void updatePlaybackState() {
+        boolean playing = playerEngine.isPlaying();
+        mediaSession.setPlaybackState(new PlaybackState.Builder()
+            .setActions(SESSION_ACTIONS)
+            .setState(playing ? PlaybackState.STATE_PLAYING : PlaybackState.STATE_PAUSED,
+                playerEngine.getCurrentPosition(), playing ? 1f : 0f, SystemClock.elapsedRealtime())
+            .build());
+
+        MediaFile mediaFile = playerEngine.getCurrentMediaFile();
+        if (mediaFile == null) {
+            return;
+        }
+        // A seek only moves the position, which the session state above carries.
+        if (mediaFile == notifiedMediaFile && playing == notifiedPlaying) {
+            return;
+        }
+        notifiedMediaFile = mediaFile;
+        notifiedPlaying = playing;
+        Notification notification = buildNotification(mediaFile, playing);
+        if (playing) {
+            // Started as well as bound, so playback outlives the activities that bound it.
+            if (!started) {
+                startForegroundService(new Intent(this, PlaybackService.class));
+                started = true;
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                startForeground(NOTIFICATION_ID, notification,
+                    ServiceInfo.FOREGROUND_SERVICE_TYPE_MEDIA_PLAYBACK);
+            } else {
+                startForeground(NOTIFICATION_ID, notification);
+            }
+            foreground = true;
+        } else if (foreground) {
+            // Paused: the notification stays so playback can be resumed from it, but it can
+            // be dismissed and the service may be stopped.
+            stopForeground(STOP_FOREGROUND_DETACH);
+            foreground = false;
+            notificationManager.notify(NOTIFICATION_ID, notification);
+        } else if (started) {
+            notificationManager.notify(NOTIFICATION_ID, notification);
+        }
+    }
+
+    private Notification buildNotification(MediaFile mediaFile, boolean playing) {
+        String mediaFileId = MediaRegistry.getInstance(this).register(mediaFile);
+        Intent open = new Intent(this, MediaPlayerActivity.class)
+            .putExtra(MediaPlayerActivity.EXTRA_MEDIA_ID, mediaFileId)
+            .addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP);
+        PendingIntent contentIntent = PendingIntent.getActivity(this, 0, open,
+            PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT);
+
+        return new Notification.Builder(this, CHANNEL_ID)
+            .setSmallIcon(mediaFile.isVideo() ? R.drawable.ic_video : R.drawable.ic_audio)
+            .setContentTitle(mediaFile.getName())
+            .setContentText(mediaFile.isVideo() ? "Video" : "Audio")
+            .setContentIntent(contentIntent)
+            .setDeleteIntent(pendingAction(ACTION_STOP))
+            .setOngoing(playing)
+            .setVisibility(Notification.VISIBILITY_PUBLIC)
+            .addAction(action(R.drawable.ic_skip_previous, "Précédent", ACTION_PREVIOUS))
+            .addAction(playing
+                ? action(R.drawable.ic_pause, "Pause", ACTION_PAUSE)
+                : action(R.drawable.ic_play, "Lire", ACTION_PLAY))
+            .addAction(action(R.drawable.ic_skip_next, "Suivant", ACTION_NEXT))
+            .setStyle(new Notification.MediaStyle()
+                .setMediaSession(mediaSession.getSessionToken())
+                .setShowActionsInCompactView(0, 1, 2))
+            .build();
+    }
+
+    private Notification.Action action(int icon, String title, String action) {
+        return new Notification.Action.Builder(Icon.createWithResource(this, icon), title,
+            pendingAction(action)).build();
+    }
+
+    private PendingIntent pendingAction(String action) {
+        Intent intent = new Intent(this, PlaybackService.class).setAction(action);
+        return PendingIntent.getService(this, action.hashCode(), intent, PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private void stopPlayback() {
+        playerEngine.pause();
+        if (foreground) {
+            stopForeground(STOP_FOREGROUND_REMOVE);
+            foreground = false;
+        }
+        notificationManager.cancel(NOTIFICATION_ID);
+        notifiedMediaFile = null;
+        started = false;
+        stopSelf();
+    }
+}
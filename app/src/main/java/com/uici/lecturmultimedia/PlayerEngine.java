@@ -0,0 +1,555 @@
+package com.uici.lecturmultimedia;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.media.AudioAttributes;
+import android.media.MediaPlayer;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.SurfaceHolder;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// Process-wide owner of the MediaPlayer instances. MediaPlayerActivity attaches to the
+// player of the file it shows instead of creating one, and a few recently used or
+// pre-warmed players are kept prepared so opening them again skips prepareAsync.
+// The engine plays a PlaybackQueue: the following item is prepared while the current one
+// plays and chained with setNextMediaPlayer, so audio tracks follow each other without a gap.
+// With volume normalization on, each audio player is turned down to a common loudness once
+// WaveformLoader knows the file's.
+public class PlayerEngine implements PlaybackQueue.Player {
+    private static final String TAG = "PlayerEngine";
+    private static final String LATENCY_TAG = "PlaybackLatency";
+
+    // setDataSource to onPrepared, whether for the current item or one warmed up ahead.
+    private static final Telemetry.Histogram PREPARE_TIME = Telemetry.histogram("player.prepare");
+    // From open() to the current item being ready to play.
+    private static final Telemetry.Histogram OPEN_TIME = Telemetry.histogram("player.open");
+    // From start() to the first rendered video frame or moving audio position.
+    private static final Telemetry.Histogram FIRST_FRAME_TIME = Telemetry.histogram("player.first_frame");
+    private static final Telemetry.Counter PREWARMED_OPENS = Telemetry.counter("player.prewarmed_open");
+    private static final Telemetry.Counter GAPLESS_HANDOFFS = Telemetry.counter("player.gapless_handoff");
+
+    private static final int POOL_SIZE = 3;
+    private static final long FIRST_FRAME_POLL_MS = 10;
+    private static final long FIRST_FRAME_TIMEOUT_MS = 2000;
+    private static final long MAX_SEGMENT_CACHE_BYTES = 128L * 1024 * 1024;
+    private static final String PREFS_NAME = "player";
+    private static final String KEY_NORMALIZE_VOLUME = "normalize_volume";
+    // Integrated loudness tracks are brought down to. MediaPlayer volume can't go above 1,
+    // so quieter tracks play as they are.
+    private static final float TARGET_LOUDNESS = -16f;
+
+    private static PlayerEngine instance;
+
+    private final Context context;
+    private final SharedPreferences preferences;
+    private boolean normalizeVolume;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Access ordered, so the least recently used player is evicted first.
+    private final LinkedHashMap<String, PooledPlayer> pool = new LinkedHashMap<>(POOL_SIZE + 1, 0.75f, true);
+    private final PlaybackQueue queue = new PlaybackQueue(this, new Random());
+    private final SeekController seekController = new SeekController(this::seekCurrent);
+    private SegmentCache segmentCache;
+    private PooledPlayer current;
+    // Pre-buffered item that follows current, and whether it is chained as its next player.
+    private PooledPlayer next;
+    private PooledPlayer chained;
+    private boolean loopCurrent;
+    private boolean playWhenReady;
+    private SurfaceHolder displayHolder;
+    private final List<Listener> listeners = new ArrayList<>();
+    private long openRequestedAt;
+    private long startRequestedAt;
+
+    public interface Listener {
+        void onMediaFileChanged(MediaFile mediaFile);
+
+        void onPrepared(int duration);
+
+        void onCompletion();
+
+        void onError();
+
+        void onVideoSizeChanged(int width, int height);
+
+        void onPlaybackStateChanged(boolean playing);
+    }
+
+    private static class PooledPlayer {
+        final MediaFile mediaFile;
+        final MediaPlayer player = new MediaPlayer();
+        boolean prepared;
+        boolean failed;
+        long prepareStartedAt;
+        // Volume that brings the file to TARGET_LOUDNESS, 1 until its loudness is known.
+        float normalizationGain = 1f;
+
+        PooledPlayer(MediaFile mediaFile) {
+            this.mediaFile = mediaFile;
+        }
+    }
+
+    public static synchronized PlayerEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new PlayerEngine(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private PlayerEngine(Context context) {
+        this.context = context;
+        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.normalizeVolume = preferences.getBoolean(KEY_NORMALIZE_VOLUME, false);
+    }
+
+    // Starts preparing a file the user is likely to open next. No-op if it is pooled already.
+    public void prepare(MediaFile mediaFile) {
+        obtain(mediaFile);
+    }
+
+    // Replaces the queue with the entries of source and opens the one at index, paused, which
+    // is mediaFile when the caller has it. tapTime is the elapsedRealtime of the user action,
+    // or 0.
+    public void playQueue(PlaybackQueue.Source source, int index, MediaFile mediaFile, long tapTime) {
+        openRequestedAt = tapTime > 0 ? tapTime : SystemClock.elapsedRealtime();
+        playWhenReady = false;
+        queue.setItems(source, index, mediaFile);
+    }
+
+    public PlaybackQueue getQueue() {
+        return queue;
+    }
+
+    public MediaFile getCurrentMediaFile() {
+        return current != null ? current.mediaFile : null;
+    }
+
+    // listener is told about the current item right away, and about every later change.
+    // PlaybackService stays attached for as long as it runs, activities come and go.
+    public void attach(Listener listener) {
+        if (!listeners.contains(listener)) {
+            listeners.add(listener);
+        }
+        if (current != null) {
+            notifyCurrent(listener);
+        }
+    }
+
+    public void detach(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    public void setDisplay(SurfaceHolder holder) {
+        displayHolder = holder;
+        if (current != null && !current.failed && current.mediaFile.isVideo()) {
+            current.player.setDisplay(holder);
+        }
+    }
+
+    @Override
+    public void open(MediaFile mediaFile) {
+        PooledPlayer pooled = obtain(mediaFile);
+        if (current != null && current != pooled) {
+            unchain();
+            if (current.prepared) {
+                if (current.player.isPlaying()) {
+                    current.player.pause();
+                }
+                // A surface can only feed one player at a time.
+                current.player.setDisplay(null);
+            }
+        }
+        current = pooled;
+        startRequestedAt = 0;
+        seekController.reset();
+        if (displayHolder != null && mediaFile.isVideo() && !pooled.failed) {
+            pooled.player.setDisplay(displayHolder);
+        }
+
+        if (pooled.prepared) {
+            if (pooled.player.getCurrentPosition() != 0) {
+                pooled.player.seekTo(0);
+            }
+            long openTime = SystemClock.elapsedRealtime() - openRequestedAt;
+            OPEN_TIME.recordMillis(openTime);
+            PREWARMED_OPENS.increment();
+            Log.i(LATENCY_TAG, "open " + mediaFile.getId() + ": " + openTime + " ms (pre-warmed)");
+        }
+        if (pooled.prepared && playWhenReady) {
+            start();
+        }
+        for (Listener listener : listeners()) {
+            notifyCurrent(listener);
+        }
+    }
+
+    @Override
+    public void setNext(MediaFile mediaFile) {
+        if (current == null) {
+            return;
+        }
+        unchain();
+        if (mediaFile == null) {
+            return;
+        }
+        if (mediaFile.getId().equals(current.mediaFile.getId())) {
+            // Repeat one: loop inside the player rather than chaining it to itself.
+            loopCurrent = true;
+            if (current.prepared) {
+                current.player.setLooping(true);
+            }
+            return;
+        }
+        next = obtain(mediaFile);
+        chainIfReady();
+    }
+
+    public boolean isPrepared() {
+        return current != null && current.prepared;
+    }
+
+    public boolean isPlaying() {
+        return isPrepared() && current.player.isPlaying();
+    }
+
+    public void start() {
+        playWhenReady = true;
+        if (isPrepared()) {
+            startRequestedAt = SystemClock.elapsedRealtime();
+            current.player.start();
+            if (current.mediaFile.isAudio()) {
+                pollFirstAudioFrame(current, current.player.getCurrentPosition());
+            }
+            notifyPlaybackState();
+        }
+    }
+
+    public void pause() {
+        playWhenReady = false;
+        if (isPlaying()) {
+            current.player.pause();
+            notifyPlaybackState();
+        }
+    }
+
+    // Precise seek, for a released seek bar or a media session request.
+    public void seekTo(int position) {
+        seekController.seek(position);
+    }
+
+    // Quick seek to the nearest sync frame while the seek bar is dragged.
+    public void seekPreview(int position) {
+        seekController.preview(position);
+    }
+
+    public boolean isNormalizeVolume() {
+        return normalizeVolume;
+    }
+
+    public void setNormalizeVolume(boolean normalizeVolume) {
+        this.normalizeVolume = normalizeVolume;
+        preferences.edit().putBoolean(KEY_NORMALIZE_VOLUME, normalizeVolume).apply();
+        for (PooledPlayer pooled : pool.values()) {
+            applyVolume(pooled);
+        }
+    }
+
+    public SeekController getSeekController() {
+        return seekController;
+    }
+
+    public int getCurrentPosition() {
+        return isPrepared() ? current.player.getCurrentPosition() : 0;
+    }
+
+    public int getDuration() {
+        return isPrepared() ? current.player.getDuration() : 0;
+    }
+
+    public void release(String mediaFileId) {
+        PooledPlayer pooled = pool.remove(mediaFileId);
+        if (pooled != null) {
+            if (pooled == current) {
+                current = null;
+            }
+            if (pooled == next) {
+                next = null;
+                chained = null;
+            }
+            pooled.player.release();
+        }
+    }
+
+    private PooledPlayer obtain(MediaFile mediaFile) {
+        PooledPlayer pooled = pool.get(mediaFile.getId());
+        if (pooled != null && !pooled.failed) {
+            return pooled;
+        }
+        if (pooled != null) {
+            release(mediaFile.getId());
+        }
+
+        pooled = new PooledPlayer(mediaFile);
+        pool.put(mediaFile.getId(), pooled);
+        evictIfNeeded();
+        startPreparing(pooled);
+        return pooled;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<String, PooledPlayer>> iterator = pool.entrySet().iterator();
+        while (pool.size() > POOL_SIZE && iterator.hasNext()) {
+            PooledPlayer eldest = iterator.next().getValue();
+            if (eldest != current && eldest != next) {
+                iterator.remove();
+                eldest.player.release();
+            }
+        }
+    }
+
+    private void startPreparing(PooledPlayer pooled) {
+        MediaPlayer player = pooled.player;
+        player.setAudioAttributes(new AudioAttributes.Builder()
+            .setUsage(AudioAttributes.USAGE_MEDIA)
+            .setContentType(pooled.mediaFile.isVideo()
+                ? AudioAttributes.CONTENT_TYPE_MOVIE : AudioAttributes.CONTENT_TYPE_MUSIC)
+            .build());
+
+        player.setOnPreparedListener(mp -> {
+            pooled.prepared = true;
+            long prepareTime = SystemClock.elapsedRealtime() - pooled.prepareStartedAt;
+            PREPARE_TIME.recordMillis(prepareTime);
+            Log.d(TAG, "prepared " + pooled.mediaFile.getId() + " in " + prepareTime + " ms");
+            if (pooled == current) {
+                long openTime = SystemClock.elapsedRealtime() - openRequestedAt;
+                OPEN_TIME.recordMillis(openTime);
+                Log.i(LATENCY_TAG, "open " + pooled.mediaFile.getId() + ": " + openTime + " ms");
+                mp.setLooping(loopCurrent);
+                if (playWhenReady) {
+                    start();
+                }
+                for (Listener listener : listeners()) {
+                    listener.onPrepared(mp.getDuration());
+                }
+            }
+            chainIfReady();
+        });
+        player.setOnCompletionListener(mp -> {
+            if (pooled != current) {
+                return;
+            }
+            if (chained != null) {
+                handOff(chained);
+            } else if (!queue.onCompletion()) {
+                playWhenReady = false;
+                for (Listener listener : listeners()) {
+                    listener.onCompletion();
+                    listener.onPlaybackStateChanged(false);
+                }
+            }
+        });
+        player.setOnSeekCompleteListener(mp -> {
+            if (pooled == current) {
+                seekController.onSeekComplete();
+            }
+        });
+        player.setOnErrorListener((mp, what, extra) -> {
+            Log.w(TAG, "error " + what + "/" + extra + " on " + pooled.mediaFile.getId());
+            pooled.failed = true;
+            pooled.prepared = false;
+            if (pooled == current) {
+                for (Listener listener : listeners()) {
+                    listener.onError();
+                }
+            }
+            return true;
+        });
+        player.setOnVideoSizeChangedListener((mp, width, height) -> {
+            if (pooled == current && width > 0 && height > 0) {
+                for (Listener listener : listeners()) {
+                    listener.onVideoSizeChanged(width, height);
+                }
+            }
+        });
+        player.setOnInfoListener((mp, what, extra) -> {
+            if (what == MediaPlayer.MEDIA_INFO_VIDEO_RENDERING_START && pooled == current) {
+                logFirstFrame(pooled, "video");
+            } else if (what == MediaPlayer.MEDIA_INFO_STARTED_AS_NEXT && pooled == chained) {
+                handOff(pooled);
+            }
+            return false;
+        });
+
+        if (pooled.mediaFile.isAudio()) {
+            WaveformLoader.getInstance(context).load(pooled.mediaFile, waveform -> {
+                // containsValue doesn't touch the access order, and skips a player released meanwhile.
+                if (waveform != null && pool.containsValue(pooled)) {
+                    pooled.normalizationGain = normalizationGain(waveform.getLoudness());
+                    applyVolume(pooled);
+                }
+            });
+        }
+
+        try {
+            if (pooled.mediaFile.isRemote()) {
+                player.setDataSource(new CachingHttpDataSource(
+                    new CachingHttpReader(pooled.mediaFile.getPath(), segmentCache())));
+            } else {
+                player.setDataSource(context, Uri.parse(pooled.mediaFile.getPath()));
+            }
+            pooled.prepareStartedAt = SystemClock.elapsedRealtime();
+            player.prepareAsync();
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to open " + pooled.mediaFile.getPath(), e);
+            pooled.failed = true;
+        }
+    }
+
+    private void applyVolume(PooledPlayer pooled) {
+        if (pooled.failed) {
+            return;
+        }
+        float volume = normalizeVolume ? pooled.normalizationGain : 1f;
+        pooled.player.setVolume(volume, volume);
+    }
+
+    static float normalizationGain(float loudness) {
+        if (Float.isNaN(loudness)) {
+            return 1f;
+        }
+        return (float) Math.min(1.0, Math.pow(10, (TARGET_LOUDNESS - loudness) / 20));
+    }
+
+    private SegmentCache segmentCache() {
+        if (segmentCache == null) {
+            segmentCache = new SegmentCache(new File(context.getCacheDir(), "media_segments"),
+                MAX_SEGMENT_CACHE_BYTES);
+        }
+        return segmentCache;
+    }
+
+    private void seekCurrent(int position, boolean precise) {
+        if (!isPrepared()) {
+            seekController.onSeekComplete();
+            return;
+        }
+        current.player.seekTo(position, precise ? MediaPlayer.SEEK_CLOSEST : MediaPlayer.SEEK_CLOSEST_SYNC);
+        // Previews arrive at drag rate and the screen already shows the dragged position; the
+        // session and the notification hear of the final one.
+        if (precise) {
+            notifyPlaybackState();
+        }
+    }
+
+    private void unchain() {
+        if (current != null && current.prepared) {
+            if (chained != null) {
+                current.player.setNextMediaPlayer(null);
+            }
+            current.player.setLooping(false);
+        }
+        chained = null;
+        next = null;
+        loopCurrent = false;
+    }
+
+    private void chainIfReady() {
+        if (current == null || next == null || chained == next || !current.prepared || !next.prepared) {
+            return;
+        }
+        // Video is not chained: the display surface can only be attached to one player, so
+        // that switch happens on completion, still without a prepare stall.
+        if (next.mediaFile.isVideo()) {
+            return;
+        }
+        if (next.player.getCurrentPosition() != 0) {
+            next.player.seekTo(0);
+        }
+        current.player.setNextMediaPlayer(next.player);
+        chained = next;
+    }
+
+    // The chained player started on its own when current completed. Both the completion of
+    // the old player and MEDIA_INFO_STARTED_AS_NEXT lead here, whichever comes first.
+    private void handOff(PooledPlayer pooled) {
+        PooledPlayer previous = current;
+        current = pooled;
+        chained = null;
+        next = null;
+        startRequestedAt = 0;
+        seekController.reset();
+        previous.player.setDisplay(null);
+        GAPLESS_HANDOFFS.increment();
+        Log.i(LATENCY_TAG, "gapless hand-off " + previous.mediaFile.getId() + " -> "
+            + pooled.mediaFile.getId());
+        queue.onAdvancedToNext();
+        for (Listener listener : listeners()) {
+            notifyCurrent(listener);
+        }
+    }
+
+    private void notifyPlaybackState() {
+        boolean playing = isPlaying();
+        for (Listener listener : listeners()) {
+            listener.onPlaybackStateChanged(playing);
+        }
+    }
+
+    // Copy, so a listener may detach itself from a callback.
+    private List<Listener> listeners() {
+        return new ArrayList<>(listeners);
+    }
+
+    private void notifyCurrent(Listener listener) {
+        listener.onMediaFileChanged(current.mediaFile);
+        if (current.failed) {
+            listener.onError();
+        } else if (current.prepared) {
+            listener.onPrepared(current.player.getDuration());
+            int width = current.player.getVideoWidth();
+            int height = current.player.getVideoHeight();
+            if (width > 0 && height > 0) {
+                listener.onVideoSizeChanged(width, height);
+            }
+        }
+    }
+
+    // MediaPlayer has no callback for the first rendered audio frame, so the position is
+    // polled briefly after start() until it moves.
+    private void pollFirstAudioFrame(PooledPlayer pooled, int startPosition) {
+        mainHandler.postDelayed(new Runnable() {
+            @Override
+            public void run() {
+                if (pooled != current || !pooled.prepared || !pooled.player.isPlaying()) {
+                    return;
+                }
+                if (pooled.player.getCurrentPosition() != startPosition) {
+                    logFirstFrame(pooled, "audio");
+                } else if (SystemClock.elapsedRealtime() - startRequestedAt < FIRST_FRAME_TIMEOUT_MS) {
+                    mainHandler.postDelayed(this, FIRST_FRAME_POLL_MS);
+                }
+            }
+        }, FIRST_FRAME_POLL_MS);
+    }
+
+    private void logFirstFrame(PooledPlayer pooled, String kind) {
+        if (startRequestedAt == 0) {
+            return;
+        }
+        long now = SystemClock.elapsedRealtime();
+        FIRST_FRAME_TIME.recordMillis(now - startRequestedAt);
+        Log.i(LATENCY_TAG, "first " + kind + " frame " + pooled.mediaFile.getId() + ": "
+            + (now - startRequestedAt) + " ms after play, " + (now - openRequestedAt) + " ms after tap");
+        startRequestedAt = 0;
+    }
+}
@@ -0,0 +1,63 @@
+package com.uici.lecturmultimedia;
+
+import android.view.Choreographer;
+import android.widget.SeekBar;
+import android.widget.TextView;
+
+// Moves the seek bar, the waveform and the elapsed time of MediaPlayerActivity. It ticks on Choreographer
+// frames, so it runs in step with drawing and stops by itself when nothing is drawn, and is
+// only started while playback runs and the activity is visible. The time text is written
+// from a reused buffer once per displayed second.
+public class ProgressTicker implements Choreographer.FrameCallback {
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final SeekBar seekBar;
+    private final WaveformView waveformView;
+    private final TextView timeView;
+    private final ClockText clock = new ClockText();
+    private PlayerEngine playerEngine;
+    private boolean running;
+
+    public ProgressTicker(SeekBar seekBar, WaveformView waveformView, TextView timeView) {
+        this.seekBar = seekBar;
+        this.waveformView = waveformView;
+        this.timeView = timeView;
+    }
+
+    public void start(PlayerEngine playerEngine) {
+        this.playerEngine = playerEngine;
+        if (!running) {
+            running = true;
+            choreographer.postFrameCallback(this);
+        }
+    }
+
+    public void stop() {
+        if (running) {
+            running = false;
+            choreographer.removeFrameCallback(this);
+        }
+        playerEngine = null;
+    }
+
+    // Shows a position without ticking, for a paused player or a seek in progress.
+    public void show(int position) {
+        seekBar.setProgress(position);
+        waveformView.setProgress(position);
+        showTime(position);
+    }
+
+    public void showTime(int position) {
+        if (clock.update(position)) {
+            timeView.setText(clock.getChars(), 0, clock.length());
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        if (!running) {
+            return;
+        }
+        show(playerEngine.getCurrentPosition());
+        choreographer.postFrameCallback(this);
+    }
+}
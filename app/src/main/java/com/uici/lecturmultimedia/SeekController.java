@@ -0,0 +1,84 @@
+package com.uici.lecturmultimedia;
+
+import java.util.concurrent.TimeUnit;
+
+// Turns the stream of seek bar events into as few decoder seeks as possible. Only one seek
+// is in flight at a time: events that arrive meanwhile just move the pending target, so
+// stale positions are dropped instead of queued. While dragging, seeks go to the closest
+// sync frame, which is cheap to reach; releasing the thumb issues one precise seek.
+public class SeekController {
+    // A seek whose completion never arrived (player reset or failed) stops blocking after this.
+    private static final long IN_FLIGHT_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int NONE = -1;
+
+    private static final Telemetry.Counter PROGRESS_EVENTS = Telemetry.counter("seek.progress_events");
+    private static final Telemetry.Counter SEEKS_ISSUED = Telemetry.counter("seek.issued");
+    private static final Telemetry.Counter SEEKS_DROPPED = Telemetry.counter("seek.dropped");
+    // From issuing a seek to the player reporting it complete.
+    private static final Telemetry.Histogram SEEK_TIME = Telemetry.histogram("seek.latency");
+
+    public interface Seeker {
+        void seekTo(int position, boolean precise);
+    }
+
+    private final Seeker seeker;
+    private boolean inFlight;
+    private long issuedAt;
+    private int pendingPosition = NONE;
+    private boolean pendingPrecise;
+
+    public SeekController(Seeker seeker) {
+        this.seeker = seeker;
+    }
+
+    // A position while the user is dragging.
+    public void preview(int position) {
+        request(position, false);
+    }
+
+    // The final position of a drag, or any one-off seek.
+    public void seek(int position) {
+        request(position, true);
+    }
+
+    public void onSeekComplete() {
+        if (inFlight) {
+            SEEK_TIME.record(System.nanoTime() - issuedAt);
+        }
+        inFlight = false;
+        if (pendingPosition != NONE) {
+            issue();
+        }
+    }
+
+    // The player changed, nothing in flight or pending applies to the new one.
+    public void reset() {
+        inFlight = false;
+        pendingPosition = NONE;
+    }
+
+    private void request(int position, boolean precise) {
+        PROGRESS_EVENTS.increment();
+        if (pendingPosition != NONE) {
+            SEEKS_DROPPED.increment();
+        }
+        pendingPosition = position;
+        pendingPrecise = precise;
+        if (inFlight && System.nanoTime() - issuedAt > IN_FLIGHT_TIMEOUT_NANOS) {
+            inFlight = false;
+        }
+        if (!inFlight) {
+            issue();
+        }
+    }
+
+    private void issue() {
+        int position = pendingPosition;
+        boolean precise = pendingPrecise;
+        pendingPosition = NONE;
+        inFlight = true;
+        issuedAt = System.nanoTime();
+        SEEKS_ISSUED.increment();
+        seeker.seekTo(position, precise);
+    }
+}
@@ -0,0 +1,125 @@
+package com.uici.lecturmultimedia;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Fixed-size pieces of remote media stored as one file each, evicted least recently used
+// first once the directory grows past maxBytes. Segments are written to a temporary file
+// and renamed, so a reader never sees a partial segment.
+public class SegmentCache {
+    private final File directory;
+    private final long maxBytes;
+    // File name to length, in access order.
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long totalBytes;
+    private boolean loaded;
+    private int tmpCounter;
+
+    public SegmentCache(File directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    // Reads a whole segment into buffer, returning its length, or -1 when it isn't cached.
+    public int read(String key, long index, byte[] buffer) throws IOException {
+        File file;
+        synchronized (this) {
+            ensureLoaded();
+            String name = name(key, index);
+            if (entries.get(name) == null) {
+                return -1;
+            }
+            file = new File(directory, name);
+            // Keeps the order across restarts, which is rebuilt from modification times.
+            file.setLastModified(System.currentTimeMillis());
+        }
+        int length = 0;
+        try (InputStream in = new FileInputStream(file)) {
+            int read;
+            while (length < buffer.length && (read = in.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+            }
+        } catch (IOException e) {
+            // Evicted by another thread in the meantime.
+            return -1;
+        }
+        return length;
+    }
+
+    public synchronized boolean contains(String key, long index) {
+        ensureLoaded();
+        return entries.containsKey(name(key, index));
+    }
+
+    public void put(String key, long index, byte[] data, int length) throws IOException {
+        String name = name(key, index);
+        File tmp;
+        synchronized (this) {
+            ensureLoaded();
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Unable to create " + directory);
+            }
+            tmp = new File(directory, name + '.' + (tmpCounter++) + ".tmp");
+        }
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(data, 0, length);
+        }
+        synchronized (this) {
+            if (!tmp.renameTo(new File(directory, name))) {
+                tmp.delete();
+                throw new IOException("Unable to store segment " + name);
+            }
+            Long previous = entries.put(name, (long) length);
+            totalBytes += length - (previous != null ? previous : 0);
+            trim();
+        }
+    }
+
+    public synchronized long getTotalBytes() {
+        ensureLoaded();
+        return totalBytes;
+    }
+
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (file.getName().endsWith(".tmp")) {
+                file.delete();
+            } else {
+                entries.put(file.getName(), file.length());
+                totalBytes += file.length();
+            }
+        }
+        trim();
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            new File(directory, eldest.getKey()).delete();
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+        }
+    }
+
+    private static String name(String key, long index) {
+        return key + '_' + index;
+    }
+}
@@ -0,0 +1,236 @@
+package com.uici.lecturmultimedia;
+
+import android.os.Trace;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide counters and latency histograms, cheap enough to stay on in release builds:
+// metrics are looked up once into static fields, and recording is a few atomic adds with no
+// lock and no allocation. Timed sections also show up in system traces (Perfetto, systrace)
+// as android.os.Trace sections of the same name. toJson() is the snapshot MainActivity and
+// MediaPlayerActivity print for "adb shell dumpsys activity <activity> telemetry".
+public final class Telemetry {
+    private static final ConcurrentHashMap<String, Counter> counters = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static volatile long resetAt = System.nanoTime();
+
+    private Telemetry() {
+    }
+
+    public static Counter counter(String name) {
+        return counters.computeIfAbsent(name, Counter::new);
+    }
+
+    public static Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, Histogram::new);
+    }
+
+    // Zeroes every metric, to measure one scenario from a clean state.
+    public static void reset() {
+        for (Counter counter : counters.values()) {
+            counter.value.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+        resetAt = System.nanoTime();
+    }
+
+    public static final class Counter {
+        private final String name;
+        private final LongAdder value = new LongAdder();
+
+        private Counter(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void increment() {
+            value.increment();
+        }
+
+        public void add(long amount) {
+            value.add(amount);
+        }
+
+        public long get() {
+            return value.sum();
+        }
+    }
+
+    // Durations in nanoseconds, in log-linear buckets: four per power of two, so a
+    // percentile is off by at most an eighth of its value. Recorded maxima are exact.
+    public static final class Histogram {
+        private static final int SUB_BUCKETS = 4;
+        private static final int BUCKETS = 62 * SUB_BUCKETS;
+
+        private final String name;
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        private Histogram(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        // Opens a trace section named after the histogram, for stop() on the same thread.
+        public long start() {
+            Trace.beginSection(name);
+            return System.nanoTime();
+        }
+
+        public void stop(long start) {
+            Trace.endSection();
+            record(System.nanoTime() - start);
+        }
+
+        public void record(long nanos) {
+            if (nanos < 0) {
+                return;
+            }
+            buckets.incrementAndGet(bucketOf(nanos));
+            count.increment();
+            sum.add(nanos);
+            long current = max.get();
+            while (nanos > current && !max.compareAndSet(current, nanos)) {
+                current = max.get();
+            }
+        }
+
+        public void recordMillis(long millis) {
+            record(millis * 1_000_000);
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getMax() {
+            return max.get();
+        }
+
+        // The middle of the bucket holding the fraction-th value, capped at the maximum.
+        public long percentile(double fraction) {
+            long total = 0;
+            long[] snapshot = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                snapshot[i] = buckets.get(i);
+                total += snapshot[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(fraction * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += snapshot[i];
+                if (seen >= rank) {
+                    return Math.min(max.get(), (lowerBound(i) + lowerBound(i + 1)) / 2);
+                }
+            }
+            return max.get();
+        }
+
+        private void reset() {
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets.set(i, 0);
+            }
+            count.reset();
+            sum.reset();
+            max.set(0);
+        }
+
+        // Values under 4 have a bucket each; above, the top three bits pick the bucket.
+        static int bucketOf(long value) {
+            if (value < SUB_BUCKETS) {
+                return (int) value;
+            }
+            int exponent = 63 - Long.numberOfLeadingZeros(value);
+            int sub = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+            return Math.min(BUCKETS - 1, (exponent - 1) * SUB_BUCKETS + sub);
+        }
+
+        static long lowerBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int exponent = bucket / SUB_BUCKETS + 1;
+            return (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - 2);
+        }
+    }
+
+    // Handles "telemetry" (prints the snapshot) and "telemetry reset" from an activity's
+    // dump(); false for any other arguments, which are left to the default dump.
+    public static boolean dump(PrintWriter writer, String[] args) {
+        if (args == null || args.length == 0 || !"telemetry".equals(args[0])) {
+            return false;
+        }
+        if (args.length > 1 && "reset".equals(args[1])) {
+            reset();
+            writer.println("telemetry reset");
+        } else {
+            writer.print(toJson());
+        }
+        return true;
+    }
+
+    // {"uptimeMs": .., "counters": {name: value}, "histograms": {name: {count, meanUs,
+    // p50Us, p90Us, p99Us, maxUs}}}, names sorted. uptimeMs is since start or reset().
+    public static String toJson() {
+        StringBuilder json = new StringBuilder(1024);
+        json.append("{\n  \"uptimeMs\": ").append((System.nanoTime() - resetAt) / 1_000_000);
+        json.append(",\n  \"counters\": {");
+        String separator = "\n    ";
+        for (Map.Entry<String, Counter> entry : new TreeMap<>(counters).entrySet()) {
+            json.append(separator);
+            appendString(json, entry.getKey());
+            json.append(": ").append(entry.getValue().get());
+            separator = ",\n    ";
+        }
+        json.append("\n  },\n  \"histograms\": {");
+        separator = "\n    ";
+        for (Map.Entry<String, Histogram> entry : new TreeMap<>(histograms).entrySet()) {
+            Histogram histogram = entry.getValue();
+            long count = histogram.getCount();
+            json.append(separator);
+            appendString(json, entry.getKey());
+            json.append(": {\"count\": ").append(count)
+                .append(", \"meanUs\": ").append(count > 0 ? histogram.sum.sum() / count / 1000 : 0)
+                .append(", \"p50Us\": ").append(histogram.percentile(0.50) / 1000)
+                .append(", \"p90Us\": ").append(histogram.percentile(0.90) / 1000)
+                .append(", \"p99Us\": ").append(histogram.percentile(0.99) / 1000)
+                .append(", \"maxUs\": ").append(histogram.getMax() / 1000)
+                .append('}');
+            separator = ",\n    ";
+        }
+        return json.append("\n  }\n}\n").toString();
+    }
+
+    private static void appendString(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+}
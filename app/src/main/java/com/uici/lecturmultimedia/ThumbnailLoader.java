@@ -0,0 +1,325 @@
+package com.uici.lecturmultimedia;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+// Loads video frames and embedded album art for the media list. Bitmaps are decoded off
+// the main thread at the size of the target view, kept in a byte-sized LruCache and stored
+// as small JPEGs in a bounded disk cache. The decode queue is LIFO so the rows that were
+// bound last, the visible ones, are served first.
+public class ThumbnailLoader {
+    private static final String TAG = "ThumbnailLoader";
+
+    private static final String DISK_CACHE_DIR = "thumbnails";
+    private static final long MAX_DISK_CACHE_BYTES = 32L * 1024 * 1024;
+    private static final int DECODE_THREADS = 2;
+    private static final int JPEG_QUALITY = 85;
+
+    private static final Telemetry.Counter MEMORY_HITS = Telemetry.counter("thumbnail.memory_hit");
+    private static final Telemetry.Counter DISK_HITS = Telemetry.counter("thumbnail.disk_hit");
+    private static final Telemetry.Counter MISSES = Telemetry.counter("thumbnail.miss");
+    // Extracting and scaling a frame or embedded picture, disk cache misses only.
+    private static final Telemetry.Histogram DECODE_TIME = Telemetry.histogram("thumbnail.decode");
+
+    private static ThumbnailLoader instance;
+
+    private final Context context;
+    // Resolved by the first background read or write, getCacheDir() may create the directory.
+    private volatile File diskCacheDir;
+    // Both caches are keyed by id, last-modified time and size, a changed file or another
+    // view size never gets a stale or wrongly scaled thumbnail.
+    private final LruCache<String, Bitmap> memoryCache;
+    // Cache keys of files without a frame or embedded picture, so they are not decoded again.
+    private final Set<String> missingArt = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final ThreadPoolExecutor decoder;
+    // Warm-up has its own thread so it never sits in the decode queue in front of a bind.
+    private final ExecutorService warmUpExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "thumbnail-warm-up");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+    // Set by the first load(): the list is binding, what warm-up hasn't done yet is left to it.
+    private volatile boolean bindsStarted;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private long diskCacheBytes = -1;
+
+    public interface Target {
+        void onThumbnailLoaded(Bitmap bitmap);
+    }
+
+    public static class Request {
+        private volatile boolean cancelled;
+        private ThreadPoolExecutor executor;
+        private FutureTask<Void> task;
+
+        // Takes the decode out of the queue, so scrolling past many rows doesn't leave their
+        // cancelled decodes in front of the rows now on screen.
+        public void cancel() {
+            cancelled = true;
+            if (task != null) {
+                task.cancel(false);
+                executor.remove(task);
+            }
+        }
+    }
+
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ThumbnailLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private ThumbnailLoader(Context context) {
+        this.context = context;
+
+        int maxBytes = (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8);
+        this.memoryCache = new LruCache<String, Bitmap>(maxBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getAllocationByteCount();
+            }
+        };
+
+        LinkedBlockingDeque<Runnable> stack = new LinkedBlockingDeque<Runnable>() {
+            @Override
+            public boolean offer(Runnable runnable) {
+                return offerFirst(runnable);
+            }
+        };
+        this.decoder = new ThreadPoolExecutor(DECODE_THREADS, DECODE_THREADS, 30, TimeUnit.SECONDS,
+            stack, runnable -> {
+                Thread thread = new Thread(runnable, "thumbnail-decode");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+        this.decoder.allowCoreThreadTimeOut(true);
+    }
+
+    public Bitmap getCached(MediaFile mediaFile, int targetSize) {
+        Bitmap bitmap = memoryCache.get(mediaFile.getThumbnailKey(targetSize));
+        if (bitmap != null) {
+            MEMORY_HITS.increment();
+        }
+        return bitmap;
+    }
+
+    // Queues a decode that reports to target on the main thread unless the returned request
+    // is cancelled first. Returns null when the file is known to have no picture, or is
+    // remote: scrolling the list shouldn't download streams.
+    public Request load(MediaFile mediaFile, int targetSize, Target target) {
+        if (mediaFile.isRemote() || missingArt.contains(mediaFile.getThumbnailKey(targetSize))) {
+            return null;
+        }
+        bindsStarted = true;
+        MISSES.increment();
+        Request request = new Request();
+        request.executor = decoder;
+        request.task = new FutureTask<>(() -> {
+            if (request.cancelled) {
+                return;
+            }
+            Bitmap bitmap = loadInBackground(mediaFile, targetSize, request);
+            if (bitmap == null) {
+                if (!request.cancelled) {
+                    missingArt.add(mediaFile.getThumbnailKey(targetSize));
+                }
+                return;
+            }
+            memoryCache.put(mediaFile.getThumbnailKey(targetSize), bitmap);
+            mainHandler.post(() -> {
+                if (!request.cancelled) {
+                    target.onThumbnailLoaded(bitmap);
+                }
+            });
+        }, null);
+        decoder.execute(request.task);
+        return request;
+    }
+
+    // Moves the disk-cached thumbnails of files about to be shown into memory, so the first
+    // list frame binds them without going through the decode queue. Stops as soon as the list
+    // starts binding, the rows it reaches first are then decoded for it.
+    public void warmUp(List<MediaFile> mediaFiles, int targetSize) {
+        warmUpExecutor.execute(() -> {
+            for (MediaFile mediaFile : mediaFiles) {
+                if (bindsStarted) {
+                    return;
+                }
+                String key = mediaFile.getThumbnailKey(targetSize);
+                if (memoryCache.get(key) != null) {
+                    continue;
+                }
+                File diskFile = new File(diskCacheDir(), key + ".jpg");
+                Bitmap bitmap = diskFile.exists() ? BitmapFactory.decodeFile(diskFile.getPath()) : null;
+                if (bitmap != null) {
+                    memoryCache.put(key, bitmap);
+                }
+            }
+        });
+    }
+
+    private Bitmap loadInBackground(MediaFile mediaFile, int targetSize, Request request) {
+        File diskFile = new File(diskCacheDir(), mediaFile.getThumbnailKey(targetSize) + ".jpg");
+        if (diskFile.exists()) {
+            Bitmap bitmap = BitmapFactory.decodeFile(diskFile.getPath());
+            if (bitmap != null) {
+                DISK_HITS.increment();
+                diskFile.setLastModified(System.currentTimeMillis());
+                return bitmap;
+            }
+        }
+
+        // Cancelled while the disk was read, the row is gone: skip the costly part.
+        if (request.cancelled) {
+            return null;
+        }
+        long startedAt = DECODE_TIME.start();
+        Bitmap bitmap;
+        try {
+            bitmap = decode(mediaFile, targetSize);
+        } finally {
+            DECODE_TIME.stop(startedAt);
+        }
+
+        if (bitmap != null) {
+            writeToDisk(diskFile, bitmap);
+        }
+        return bitmap;
+    }
+
+    private Bitmap decode(MediaFile mediaFile, int targetSize) {
+        Uri uri = Uri.parse(mediaFile.getPath());
+        MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+        try {
+            retriever.setDataSource(context, uri);
+            if (mediaFile.isVideo()) {
+                return decodeFrame(retriever, mediaFile, targetSize);
+            }
+            byte[] picture = retriever.getEmbeddedPicture();
+            return picture != null ? decodeSampled(picture, targetSize) : null;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Unable to decode thumbnail for " + mediaFile.getPath(), e);
+            return null;
+        } finally {
+            try {
+                retriever.release();
+            } catch (IOException e) {
+                // Nothing left to release.
+            }
+        }
+    }
+
+    private static Bitmap decodeFrame(MediaMetadataRetriever retriever, MediaFile mediaFile, int targetSize) {
+        // A frame a little into the clip is more representative than a black first frame.
+        long timeUs = Math.min(mediaFile.getDuration() * 1000 / 10, 5_000_000L);
+        int width = mediaFile.getWidth();
+        int height = mediaFile.getHeight();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1 && width > 0 && height > 0) {
+            float scale = Math.min(1f, (float) targetSize / Math.min(width, height));
+            return retriever.getScaledFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC,
+                Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale)));
+        }
+        Bitmap frame = retriever.getFrameAtTime(timeUs, MediaMetadataRetriever.OPTION_CLOSEST_SYNC);
+        if (frame == null) {
+            return null;
+        }
+        float scale = Math.min(1f, (float) targetSize / Math.min(frame.getWidth(), frame.getHeight()));
+        if (scale == 1f) {
+            return frame;
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(frame, Math.max(1, Math.round(frame.getWidth() * scale)),
+            Math.max(1, Math.round(frame.getHeight() * scale)), true);
+        frame.recycle();
+        return scaled;
+    }
+
+    private static Bitmap decodeSampled(byte[] data, int targetSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+
+        int sampleSize = 1;
+        int smallestSide = Math.min(options.outWidth, options.outHeight);
+        while (smallestSide / (sampleSize * 2) >= targetSize) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+    }
+
+    private File diskCacheDir() {
+        if (diskCacheDir == null) {
+            diskCacheDir = new File(context.getCacheDir(), DISK_CACHE_DIR);
+        }
+        return diskCacheDir;
+    }
+
+    private synchronized void writeToDisk(File file, Bitmap bitmap) {
+        File diskCacheDir = diskCacheDir();
+        if (!diskCacheDir.isDirectory() && !diskCacheDir.mkdirs()) {
+            return;
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to cache thumbnail " + file, e);
+            file.delete();
+            return;
+        }
+        if (diskCacheBytes < 0) {
+            diskCacheBytes = 0;
+            File[] files = diskCacheDir.listFiles();
+            for (File cached : files != null ? files : new File[0]) {
+                diskCacheBytes += cached.length();
+            }
+        } else {
+            diskCacheBytes += file.length();
+        }
+        if (diskCacheBytes > MAX_DISK_CACHE_BYTES) {
+            trimDiskCache();
+        }
+    }
+
+    private void trimDiskCache() {
+        File[] files = diskCacheDir().listFiles();
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files, (a, b) -> Long.compare(a.lastModified(), b.lastModified()));
+        for (File file : files) {
+            if (diskCacheBytes <= MAX_DISK_CACHE_BYTES * 3 / 4) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                diskCacheBytes -= length;
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.uici.lecturmultimedia;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+// The result of a WaveformAnalyzer run: a peak and an RMS envelope with one byte per bucket
+// (0 to 255 of full scale) spread evenly over the duration, and the integrated loudness.
+// Stored as a peak file of a few kilobytes, so the player draws it without decoding again.
+public class Waveform {
+    private static final int MAGIC = 0x5045414B;
+    private static final int VERSION = 1;
+
+    private final long durationMs;
+    private final float loudness;
+    private final byte[] peaks;
+    private final byte[] rms;
+
+    Waveform(long durationMs, float loudness, byte[] peaks, byte[] rms) {
+        this.durationMs = durationMs;
+        this.loudness = loudness;
+        this.peaks = peaks;
+        this.rms = rms;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    // Integrated loudness in LUFS, NaN for silence or a file under 400 ms.
+    public float getLoudness() {
+        return loudness;
+    }
+
+    public int getBucketCount() {
+        return peaks.length;
+    }
+
+    public float getPeak(int bucket) {
+        return (peaks[bucket] & 0xFF) / 255f;
+    }
+
+    public float getRms(int bucket) {
+        return (rms[bucket] & 0xFF) / 255f;
+    }
+
+    // Peaks round up, so a clipped bucket still reads as full scale and a quiet one isn't lost.
+    static byte quantize(float value, boolean roundUp) {
+        float scaled = Math.min(1f, Math.max(0f, value)) * 255f;
+        return (byte) (roundUp ? Math.ceil(scaled) : Math.round(scaled));
+    }
+
+    // Written next to the target and renamed, a reader never sees a partial file.
+    public void writeTo(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(durationMs);
+            out.writeFloat(loudness);
+            out.writeInt(peaks.length);
+            out.write(peaks);
+            out.write(rms);
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    public static Waveform readFrom(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a peak file: " + file);
+            }
+            long durationMs = in.readLong();
+            float loudness = in.readFloat();
+            int count = in.readInt();
+            if (count < 0 || count > WaveformAnalyzer.MAX_BUCKETS) {
+                throw new IOException("Bad bucket count " + count + " in " + file);
+            }
+            byte[] peaks = new byte[count];
+            byte[] rms = new byte[count];
+            in.readFully(peaks);
+            in.readFully(rms);
+            return new Waveform(durationMs, loudness, peaks, rms);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package com.uici.lecturmultimedia;
+
+// Turns a stream of decoded PCM into a Waveform: peak and RMS envelopes over a bounded
+// number of buckets, and the integrated loudness of ITU-R BS.1770 (K-weighted, 400 ms
+// blocks every 100 ms, absolute gate at -70 LUFS and relative gate 10 LU below). Memory
+// doesn't depend on the length of the stream: when the buckets are full, neighbours are
+// merged and each bucket covers twice as many frames, and gated blocks are counted in a
+// histogram instead of being kept. Plain Java, so it runs on the JVM over synthetic PCM.
+public class WaveformAnalyzer {
+    static final int MAX_BUCKETS = 2048;
+    // With a known length, the envelope starts at about this many buckets.
+    private static final int TARGET_BUCKETS = MAX_BUCKETS / 2;
+    private static final int DEFAULT_FRAMES_PER_BUCKET = 256;
+
+    private static final double ABSOLUTE_GATE = -70;
+    private static final double RELATIVE_GATE = -10;
+    // Block loudness histogram from the absolute gate up, louder blocks go in the last bin.
+    private static final double HISTOGRAM_STEP = 0.1;
+    private static final int HISTOGRAM_BINS = 750;
+
+    private final int sampleRate;
+    private final int channels;
+
+    private final float[] peaks = new float[MAX_BUCKETS];
+    // Mean square of each bucket, square-rooted at the end.
+    private final double[] squares = new double[MAX_BUCKETS];
+    private int bucketCount;
+    private int framesPerBucket;
+    private float bucketPeak;
+    private double bucketSquares;
+    private int bucketFrames;
+    private long frames;
+
+    // K-weighting: a high shelf then a high pass, one state pair per channel and stage.
+    private final double[] shelfB = new double[3];
+    private final double[] shelfA = new double[3];
+    private final double[] highPassB = new double[3];
+    private final double[] highPassA = new double[3];
+    private final double[] shelfState;
+    private final double[] highPassState;
+    private final int framesPerSubBlock;
+    private double subBlockEnergy;
+    private int subBlockFrames;
+    // The last four 100 ms sub-blocks make a 400 ms gating block.
+    private final double[] subBlocks = new double[4];
+    private int subBlockCount;
+    private final long[] histogramCounts = new long[HISTOGRAM_BINS];
+    private final double[] histogramEnergy = new double[HISTOGRAM_BINS];
+
+    // expectedFrames sizes the buckets for a stream of about that length, 0 when unknown.
+    public WaveformAnalyzer(int sampleRate, int channels, long expectedFrames) {
+        if (sampleRate <= 0 || channels <= 0) {
+            throw new IllegalArgumentException("Bad PCM format " + sampleRate + " Hz, " + channels + " channels");
+        }
+        this.sampleRate = sampleRate;
+        this.channels = channels;
+        this.framesPerBucket = expectedFrames > 0
+            ? (int) Math.max(1, Math.min(Integer.MAX_VALUE / 4, (expectedFrames + TARGET_BUCKETS - 1) / TARGET_BUCKETS))
+            : DEFAULT_FRAMES_PER_BUCKET;
+        this.shelfState = new double[channels * 2];
+        this.highPassState = new double[channels * 2];
+        this.framesPerSubBlock = Math.max(1, sampleRate / 10);
+        kWeighting(sampleRate);
+    }
+
+    // Interleaved samples in [-1, 1]; count is a multiple of the channel count.
+    public void process(float[] samples, int count) {
+        for (int i = 0; i + channels <= count; i += channels) {
+            float framePeak = 0;
+            double frameSquares = 0;
+            double frameEnergy = 0;
+            for (int c = 0; c < channels; c++) {
+                float sample = samples[i + c];
+                float magnitude = Math.abs(sample);
+                if (magnitude > framePeak) {
+                    framePeak = magnitude;
+                }
+                frameSquares += sample * sample;
+                double weighted = filter(filter(sample, shelfB, shelfA, shelfState, c),
+                    highPassB, highPassA, highPassState, c);
+                frameEnergy += weighted * weighted;
+            }
+            addToBucket(framePeak, frameSquares / channels);
+            addToLoudness(frameEnergy);
+        }
+    }
+
+    public Waveform finish() {
+        if (bucketFrames > 0) {
+            closeBucket();
+        }
+        byte[] peakBytes = new byte[bucketCount];
+        byte[] rmsBytes = new byte[bucketCount];
+        for (int i = 0; i < bucketCount; i++) {
+            peakBytes[i] = Waveform.quantize(peaks[i], true);
+            rmsBytes[i] = Waveform.quantize((float) Math.sqrt(squares[i]), false);
+        }
+        return new Waveform(frames * 1000 / sampleRate, integratedLoudness(), peakBytes, rmsBytes);
+    }
+
+    private void addToBucket(float peak, double meanSquare) {
+        if (peak > bucketPeak) {
+            bucketPeak = peak;
+        }
+        bucketSquares += meanSquare;
+        frames++;
+        if (++bucketFrames == framesPerBucket) {
+            closeBucket();
+        }
+    }
+
+    private void closeBucket() {
+        if (bucketCount == MAX_BUCKETS) {
+            mergeBuckets();
+        }
+        peaks[bucketCount] = bucketPeak;
+        squares[bucketCount] = bucketSquares / bucketFrames;
+        bucketCount++;
+        bucketPeak = 0;
+        bucketSquares = 0;
+        bucketFrames = 0;
+    }
+
+    // Halves the resolution: each pair of buckets becomes one covering both.
+    private void mergeBuckets() {
+        for (int i = 0; i < MAX_BUCKETS / 2; i++) {
+            peaks[i] = Math.max(peaks[2 * i], peaks[2 * i + 1]);
+            squares[i] = (squares[2 * i] + squares[2 * i + 1]) / 2;
+        }
+        bucketCount = MAX_BUCKETS / 2;
+        framesPerBucket *= 2;
+    }
+
+    private void addToLoudness(double energy) {
+        subBlockEnergy += energy;
+        if (++subBlockFrames < framesPerSubBlock) {
+            return;
+        }
+        subBlocks[subBlockCount++ % 4] = subBlockEnergy / framesPerSubBlock;
+        subBlockEnergy = 0;
+        subBlockFrames = 0;
+        if (subBlockCount >= 4) {
+            double blockEnergy = (subBlocks[0] + subBlocks[1] + subBlocks[2] + subBlocks[3]) / 4;
+            double loudness = loudness(blockEnergy);
+            if (loudness >= ABSOLUTE_GATE) {
+                int bin = (int) Math.min(HISTOGRAM_BINS - 1, (loudness - ABSOLUTE_GATE) / HISTOGRAM_STEP);
+                histogramCounts[bin]++;
+                histogramEnergy[bin] += blockEnergy;
+            }
+        }
+    }
+
+    // LUFS, or NaN when nothing is above the absolute gate (silence, or under 400 ms).
+    private float integratedLoudness() {
+        long count = 0;
+        double energy = 0;
+        for (int i = 0; i < HISTOGRAM_BINS; i++) {
+            count += histogramCounts[i];
+            energy += histogramEnergy[i];
+        }
+        if (count == 0) {
+            return Float.NaN;
+        }
+        double gate = loudness(energy / count) + RELATIVE_GATE;
+        count = 0;
+        energy = 0;
+        for (int i = 0; i < HISTOGRAM_BINS; i++) {
+            // A bin counts when its middle is above the gate, which is exact to half a step.
+            if (ABSOLUTE_GATE + (i + 0.5) * HISTOGRAM_STEP >= gate) {
+                count += histogramCounts[i];
+                energy += histogramEnergy[i];
+            }
+        }
+        return count > 0 ? (float) loudness(energy / count) : Float.NaN;
+    }
+
+    // Every channel is weighted 1, as for left, right and centre; surround channels would be 1.41.
+    private static double loudness(double energy) {
+        return -0.691 + 10 * Math.log10(energy);
+    }
+
+    // Transposed direct form II, state[2 * channel] and state[2 * channel + 1].
+    private static double filter(double x, double[] b, double[] a, double[] state, int channel) {
+        int s = 2 * channel;
+        double y = b[0] * x + state[s];
+        state[s] = b[1] * x - a[1] * y + state[s + 1];
+        state[s + 1] = b[2] * x - a[2] * y;
+        return y;
+    }
+
+    // The BS.1770 filters are specified at 48 kHz; these are the analogue prototypes they come
+    // from, through the bilinear transform at the stream's rate (as libebur128 does).
+    private void kWeighting(int rate) {
+        double f0 = 1681.974450955533;
+        double gain = 3.999843853973347;
+        double q = 0.7071752369554196;
+        double k = Math.tan(Math.PI * f0 / rate);
+        double vh = Math.pow(10, gain / 20);
+        double vb = Math.pow(vh, 0.4996667741545416);
+        double a0 = 1 + k / q + k * k;
+        shelfB[0] = (vh + vb * k / q + k * k) / a0;
+        shelfB[1] = 2 * (k * k - vh) / a0;
+        shelfB[2] = (vh - vb * k / q + k * k) / a0;
+        shelfA[0] = 1;
+        shelfA[1] = 2 * (k * k - 1) / a0;
+        shelfA[2] = (1 - k / q + k * k) / a0;
+
+        f0 = 38.13547087602444;
+        q = 0.5003270373238773;
+        k = Math.tan(Math.PI * f0 / rate);
+        a0 = 1 + k / q + k * k;
+        highPassB[0] = 1;
+        highPassB[1] = -2;
+        highPassB[2] = 1;
+        highPassA[0] = 1;
+        highPassA[1] = 2 * (k * k - 1) / a0;
+        highPassA[2] = (1 - k / q + k * k) / a0;
+    }
+}
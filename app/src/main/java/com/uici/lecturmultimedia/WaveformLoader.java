@@ -0,0 +1,248 @@
+package com.uici.lecturmultimedia;
+
+import android.content.Context;
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// Waveforms and loudness of local audio files, analysed once and kept as peak files. A
+// file is decoded with MediaExtractor and MediaCodec on one low priority thread and the
+// PCM goes through WaveformAnalyzer a buffer at a time, so memory stays the same whatever
+// the length of the file. Peak files are keyed by URI, size and last-modified time like
+// the metadata cache, a changed file is analysed again. They live in the cache directory:
+// about 4 KB each, and the system may reclaim them since they can be computed again.
+public class WaveformLoader {
+    private static final String TAG = "WaveformLoader";
+
+    private static final String PEAKS_DIR = "waveforms";
+    private static final int MEMORY_CACHE_SIZE = 16;
+    private static final long CODEC_TIMEOUT_US = 10_000;
+    // Samples handed to the analyzer at a time.
+    private static final int CHUNK_SAMPLES = 8192;
+
+    private static WaveformLoader instance;
+
+    private final Context context;
+    private final File peaksDir;
+    private final LruCache<String, Waveform> memoryCache = new LruCache<>(MEMORY_CACHE_SIZE);
+    // Callbacks waiting for a file being analysed, by peak file name. Main thread only.
+    private final Map<String, List<Callback>> pending = new HashMap<>();
+    private final ExecutorService analyzer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "waveform-analysis");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public interface Callback {
+        // On the main thread; null when the file has no waveform (video, remote, unreadable).
+        void onWaveformLoaded(Waveform waveform);
+    }
+
+    public static synchronized WaveformLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new WaveformLoader(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    private WaveformLoader(Context context) {
+        this.context = context;
+        this.peaksDir = new File(context.getCacheDir(), PEAKS_DIR);
+    }
+
+    public Waveform getCached(MediaFile mediaFile) {
+        return memoryCache.get(peakFileName(mediaFile));
+    }
+
+    // Must be called on the main thread. Streams aren't analysed: that would download them.
+    public void load(MediaFile mediaFile, Callback callback) {
+        if (!mediaFile.isAudio() || mediaFile.isRemote()) {
+            callback.onWaveformLoaded(null);
+            return;
+        }
+        String name = peakFileName(mediaFile);
+        Waveform cached = memoryCache.get(name);
+        if (cached != null) {
+            callback.onWaveformLoaded(cached);
+            return;
+        }
+        List<Callback> callbacks = pending.get(name);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<>();
+        callbacks.add(callback);
+        pending.put(name, callbacks);
+        analyzer.execute(() -> {
+            Waveform waveform = loadInBackground(mediaFile, new File(peaksDir, name));
+            mainHandler.post(() -> {
+                if (waveform != null) {
+                    memoryCache.put(name, waveform);
+                }
+                for (Callback waiting : pending.remove(name)) {
+                    waiting.onWaveformLoaded(waveform);
+                }
+            });
+        });
+    }
+
+    private Waveform loadInBackground(MediaFile mediaFile, File peakFile) {
+        if (peakFile.exists()) {
+            try {
+                return Waveform.readFrom(peakFile);
+            } catch (IOException e) {
+                Log.w(TAG, "Unreadable peak file " + peakFile + ", analysing again", e);
+            }
+        }
+        long start = System.nanoTime();
+        Waveform waveform;
+        try {
+            waveform = analyze(mediaFile);
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to analyse " + mediaFile.getPath(), e);
+            return null;
+        }
+        if (waveform == null) {
+            return null;
+        }
+        Log.d(TAG, "Analysed " + mediaFile.getId() + " (" + waveform.getDurationMs() + " ms) in "
+            + (System.nanoTime() - start) / 1_000_000 + " ms, " + waveform.getLoudness() + " LUFS");
+        try {
+            if (!peaksDir.isDirectory() && !peaksDir.mkdirs()) {
+                throw new IOException("Unable to create " + peaksDir);
+            }
+            waveform.writeTo(peakFile);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to store peak file " + peakFile, e);
+        }
+        return waveform;
+    }
+
+    private Waveform analyze(MediaFile mediaFile) throws IOException {
+        MediaExtractor extractor = new MediaExtractor();
+        MediaCodec codec = null;
+        try {
+            extractor.setDataSource(context, Uri.parse(mediaFile.getPath()), null);
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat trackFormat = extractor.getTrackFormat(i);
+                String mime = trackFormat.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = trackFormat;
+                    break;
+                }
+            }
+            if (format == null) {
+                return null;
+            }
+            long durationUs = format.containsKey(MediaFormat.KEY_DURATION)
+                ? format.getLong(MediaFormat.KEY_DURATION) : mediaFile.getDuration() * 1000;
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+            codec.configure(format, null, null, 0);
+            codec.start();
+            return decode(extractor, codec, durationUs);
+        } finally {
+            if (codec != null) {
+                codec.release();
+            }
+            extractor.release();
+        }
+    }
+
+    // The analyzer is created from the first output format, which is the decoded one.
+    private static Waveform decode(MediaExtractor extractor, MediaCodec codec, long durationUs) {
+        MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+        float[] chunk = new float[CHUNK_SAMPLES];
+        WaveformAnalyzer analyzer = null;
+        boolean floatPcm = false;
+        int channels = 0;
+        boolean inputDone = false;
+        while (true) {
+            if (!inputDone) {
+                int inputIndex = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                if (inputIndex >= 0) {
+                    int size = extractor.readSampleData(codec.getInputBuffer(inputIndex), 0);
+                    if (size < 0) {
+                        codec.queueInputBuffer(inputIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                        inputDone = true;
+                    } else {
+                        codec.queueInputBuffer(inputIndex, 0, size, extractor.getSampleTime(), 0);
+                        extractor.advance();
+                    }
+                }
+            }
+
+            int outputIndex = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+            if (outputIndex < 0) {
+                continue;
+            }
+            if (analyzer == null) {
+                MediaFormat output = codec.getOutputFormat();
+                int sampleRate = output.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+                channels = output.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+                floatPcm = output.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                    && output.getInteger(MediaFormat.KEY_PCM_ENCODING) == AudioFormat.ENCODING_PCM_FLOAT;
+                analyzer = new WaveformAnalyzer(sampleRate, channels, durationUs * sampleRate / 1_000_000);
+            }
+            ByteBuffer buffer = codec.getOutputBuffer(outputIndex);
+            if (buffer != null && info.size > 0) {
+                buffer.position(info.offset).limit(info.offset + info.size);
+                feed(analyzer, buffer.slice().order(ByteOrder.nativeOrder()), floatPcm, channels, chunk);
+            }
+            codec.releaseOutputBuffer(outputIndex, false);
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                return analyzer.finish();
+            }
+        }
+    }
+
+    // Whole frames only: chunk holds a multiple of the channel count.
+    private static void feed(WaveformAnalyzer analyzer, ByteBuffer pcm, boolean floatPcm, int channels,
+                             float[] chunk) {
+        int frameSamples = chunk.length / channels * channels;
+        if (floatPcm) {
+            FloatBuffer samples = pcm.asFloatBuffer();
+            while (samples.hasRemaining()) {
+                int count = Math.min(frameSamples, samples.remaining());
+                samples.get(chunk, 0, count);
+                analyzer.process(chunk, count);
+            }
+        } else {
+            ShortBuffer samples = pcm.asShortBuffer();
+            while (samples.hasRemaining()) {
+                int count = Math.min(frameSamples, samples.remaining());
+                for (int i = 0; i < count; i++) {
+                    chunk[i] = samples.get() / 32768f;
+                }
+                analyzer.process(chunk, count);
+            }
+        }
+    }
+
+    private static String peakFileName(MediaFile mediaFile) {
+        String key = MetadataCache.key(mediaFile.getPath(), mediaFile.getSize(), mediaFile.getLastModified());
+        return Long.toHexString(MediaLibraryStore.idKey(key)) + ".peaks";
+    }
+}
@@ -0,0 +1,171 @@
+package com.uici.lecturmultimedia;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+// Draws a Waveform as one bar per pixel column, peak behind and RMS in front, with the part
+// already played highlighted, and seeks when dragged. The bars are computed when the
+// waveform or the size changes; moving the progress only redraws once it reaches another
+// column, and onDraw doesn't allocate.
+public class WaveformView extends View {
+
+    public interface OnScrubListener {
+        void onScrubStarted();
+
+        void onScrubbed(int position);
+
+        void onScrubFinished(int position);
+    }
+
+    private final Paint playedPeakPaint = new Paint();
+    private final Paint playedRmsPaint = new Paint();
+    private final Paint peakPaint = new Paint();
+    private final Paint rmsPaint = new Paint();
+    private Waveform waveform;
+    private int duration;
+    private int progress;
+    private int progressColumn;
+    private OnScrubListener listener;
+    // x0, y0, x1, y1 per column, for drawLines.
+    private float[] peakLines = new float[0];
+    private float[] rmsLines = new float[0];
+    private int columns;
+
+    public WaveformView(Context context) {
+        this(context, null);
+    }
+
+    public WaveformView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        int played = context.getColor(R.color.accent);
+        int remaining = 0xFFFFFFFF;
+        playedPeakPaint.setColor(played);
+        playedPeakPaint.setAlpha(128);
+        playedRmsPaint.setColor(played);
+        peakPaint.setColor(remaining);
+        peakPaint.setAlpha(64);
+        rmsPaint.setColor(remaining);
+        rmsPaint.setAlpha(160);
+    }
+
+    public void setOnScrubListener(OnScrubListener listener) {
+        this.listener = listener;
+    }
+
+    public void setWaveform(Waveform waveform) {
+        this.waveform = waveform;
+        computeLines();
+        invalidate();
+    }
+
+    // Player duration in ms, which positions are measured against.
+    public void setDuration(int duration) {
+        this.duration = duration;
+        setProgress(progress);
+        invalidate();
+    }
+
+    public void setProgress(int position) {
+        progress = position;
+        int column = duration > 0 ? (int) ((long) Math.min(position, duration) * columns / duration) : 0;
+        if (column != progressColumn) {
+            progressColumn = column;
+            invalidate();
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int width, int height, int oldWidth, int oldHeight) {
+        super.onSizeChanged(width, height, oldWidth, oldHeight);
+        computeLines();
+        setProgress(progress);
+    }
+
+    private void computeLines() {
+        int width = getWidth() - getPaddingLeft() - getPaddingRight();
+        columns = waveform != null && width > 0 ? width : 0;
+        if (peakLines.length != columns * 4) {
+            peakLines = new float[columns * 4];
+            rmsLines = new float[columns * 4];
+        }
+        if (columns == 0) {
+            return;
+        }
+        float middle = getPaddingTop() + (getHeight() - getPaddingTop() - getPaddingBottom()) / 2f;
+        float halfHeight = (getHeight() - getPaddingTop() - getPaddingBottom()) / 2f;
+        int buckets = waveform.getBucketCount();
+        for (int column = 0; column < columns; column++) {
+            // The buckets under this column, at least one when there are fewer buckets than columns.
+            int from = (int) ((long) column * buckets / columns);
+            int to = Math.max(from + 1, (int) ((long) (column + 1) * buckets / columns));
+            float peak = 0;
+            float rms = 0;
+            for (int bucket = from; bucket < to && bucket < buckets; bucket++) {
+                peak = Math.max(peak, waveform.getPeak(bucket));
+                rms = Math.max(rms, waveform.getRms(bucket));
+            }
+            float x = getPaddingLeft() + column + 0.5f;
+            // A silent column still shows a one pixel line.
+            float peakExtent = Math.max(0.5f, peak * halfHeight);
+            float rmsExtent = Math.max(0.5f, rms * halfHeight);
+            setLine(peakLines, column, x, middle - peakExtent, middle + peakExtent);
+            setLine(rmsLines, column, x, middle - rmsExtent, middle + rmsExtent);
+        }
+    }
+
+    private static void setLine(float[] lines, int column, float x, float top, float bottom) {
+        int i = column * 4;
+        lines[i] = x;
+        lines[i + 1] = top;
+        lines[i + 2] = x;
+        lines[i + 3] = bottom;
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (columns == 0) {
+            return;
+        }
+        int played = Math.min(progressColumn, columns) * 4;
+        canvas.drawLines(peakLines, 0, played, playedPeakPaint);
+        canvas.drawLines(rmsLines, 0, played, playedRmsPaint);
+        canvas.drawLines(peakLines, played, columns * 4 - played, peakPaint);
+        canvas.drawLines(rmsLines, played, columns * 4 - played, rmsPaint);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (!isEnabled() || duration <= 0 || listener == null) {
+            return false;
+        }
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                getParent().requestDisallowInterceptTouchEvent(true);
+                setPressed(true);
+                listener.onScrubStarted();
+                listener.onScrubbed(positionAt(event.getX()));
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                listener.onScrubbed(positionAt(event.getX()));
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                setPressed(false);
+                listener.onScrubFinished(positionAt(event.getX()));
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private int positionAt(float x) {
+        float width = getWidth() - getPaddingLeft() - getPaddingRight();
+        float fraction = width > 0 ? Math.min(1f, Math.max(0f, (x - getPaddingLeft()) / width)) : 0f;
+        return Math.round(fraction * duration);
+    }
+}
@@ -0,0 +1,141 @@
+package com.uici.lecturmultimedia;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CachingHttpReaderTest {
+    // Two full segments and a partial last one.
+    private static final byte[] BODY = new byte[CachingHttpReader.SEGMENT_SIZE * 2 + 1234];
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private HttpServer server;
+    private final AtomicInteger requests = new AtomicInteger();
+    private SegmentCache cache;
+
+    static {
+        new Random(1).nextBytes(BODY);
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/ranged", exchange -> serve(exchange, true));
+        server.createContext("/plain", exchange -> serve(exchange, false));
+        server.start();
+        cache = new SegmentCache(folder.newFolder("segments"), 16L * 1024 * 1024);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void readsWholeResourceWithRangeRequests() throws IOException {
+        try (CachingHttpReader reader = new CachingHttpReader(url("/ranged"), cache)) {
+            assertEquals(BODY.length, reader.getSize());
+            assertArrayEquals(BODY, readAll(reader));
+        }
+    }
+
+    @Test
+    public void readsWholeResourceWithoutRangeSupport() throws IOException {
+        try (CachingHttpReader reader = new CachingHttpReader(url("/plain"), cache)) {
+            assertEquals(BODY.length, reader.getSize());
+            assertArrayEquals(BODY, readAll(reader));
+        }
+    }
+
+    @Test
+    public void secondReaderIsServedFromCache() throws IOException {
+        try (CachingHttpReader reader = new CachingHttpReader(url("/ranged"), cache)) {
+            readAll(reader);
+        }
+        int fetched = requests.get();
+
+        try (CachingHttpReader reader = new CachingHttpReader(url("/ranged"), cache)) {
+            assertEquals(BODY.length, reader.getSize());
+            assertArrayEquals(BODY, readAll(reader));
+            assertEquals(0, reader.getNetworkFetchCount());
+        }
+        assertEquals(fetched, requests.get());
+    }
+
+    @Test
+    public void seekReadsFromTheMiddle() throws IOException {
+        try (CachingHttpReader reader = new CachingHttpReader(url("/ranged"), cache)) {
+            long position = CachingHttpReader.SEGMENT_SIZE + 100;
+            byte[] buffer = new byte[64];
+            assertEquals(64, reader.readAt(position, buffer, 0, 64));
+            for (int i = 0; i < 64; i++) {
+                assertEquals(BODY[(int) position + i], buffer[i]);
+            }
+            assertEquals(-1, reader.readAt(BODY.length, buffer, 0, 64));
+        }
+    }
+
+    @Test
+    public void parsesTotalLength() {
+        assertEquals(1234567, CachingHttpReader.parseTotalLength("bytes 0-262143/1234567"));
+        assertEquals(-1, CachingHttpReader.parseTotalLength("bytes 0-262143/*"));
+        assertEquals(-1, CachingHttpReader.parseTotalLength(null));
+    }
+
+    private static byte[] readAll(CachingHttpReader reader) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[10_000];
+        long position = 0;
+        int read;
+        while ((read = reader.readAt(position, buffer, 0, buffer.length)) != -1) {
+            out.write(buffer, 0, read);
+            position += read;
+        }
+        return out.toByteArray();
+    }
+
+    private String url(String path) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+    }
+
+    private void serve(HttpExchange exchange, boolean ranges) throws IOException {
+        requests.incrementAndGet();
+        String range = exchange.getRequestHeaders().getFirst("Range");
+        int from = 0;
+        int to = BODY.length - 1;
+        int code = 200;
+        if (ranges && range != null && range.startsWith("bytes=")) {
+            String[] bounds = range.substring("bytes=".length()).split("-");
+            from = Integer.parseInt(bounds[0]);
+            to = Math.min(to, Integer.parseInt(bounds[1]));
+            if (from >= BODY.length) {
+                exchange.sendResponseHeaders(416, -1);
+                exchange.close();
+                return;
+            }
+            code = 206;
+            exchange.getResponseHeaders().set("Content-Range",
+                "bytes " + from + "-" + to + "/" + BODY.length);
+        }
+        exchange.sendResponseHeaders(code, to - from + 1);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(BODY, from, to - from + 1);
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.uici.lecturmultimedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.lang.management.ManagementFactory;
+import org.junit.Test;
+
+public class ClockTextTest {
+    @Test
+    public void writesMinutesAndSeconds() {
+        ClockText clock = new ClockText();
+        assertTrue(clock.update(65_400));
+        assertEquals("01:05", text(clock));
+    }
+
+    @Test
+    public void writesHoursPastAnHour() {
+        ClockText clock = new ClockText();
+        assertTrue(clock.update(3_723_000));
+        assertEquals("01:02:03", text(clock));
+    }
+
+    @Test
+    public void changesOnlyWithTheDisplayedSecond() {
+        ClockText clock = new ClockText();
+        assertTrue(clock.update(0));
+        assertFalse(clock.update(16));
+        assertFalse(clock.update(999));
+        assertTrue(clock.update(1_000));
+        assertEquals("00:01", text(clock));
+        // Seeking back is a change too.
+        assertTrue(clock.update(500));
+        assertEquals("00:00", text(clock));
+    }
+
+    @Test
+    public void matchesFormatDuration() {
+        ClockText clock = new ClockText();
+        for (long milliseconds = 0; milliseconds < 100 * 3_600_000L; milliseconds += 7_919_993) {
+            clock.update(milliseconds);
+            assertEquals(MediaFormatter.formatDuration(milliseconds), text(clock));
+        }
+    }
+
+    // What ProgressTicker does on every frame: ~16 ms of playback, crossing into hours.
+    @Test
+    public void tickingAllocatesNothing() {
+        com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+        long thread = Thread.currentThread().getId();
+        ClockText clock = new ClockText();
+        int changes = tick(clock, 0, 20_000);
+
+        long before = threads.getThreadAllocatedBytes(thread);
+        changes += tick(clock, 3_550_000, 10_000);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(changes > 0);
+        assertEquals(0, allocated);
+    }
+
+    private static int tick(ClockText clock, long from, int frames) {
+        int changes = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            if (clock.update(from + frame * 16L)) {
+                changes++;
+            }
+        }
+        return changes;
+    }
+
+    private static String text(ClockText clock) {
+        return new String(clock.getChars(), 0, clock.length());
+    }
+}
@@ -0,0 +1,110 @@
+package com.uici.lecturmultimedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.app.Application;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+// A change of one entry rebinds one row: the others keep their views.
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+public class MediaFileAdapterTest {
+    // Two pages, more rows than the screen holds, all loaded by preload(0).
+    private static final int SIZE = 2 * MediaFilePager.PAGE_SIZE;
+    private static final int WIDTH = 1080;
+    private static final int HEIGHT = 1920;
+
+    private final List<Integer> bound = new ArrayList<>();
+    private RecyclerView recyclerView;
+    private MediaFileAdapter adapter;
+
+    @Before
+    public void setUp() {
+        ContextThemeWrapper context = new ContextThemeWrapper(RuntimeEnvironment.getApplication(),
+            R.style.Theme_LecteurMultimedia);
+        adapter = new MediaFileAdapter(null, ThumbnailLoader.getInstance(context)) {
+            @Override
+            public void onBindViewHolder(@NonNull MediaFileViewHolder holder, int position) {
+                bound.add(position);
+                super.onBindViewHolder(holder, position);
+            }
+        };
+        recyclerView = new RecyclerView(context);
+        recyclerView.setLayoutManager(new LinearLayoutManager(context));
+        // Without animations, so a bind is only for a row whose content changed.
+        recyclerView.setItemAnimator(null);
+        recyclerView.setAdapter(adapter);
+        adapter.submitPager(pager(library(SIZE)), () -> { });
+        layout();
+        assertTrue(recyclerView.getChildCount() < SIZE - 1);
+        bound.clear();
+    }
+
+    @Test
+    public void insertingARowBindsOnlyThatRow() {
+        List<MediaFile> library = library(SIZE);
+        library.add(2, mediaFile(SIZE, "new"));
+
+        submit(library);
+
+        assertEquals(Collections.singletonList(2), bound);
+    }
+
+    @Test
+    public void deletingARowBindsOnlyTheRowMovingOnScreen() {
+        List<MediaFile> library = library(SIZE);
+        library.remove(2);
+
+        submit(library);
+
+        assertEquals(Collections.singletonList(recyclerView.getChildCount() - 1), bound);
+    }
+
+    private void submit(List<MediaFile> library) {
+        boolean[] committed = {false};
+        adapter.submitPager(pager(library), () -> committed[0] = true);
+        assertTrue(committed[0]);
+        layout();
+    }
+
+    private void layout() {
+        recyclerView.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+            View.MeasureSpec.makeMeasureSpec(HEIGHT, View.MeasureSpec.EXACTLY));
+        recyclerView.layout(0, 0, WIDTH, HEIGHT);
+    }
+
+    // Read and diffed on the calling thread, as the PagerDiff tests do.
+    private static MediaFilePager pager(List<MediaFile> mediaFiles) {
+        MediaFilePager pager = new MediaFilePager((start, count) ->
+            new ArrayList<>(mediaFiles.subList(start, Math.min(start + count, mediaFiles.size()))),
+            mediaFiles.size(), Runnable::run, Runnable::run);
+        pager.preload(0);
+        return pager;
+    }
+
+    private static List<MediaFile> library(int size) {
+        List<MediaFile> mediaFiles = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            mediaFiles.add(mediaFile(i, "name " + i));
+        }
+        return mediaFiles;
+    }
+
+    private static MediaFile mediaFile(int i, String name) {
+        return new MediaFile("id-" + i, name, "content://media/" + i, MediaType.AUDIO, 1000, 10);
+    }
+}
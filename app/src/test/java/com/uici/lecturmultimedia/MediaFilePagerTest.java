@@ -0,0 +1,200 @@
+package com.uici.lecturmultimedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MediaFilePagerTest {
+    private static final int SIZE = 1000;
+    // Far below the 100k entries of the large library read whole.
+    private static final long HEAP_BUDGET_BYTES = 8L << 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<Integer> loadedStarts = new ArrayList<>();
+    private final List<Runnable> background = new ArrayList<>();
+    private final List<int[]> notified = new ArrayList<>();
+    private MediaFilePager pager;
+
+    @Before
+    public void setUp() {
+        pager = new MediaFilePager((start, count) -> {
+            loadedStarts.add(start);
+            List<MediaFile> page = new ArrayList<>();
+            for (int i = start; i < Math.min(start + count, SIZE); i++) {
+                page.add(new MediaFile("id-" + i, "name " + i, "content://media/" + i, MediaType.AUDIO, 0, 0));
+            }
+            return page;
+        }, SIZE, background::add, Runnable::run);
+        pager.setListener((start, count) -> notified.add(new int[] {start, count}));
+    }
+
+    @Test
+    public void rowIsPlaceholderUntilItsPageArrives() {
+        assertNull(pager.get(120));
+        runBackground();
+
+        assertEquals("id-120", pager.get(120).getId());
+        assertTrue(loadedStarts.contains(100));
+        assertEquals(100, notified.get(0)[0]);
+        assertEquals(MediaFilePager.PAGE_SIZE, notified.get(0)[1]);
+    }
+
+    @Test
+    public void bindingNearAPageEdgeLoadsTheNeighbour() {
+        pager.get(110);
+        runBackground();
+        assertTrue(loadedStarts.contains(50));
+
+        pager.get(140);
+        runBackground();
+        assertTrue(loadedStarts.contains(150));
+    }
+
+    @Test
+    public void pageIsRequestedOnceWhileLoading() {
+        pager.get(120);
+        pager.get(121);
+        pager.get(122);
+
+        // The page and the one before it.
+        assertEquals(2, background.size());
+    }
+
+    @Test
+    public void onlyTheMostRecentlyUsedPagesAreKept() {
+        for (int page = 0; page < 10; page++) {
+            pager.get(page * MediaFilePager.PAGE_SIZE + 30);
+            runBackground();
+        }
+        int kept = 0;
+        for (int page = 0; page < SIZE / MediaFilePager.PAGE_SIZE; page++) {
+            if (pager.peek(page * MediaFilePager.PAGE_SIZE) != null) {
+                kept++;
+            }
+        }
+
+        assertEquals(5, kept);
+        assertNotNull(pager.peek(9 * MediaFilePager.PAGE_SIZE));
+        assertNull(pager.peek(0));
+    }
+
+    @Test
+    public void evictedPageIsLoadedAgain() {
+        for (int page = 0; page < 10; page++) {
+            pager.get(page * MediaFilePager.PAGE_SIZE + 30);
+            runBackground();
+        }
+        loadedStarts.clear();
+
+        assertNull(pager.get(10));
+        runBackground();
+        assertEquals("id-10", pager.get(10).getId());
+        assertTrue(loadedStarts.contains(0));
+    }
+
+    @Test
+    public void preloadFillsThePagesAroundThePosition() {
+        pager.preload(520);
+
+        assertEquals(520, pager.getLastPosition());
+        assertNotNull(pager.peek(450));
+        assertNotNull(pager.peek(599));
+        assertNull(pager.peek(600));
+        assertTrue(background.isEmpty());
+    }
+
+    @Test
+    public void failedPageIsAskedAgain() {
+        boolean[] fail = {true};
+        List<Runnable> queued = new ArrayList<>();
+        MediaFilePager failing = new MediaFilePager((start, count) -> {
+            if (fail[0]) {
+                throw new IllegalStateException("read failed");
+            }
+            List<MediaFile> page = new ArrayList<>();
+            page.add(new MediaFile("id-" + start, "name", "content://media/" + start, MediaType.AUDIO, 0, 0));
+            return page;
+        }, 10, queued::add, Runnable::run);
+
+        assertNull(failing.get(0));
+        runAll(queued);
+        fail[0] = false;
+        assertNull(failing.get(0));
+        runAll(queued);
+        assertEquals("id-0", failing.get(0).getId());
+    }
+
+    @Test
+    public void scrollingALargeLibraryKeepsAFixedNumberOfRows() throws IOException {
+        int size = 100_000;
+        List<MediaFile> library = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            library.add(new MediaFile("id-" + i, "name " + i, "content://media/" + i, MediaType.AUDIO, 1000, 10));
+        }
+        MediaLibraryStore store = new MediaLibraryStore(new File(folder.getRoot(), "library.log"));
+        try {
+            store.putAll(library);
+            library = null;
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+            long baseline = usedHeap(memory);
+
+            List<Runnable> queued = new ArrayList<>();
+            MediaFilePager large = new MediaFilePager((start, count) -> {
+                try {
+                    return store.getRange(start, count);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, size, queued::add, Runnable::run);
+            for (int position = 0; position < size; position += MediaFilePager.PAGE_SIZE / 2) {
+                large.get(position);
+                runAll(queued);
+            }
+
+            int resident = 0;
+            for (int position = 0; position < size; position++) {
+                if (large.peek(position) != null) {
+                    resident++;
+                }
+            }
+            assertTrue(resident <= MediaFilePager.MAX_PAGES * MediaFilePager.PAGE_SIZE);
+            long used = usedHeap(memory) - baseline;
+            assertTrue("held " + used + " bytes", used < HEAP_BUDGET_BYTES);
+            assertEquals("id-" + (size - 1), large.peek(size - 1).getId());
+        } finally {
+            store.close();
+        }
+    }
+
+    private static long usedHeap(MemoryMXBean memory) {
+        for (int i = 0; i < 3; i++) {
+            memory.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    private void runBackground() {
+        runAll(background);
+    }
+
+    private static void runAll(List<Runnable> tasks) {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+}
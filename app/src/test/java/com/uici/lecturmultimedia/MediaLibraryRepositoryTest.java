@@ -0,0 +1,125 @@
+package com.uici.lecturmultimedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.app.Application;
+import android.os.Looper;
+import java.io.File;
+import java.security.Permission;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.LooperMode;
+
+// The library log, the metadata cache and the legacy preferences are only ever opened off the
+// main thread. StrictMode isn't enforced on the JVM, so file accesses are watched through a
+// SecurityManager instead.
+@RunWith(RobolectricTestRunner.class)
+@Config(application = Application.class)
+@LooperMode(LooperMode.Mode.PAUSED)
+public class MediaLibraryRepositoryTest {
+    private static final long TIMEOUT_MS = 10_000;
+
+    private final List<String> mainThreadAccesses = new CopyOnWriteArrayList<>();
+    private final AtomicInteger backgroundAccesses = new AtomicInteger();
+    private SecurityManager previous;
+
+    @Before
+    public void setUp() {
+        Thread mainThread = Looper.getMainLooper().getThread();
+        previous = System.getSecurityManager();
+        System.setSecurityManager(new SecurityManager() {
+            @Override
+            public void checkPermission(Permission permission) {
+            }
+
+            @Override
+            public void checkPermission(Permission permission, Object context) {
+            }
+
+            @Override
+            public void checkRead(String file) {
+                record(file);
+            }
+
+            @Override
+            public void checkWrite(String file) {
+                record(file);
+            }
+
+            @Override
+            public void checkDelete(String file) {
+                record(file);
+            }
+
+            private void record(String path) {
+                String name = path.substring(path.lastIndexOf(File.separatorChar) + 1);
+                if (!name.startsWith("media_library") && !name.startsWith("media_metadata")
+                        && !name.startsWith("MediaFilesPrefs")) {
+                    return;
+                }
+                if (Thread.currentThread() == mainThread) {
+                    mainThreadAccesses.add(path);
+                } else {
+                    backgroundAccesses.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        System.setSecurityManager(previous);
+    }
+
+    @Test
+    public void libraryIsNeverReadOrWrittenOnTheMainThread() {
+        MediaLibraryRepository repository =
+            MediaLibraryRepository.getInstance(RuntimeEnvironment.getApplication());
+        List<MediaFilePager> published = new ArrayList<>();
+        repository.getLibrary().observeForever(published::add);
+        awaitMain(() -> !published.isEmpty());
+
+        List<Boolean> results = new ArrayList<>();
+        repository.addMediaFile(mediaFile(1), results::add);
+        repository.addMediaFiles(Collections.singletonList(mediaFile(2)), results::add);
+        repository.deleteMediaFile("id-1", results::add);
+        repository.deleteMediaFiles(Collections.singletonList("id-2"), results::add);
+        awaitMain(() -> results.size() == 4);
+
+        assertEquals(Collections.emptyList(), mainThreadAccesses);
+        assertEquals(Collections.nCopies(4, true), results);
+        // The watch itself works: the io thread did open the log.
+        assertTrue(backgroundAccesses.get() > 0);
+    }
+
+    private static MediaFile mediaFile(int i) {
+        return new MediaFile("id-" + i, "name " + i, "content://media/" + i, MediaType.AUDIO, 1000, 10);
+    }
+
+    // Runs what the background threads posted to the main looper until done is true.
+    private static void awaitMain(BooleanSupplier done) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!done.getAsBoolean()) {
+            assertTrue("timed out", System.currentTimeMillis() < deadline);
+            shadowOf(Looper.getMainLooper()).idle();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,199 @@
+package com.uici.lecturmultimedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MediaLibraryStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+    private MediaLibraryStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        file = new File(folder.getRoot(), "library.log");
+        store = new MediaLibraryStore(file);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+    }
+
+    @Test
+    public void entriesSurviveReopen() throws IOException {
+        store.putAll(library(100));
+        store.put(mediaFile(7, "renamed"));
+        assertTrue(store.delete("id-50"));
+        reopen();
+
+        assertEquals(99, store.size());
+        assertEquals("renamed", store.get("id-7").getName());
+        assertNull(store.get("id-50"));
+        assertEquals("id-51", store.getRange(50, 1).get(0).getId());
+    }
+
+    @Test
+    public void keepsInsertionOrderAcrossUpdates() throws IOException {
+        store.putAll(library(5));
+        store.put(mediaFile(0, "first again"));
+
+        List<MediaFile> all = store.getAll();
+        assertEquals("id-0", all.get(0).getId());
+        assertEquals("first again", all.get(0).getName());
+        assertEquals("id-4", all.get(4).getId());
+    }
+
+    @Test
+    public void updateAllSkipsDeletedEntries() throws IOException {
+        store.putAll(library(3));
+        store.delete("id-1");
+        List<MediaFile> updates = new ArrayList<>();
+        updates.add(mediaFile(0, "updated"));
+        updates.add(mediaFile(1, "deleted meanwhile"));
+
+        assertEquals(1, store.updateAll(updates));
+        assertEquals(2, store.size());
+        assertEquals("updated", store.get("id-0").getName());
+        assertFalse(store.contains("id-1"));
+    }
+
+    @Test
+    public void positionOfCountsLiveEntriesBefore() throws IOException {
+        store.putAll(library(100));
+        store.delete("id-10");
+        store.delete("id-20");
+
+        assertEquals(0, store.positionOf("id-0"));
+        assertEquals(9, store.positionOf("id-9"));
+        assertEquals(10, store.positionOf("id-11"));
+        assertEquals(97, store.positionOf("id-99"));
+        assertEquals(-1, store.positionOf("id-10"));
+        assertEquals("id-57", store.getRange(store.positionOf("id-57"), 1).get(0).getId());
+    }
+
+    @Test
+    public void getAllByIdKeepsRemovedEntriesAsNull() throws IOException {
+        store.putAll(library(10));
+        store.delete("id-4");
+        String[] ids = {"id-9", "id-4", "id-0", "id-2"};
+
+        List<MediaFile> page = store.getAll(ids, 1, 3);
+        assertEquals(3, page.size());
+        assertNull(page.get(0));
+        assertEquals("id-0", page.get(1).getId());
+        assertEquals("id-2", page.get(2).getId());
+    }
+
+    @Test
+    public void reopenDropsTornTail() throws IOException {
+        store.putAll(library(10));
+        store.close();
+        long complete = file.length();
+        store = new MediaLibraryStore(file);
+        store.put(mediaFile(10, "last"));
+        store.close();
+        // A crash in the middle of the last append.
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(complete + 5);
+        }
+        store = new MediaLibraryStore(file);
+
+        assertEquals(10, store.size());
+        assertNull(store.get("id-10"));
+        assertNull(store.getQuarantinedFile());
+        assertEquals(complete, file.length());
+
+        // The log takes appends again where the complete records end.
+        store.put(mediaFile(11, "after"));
+        reopen();
+        assertEquals("after", store.get("id-11").getName());
+    }
+
+    @Test
+    public void reopenQuarantinesCorruptRecord() throws IOException {
+        store.putAll(library(10));
+        store.close();
+        long length = file.length();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(length / 2);
+            int b = raf.read();
+            raf.seek(length / 2);
+            raf.write(b ^ 0xFF);
+        }
+        store = new MediaLibraryStore(file);
+
+        assertTrue(store.size() < 10);
+        File quarantined = store.getQuarantinedFile();
+        assertNotNull(quarantined);
+        assertEquals(length, quarantined.length());
+    }
+
+    @Test
+    public void compactionKeepsLiveEntries() throws IOException {
+        store.putAll(library(2000));
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 2000; i += 2) {
+                store.put(mediaFile(i, "round " + round));
+            }
+        }
+        for (int i = 1; i < 2000; i += 4) {
+            store.delete("id-" + i);
+        }
+        store.sync();
+        long before = file.length();
+        store.compact();
+        assertTrue(file.length() < before);
+        reopen();
+
+        assertEquals(1500, store.size());
+        assertEquals("round 2", store.get("id-0").getName());
+        assertFalse(store.contains("id-1"));
+        assertEquals("name 3", store.get("id-3").getName());
+        assertEquals("id-2", store.getRange(1, 1).get(0).getId());
+    }
+
+    @Test
+    public void replaceAllKeepsLastValueOfRepeatedId() throws IOException {
+        List<MediaFile> mediaFiles = library(3);
+        mediaFiles.add(mediaFile(0, "again"));
+        store.replaceAll(mediaFiles);
+        reopen();
+
+        assertEquals(3, store.size());
+        assertEquals("again", store.getRange(0, 1).get(0).getName());
+    }
+
+    private void reopen() throws IOException {
+        store.close();
+        store = new MediaLibraryStore(file);
+    }
+
+    private static List<MediaFile> library(int size) {
+        List<MediaFile> mediaFiles = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            mediaFiles.add(mediaFile(i, "name " + i));
+        }
+        return mediaFiles;
+    }
+
+    private static MediaFile mediaFile(int i, String name) {
+        return new MediaFile("id-" + i, name, "content://media/" + i,
+            i % 2 == 0 ? MediaType.AUDIO : MediaType.VIDEO, i * 1000L, i * 10L);
+    }
+}
@@ -0,0 +1,113 @@
+package com.uici.lecturmultimedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MetadataCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File file;
+
+    @Before
+    public void setUp() {
+        file = new File(folder.getRoot(), "metadata.cache");
+    }
+
+    @Test
+    public void entriesSurviveReload() throws IOException {
+        new MetadataCache(file).put("a", metadata(1000));
+
+        MediaMetadata metadata = new MetadataCache(file).get("a");
+        assertNotNull(metadata);
+        assertEquals(1000, metadata.getDuration());
+        assertEquals("aac", metadata.getCodec());
+    }
+
+    @Test
+    public void cleanLogIsNotRewrittenOnLoad() throws IOException {
+        MetadataCache cache = new MetadataCache(file);
+        cache.put("a", metadata(1));
+        cache.put("b", metadata(2));
+        long length = file.length();
+
+        cache = new MetadataCache(file);
+        cache.get("a");
+        cache.put("c", metadata(3));
+        // Appended to, not rewritten with the loaded entries first.
+        assertEquals(3, recordsIn(length, file.length()));
+    }
+
+    @Test
+    public void tornEntryIsDropped() throws IOException {
+        MetadataCache cache = new MetadataCache(file);
+        cache.put("a", metadata(1));
+        cache.put("b", metadata(2));
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        cache = new MetadataCache(file);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        cache.put("c", metadata(3));
+        assertNotNull(new MetadataCache(file).get("c"));
+    }
+
+    @Test
+    public void corruptLogStartsOverEmpty() throws IOException {
+        MetadataCache cache = new MetadataCache(file);
+        cache.put("a", metadata(1));
+        cache.put("b", metadata(2));
+        // A malformed UTF-8 byte in the first key.
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(2 * Integer.BYTES + 2);
+            raf.write(0xFF);
+        }
+
+        cache = new MetadataCache(file);
+        assertNull(cache.get("b"));
+        cache.put("c", metadata(3));
+        cache = new MetadataCache(file);
+        assertNotNull(cache.get("c"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void keepsMostRecentlyUsedEntries() throws IOException {
+        MetadataCache cache = new MetadataCache(file);
+        for (int i = 0; i < MetadataCache.MAX_ENTRIES + 10; i++) {
+            cache.put("key " + i, metadata(i));
+            if (i % 100 == 0) {
+                cache.get("key 0");
+            }
+        }
+        assertNotNull(cache.get("key 0"));
+        assertNull(cache.get("key 1"));
+
+        // Reads don't touch the log, a reload keeps the entries written last.
+        cache = new MetadataCache(file);
+        assertNull(cache.get("key 9"));
+        assertNotNull(cache.get("key 10"));
+        assertNotNull(cache.get("key " + (MetadataCache.MAX_ENTRIES + 9)));
+    }
+
+    // Entries of these tests all encode to the same size.
+    private static int recordsIn(long twoRecordsLength, long length) {
+        long header = 8;
+        return (int) ((length - header) / ((twoRecordsLength - header) / 2));
+    }
+
+    private static MediaMetadata metadata(long duration) {
+        return new MediaMetadata(duration, 128_000, "aac", 0, 0, 44_100);
+    }
+}
@@ -0,0 +1,185 @@
+package com.uici.lecturmultimedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+public class PagerDiffTest {
+
+    @Test
+    public void deletingARowOnScreenRemovesOnlyThatRow() {
+        List<MediaFile> before = library(0, 1000);
+        List<MediaFile> after = new ArrayList<>(before);
+        after.remove(520);
+
+        Recorder recorder = dispatch(before, after, 510);
+        recorder.assertMatches(after);
+
+        assertEquals(1, recorder.removed);
+        assertEquals(0, recorder.inserted);
+        recorder.assertUnchanged(450, 598);
+    }
+
+    @Test
+    public void addingARowOnScreenInsertsIt() {
+        List<MediaFile> before = library(0, 300);
+        List<MediaFile> after = new ArrayList<>(before);
+        after.add(10, mediaFile(5000, "new"));
+
+        Recorder recorder = dispatch(before, after, 0);
+        recorder.assertMatches(after);
+
+        assertEquals(1, recorder.inserted);
+        assertEquals(0, recorder.removed);
+        recorder.assertUnchanged(0, 9);
+        recorder.assertUnchanged(11, 99);
+    }
+
+    @Test
+    public void renamedRowIsRebound() {
+        List<MediaFile> before = library(0, 100);
+        List<MediaFile> after = new ArrayList<>(before);
+        after.set(3, mediaFile(3, "renamed"));
+
+        Recorder recorder = dispatch(before, after, 0);
+        recorder.assertMatches(after);
+
+        assertTrue(recorder.changed[3]);
+        recorder.assertUnchanged(0, 2);
+        recorder.assertUnchanged(4, 99);
+    }
+
+    @Test
+    public void rowsAddedPastTheWindowGoAtTheEnd() {
+        List<MediaFile> before = library(0, 400);
+        List<MediaFile> after = library(0, 700);
+
+        Recorder recorder = dispatch(before, after, 0);
+        recorder.assertMatches(after);
+
+        assertEquals(300, recorder.inserted);
+        recorder.assertUnchanged(0, 99);
+    }
+
+    @Test
+    public void libraryShrinkingBelowTheWindowKeepsCountsRight() {
+        List<MediaFile> before = library(0, 1000);
+        List<MediaFile> after = library(0, 20);
+
+        Recorder recorder = dispatch(before, after, 800);
+        recorder.assertMatches(after);
+    }
+
+    @Test
+    public void deletingARowPastTheWindowMovesTheTail() {
+        List<MediaFile> before = library(0, 1000);
+        List<MediaFile> after = new ArrayList<>(before);
+        after.remove(900);
+
+        Recorder recorder = dispatch(before, after, 0);
+        recorder.assertMatches(after);
+
+        assertEquals(1, recorder.removed);
+        recorder.assertUnchanged(0, 99);
+    }
+
+    private static Recorder dispatch(List<MediaFile> before, List<MediaFile> after, int position) {
+        MediaFilePager oldPager = pager(before);
+        oldPager.preload(position);
+        MediaFilePager newPager = pager(after);
+        newPager.preload(oldPager.getLastPosition());
+        Recorder recorder = new Recorder(oldPager);
+        PagerDiff.dispatch(oldPager, newPager, recorder);
+        return recorder;
+    }
+
+    private static MediaFilePager pager(List<MediaFile> mediaFiles) {
+        return new MediaFilePager((start, count) ->
+            new ArrayList<>(mediaFiles.subList(start, Math.min(start + count, mediaFiles.size()))),
+            mediaFiles.size(), Runnable::run, Runnable::run);
+    }
+
+    private static List<MediaFile> library(int from, int to) {
+        List<MediaFile> mediaFiles = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            mediaFiles.add(mediaFile(i, "name " + i));
+        }
+        return mediaFiles;
+    }
+
+    private static MediaFile mediaFile(int i, String name) {
+        return new MediaFile("id-" + i, name, "content://media/" + i, MediaType.AUDIO, 1000, 10);
+    }
+
+    // Replays the updates on the rows the list shows, as RecyclerView would.
+    private static final class Recorder implements ListUpdateCallback {
+        final List<MediaFile> rows = new ArrayList<>();
+        final List<Boolean> rebound = new ArrayList<>();
+        boolean[] changed;
+        int inserted;
+        int removed;
+
+        Recorder(MediaFilePager oldPager) {
+            for (int i = 0; i < oldPager.size(); i++) {
+                rows.add(oldPager.peek(i));
+                rebound.add(false);
+            }
+        }
+
+        @Override
+        public void onInserted(int position, int count) {
+            inserted += count;
+            for (int i = 0; i < count; i++) {
+                rows.add(position, null);
+                rebound.add(position, true);
+            }
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            removed += count;
+            for (int i = 0; i < count; i++) {
+                rows.remove(position);
+                rebound.remove(position);
+            }
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            rows.add(toPosition, rows.remove(fromPosition));
+            rebound.add(toPosition, rebound.remove(fromPosition));
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            for (int i = position; i < position + count; i++) {
+                rebound.set(i, true);
+            }
+        }
+
+        // Every row not rebound still shows the entry the new version has there. Called first,
+        // it records which rows were.
+        void assertMatches(List<MediaFile> expected) {
+            assertEquals(expected.size(), rows.size());
+            changed = new boolean[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                changed[i] = rebound.get(i);
+                if (!changed[i]) {
+                    assertEquals(expected.get(i).getId(), rows.get(i).getId());
+                    assertEquals(expected.get(i).getName(), rows.get(i).getName());
+                }
+            }
+        }
+
+        void assertUnchanged(int first, int last) {
+            for (int i = first; i <= last; i++) {
+                assertFalse("row " + i, changed[i]);
+            }
+        }
+    }
+}
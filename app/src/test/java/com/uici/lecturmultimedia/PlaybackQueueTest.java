@@ -0,0 +1,169 @@
+package com.uici.lecturmultimedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Consumer;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PlaybackQueueTest {
+    private final List<MediaFile> library = new ArrayList<>();
+    private final List<String> opened = new ArrayList<>();
+    private MediaFile next;
+    private PlaybackQueue queue;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 5; i++) {
+            library.add(new MediaFile("id-" + i, "name " + i, "content://media/" + i,
+                MediaType.AUDIO, 1000, 10));
+        }
+        queue = new PlaybackQueue(new PlaybackQueue.Player() {
+            @Override
+            public void open(MediaFile mediaFile) {
+                opened.add(mediaFile.getId());
+            }
+
+            @Override
+            public void setNext(MediaFile mediaFile) {
+                next = mediaFile;
+            }
+        }, new Random(42));
+    }
+
+    @Test
+    public void playsInOrderAndStopsAtTheEnd() {
+        queue.setItems(library, 3);
+
+        assertEquals("id-3", queue.current().getId());
+        assertEquals("id-4", next.getId());
+        assertTrue(queue.onCompletion());
+        assertEquals("id-4", queue.current().getId());
+        assertNull(next);
+        assertFalse(queue.onCompletion());
+        assertEquals(Arrays.asList("id-3", "id-4"), opened);
+    }
+
+    @Test
+    public void repeatAllWrapsAround() {
+        queue.setItems(library, 4);
+        queue.setRepeatMode(PlaybackQueue.RepeatMode.ALL);
+
+        assertEquals("id-0", next.getId());
+        assertTrue(queue.skipToNext());
+        assertEquals("id-0", queue.current().getId());
+        assertTrue(queue.skipToPrevious());
+        assertEquals("id-4", queue.current().getId());
+    }
+
+    @Test
+    public void repeatOneLoopsButSkipMovesOn() {
+        queue.setItems(library, 1);
+        queue.setRepeatMode(PlaybackQueue.RepeatMode.ONE);
+
+        assertSame(queue.current(), next);
+        assertTrue(queue.onCompletion());
+        assertEquals("id-1", queue.current().getId());
+        assertTrue(queue.skipToNext());
+        assertEquals("id-2", queue.current().getId());
+    }
+
+    @Test
+    public void gaplessHandOffTakesThePreBufferedItem() {
+        queue.setItems(library, 0);
+        queue.onAdvancedToNext();
+
+        assertEquals("id-1", queue.current().getId());
+        assertEquals("id-2", next.getId());
+        // The player switched by itself, nothing was opened again.
+        assertEquals(Arrays.asList("id-0"), opened);
+    }
+
+    @Test
+    public void shuffleKeepsCurrentFirstAndVisitsEveryItemOnce() {
+        queue.setItems(library, 2);
+        queue.setShuffle(true);
+
+        assertEquals("id-2", queue.current().getId());
+        Set<String> played = new HashSet<>();
+        played.add(queue.current().getId());
+        while (queue.skipToNext()) {
+            assertTrue(played.add(queue.current().getId()));
+        }
+        assertEquals(5, played.size());
+        assertFalse(queue.hasNext());
+    }
+
+    @Test
+    public void shuffleOffResumesInOrderFromTheCurrentItem() {
+        queue.setItems(library, 0);
+        queue.setShuffle(true);
+        queue.skipToNext();
+        String current = queue.current().getId();
+        queue.setShuffle(false);
+
+        int index = Integer.parseInt(current.substring(3));
+        assertEquals(current, queue.current().getId());
+        if (index < 4) {
+            assertEquals("id-" + (index + 1), next.getId());
+        }
+    }
+
+    @Test
+    public void readAnsweringForAnOlderItemIsDropped() {
+        DeferredSource source = new DeferredSource();
+        queue.setItems(source, 0, library.get(0));
+        // The read of the next item is pending when the user skips twice.
+        queue.skipToNext();
+        queue.skipToNext();
+
+        source.answerAll();
+        assertEquals("id-2", queue.current().getId());
+        assertEquals(Arrays.asList("id-0", "id-2"), opened);
+        assertEquals("id-3", next.getId());
+    }
+
+    @Test
+    public void removedEntryIsNotPlayed() {
+        DeferredSource source = new DeferredSource();
+        queue.setItems(source, 0, library.get(0));
+        source.gone = 1;
+        queue.skipToNext();
+        source.answerAll();
+
+        assertNull(queue.current());
+        assertEquals(Arrays.asList("id-0"), opened);
+    }
+
+    // Answers reads only when told to, like the library source answering from its thread.
+    private final class DeferredSource implements PlaybackQueue.Source {
+        private final List<Runnable> pending = new ArrayList<>();
+        int gone = -1;
+
+        @Override
+        public int size() {
+            return library.size();
+        }
+
+        @Override
+        public void get(int position, Consumer<MediaFile> callback) {
+            pending.add(() -> callback.accept(position == gone ? null : library.get(position)));
+        }
+
+        void answerAll() {
+            while (!pending.isEmpty()) {
+                pending.remove(0).run();
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.uici.lecturmultimedia;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SeekControllerTest {
+    private final List<String> seeks = new ArrayList<>();
+    private SeekController controller;
+
+    @Before
+    public void setUp() {
+        controller = new SeekController((position, precise) ->
+            seeks.add(position + (precise ? " precise" : " sync")));
+    }
+
+    @Test
+    public void firstPreviewIsIssuedAtOnce() {
+        controller.preview(1000);
+        assertEquals(List.of("1000 sync"), seeks);
+    }
+
+    @Test
+    public void previewsDuringASeekOnlyKeepTheLast() {
+        controller.preview(1000);
+        controller.preview(2000);
+        controller.preview(3000);
+        controller.preview(4000);
+        assertEquals(1, seeks.size());
+
+        controller.onSeekComplete();
+        assertEquals(List.of("1000 sync", "4000 sync"), seeks);
+        controller.onSeekComplete();
+        assertEquals(2, seeks.size());
+    }
+
+    @Test
+    public void releaseReplacesPendingPreviewWithPreciseSeek() {
+        controller.preview(1000);
+        controller.preview(2000);
+        controller.seek(2500);
+        controller.onSeekComplete();
+        assertEquals(List.of("1000 sync", "2500 precise"), seeks);
+    }
+
+    @Test
+    public void resetDropsPendingSeek() {
+        controller.preview(1000);
+        controller.preview(2000);
+        controller.reset();
+        controller.onSeekComplete();
+        assertEquals(1, seeks.size());
+
+        // Nothing in flight any more, the next one goes out right away.
+        controller.seek(500);
+        assertEquals(List.of("1000 sync", "500 precise"), seeks);
+    }
+
+    @Test
+    public void lostCompletionStopsBlockingAfterTimeout() throws InterruptedException {
+        controller.preview(1000);
+        Thread.sleep(1100);
+        controller.preview(2000);
+        assertEquals(List.of("1000 sync", "2000 sync"), seeks);
+    }
+}
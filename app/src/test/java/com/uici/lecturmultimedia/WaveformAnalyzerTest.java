@@ -0,0 +1,90 @@
+package com.uici.lecturmultimedia;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class WaveformAnalyzerTest {
+    private static final int BLOCK_FRAMES = 1024;
+
+    // EBU Tech 3341: a 1 kHz sine at -23 dBFS in both channels reads -23 LUFS.
+    @Test
+    public void stereoSineAtMinus23DbfsReadsMinus23Lufs() {
+        Waveform waveform = analyze(48000, 2, 1000, -23, 20);
+
+        assertEquals(-23.0, waveform.getLoudness(), 0.1);
+        assertEquals(20_000, waveform.getDurationMs());
+    }
+
+    @Test
+    public void loudnessDoesNotDependOnTheSampleRate() {
+        Waveform waveform = analyze(44100, 2, 1000, -23, 20);
+
+        assertEquals(-23.0, waveform.getLoudness(), 0.1);
+    }
+
+    // One channel at full scale: -3.01 dB of RMS, K-weighting at 1 kHz cancels the -0.691.
+    @Test
+    public void monoFullScaleSineReadsMinus3Lufs() {
+        Waveform waveform = analyze(48000, 1, 1000, 0, 10);
+
+        assertEquals(-3.01, waveform.getLoudness(), 0.1);
+    }
+
+    @Test
+    public void envelopeFollowsTheAmplitude() {
+        Waveform waveform = analyze(48000, 1, 1000, -6, 10);
+        float amplitude = (float) Math.pow(10, -6 / 20.0);
+
+        assertTrue(waveform.getBucketCount() <= WaveformAnalyzer.MAX_BUCKETS);
+        for (int i = 0; i < waveform.getBucketCount(); i++) {
+            assertEquals(amplitude, waveform.getPeak(i), 2 / 255f);
+            assertEquals(amplitude / Math.sqrt(2), waveform.getRms(i), 2 / 255f);
+        }
+    }
+
+    @Test
+    public void unknownLengthStillFitsTheBuckets() {
+        WaveformAnalyzer analyzer = new WaveformAnalyzer(48000, 1, 0);
+        feedSine(analyzer, 48000, 1, 1000, -6, 30);
+        Waveform waveform = analyzer.finish();
+
+        assertTrue(waveform.getBucketCount() <= WaveformAnalyzer.MAX_BUCKETS);
+        assertTrue(waveform.getBucketCount() >= WaveformAnalyzer.MAX_BUCKETS / 2);
+    }
+
+    @Test
+    public void silenceHasNoLoudness() {
+        WaveformAnalyzer analyzer = new WaveformAnalyzer(48000, 2, 48000);
+        float[] block = new float[BLOCK_FRAMES * 2];
+        for (int i = 0; i < 48; i++) {
+            analyzer.process(block, block.length);
+        }
+
+        assertTrue(Float.isNaN(analyzer.finish().getLoudness()));
+    }
+
+    private static Waveform analyze(int sampleRate, int channels, double frequency, double dbfs, int seconds) {
+        WaveformAnalyzer analyzer = new WaveformAnalyzer(sampleRate, channels, (long) sampleRate * seconds);
+        feedSine(analyzer, sampleRate, channels, frequency, dbfs, seconds);
+        return analyzer.finish();
+    }
+
+    private static void feedSine(WaveformAnalyzer analyzer, int sampleRate, int channels, double frequency,
+                                 double dbfs, int seconds) {
+        double amplitude = Math.pow(10, dbfs / 20);
+        long total = (long) sampleRate * seconds;
+        float[] block = new float[BLOCK_FRAMES * channels];
+        for (long frame = 0; frame < total; ) {
+            int count = (int) Math.min(BLOCK_FRAMES, total - frame);
+            for (int i = 0; i < count; i++, frame++) {
+                float sample = (float) (amplitude * Math.sin(2 * Math.PI * frequency * frame / sampleRate));
+                for (int c = 0; c < channels; c++) {
+                    block[i * channels + c] = sample;
+                }
+            }
+            analyzer.process(block, count * channels);
+        }
+    }
+}
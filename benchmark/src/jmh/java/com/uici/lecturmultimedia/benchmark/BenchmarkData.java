@@ -0,0 +1,56 @@
+package com.uici.lecturmultimedia.benchmark;
+
+import com.uici.lecturmultimedia.MediaFile;
+import com.uici.lecturmultimedia.MediaMetadata;
+import com.uici.lecturmultimedia.MediaType;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+final class BenchmarkData {
+    private static final String[] WORDS = {
+        "live", "session", "remix", "intro", "track", "episode", "concert", "demo",
+        "podcast", "vacances", "mariage", "anniversaire", "cours", "chapitre", "interview"
+    };
+
+    private BenchmarkData() {
+    }
+
+    static List<MediaFile> library(int size) {
+        Random random = new Random(42);
+        List<MediaFile> mediaFiles = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            mediaFiles.add(mediaFile(random, i));
+        }
+        return mediaFiles;
+    }
+
+    // Like library(size), with every other entry probed as MediaMetadataExtractor would.
+    static List<MediaFile> probedLibrary(int size) {
+        List<MediaFile> mediaFiles = library(size);
+        for (int i = 0; i < size; i += 2) {
+            MediaFile mediaFile = mediaFiles.get(i);
+            MediaMetadata metadata = mediaFile.isVideo()
+                ? new MediaMetadata(mediaFile.getDuration(), 2_500_000, "video/avc", 1920, 1080, 48_000)
+                : new MediaMetadata(mediaFile.getDuration(), 320_000, "audio/mpeg", 0, 0, 44_100);
+            mediaFiles.set(i, mediaFile.withMetadata(metadata, mediaFile.getSize(), 1_700_000_000_000L + i));
+        }
+        return mediaFiles;
+    }
+
+    static MediaFile mediaFile(Random random, int index) {
+        boolean video = random.nextInt(4) == 0;
+        String name = WORDS[random.nextInt(WORDS.length)] + "_" + WORDS[random.nextInt(WORDS.length)]
+            + "_" + index + (video ? ".mp4" : ".mp3");
+        return new MediaFile(
+            new UUID(random.nextLong(), random.nextLong()).toString(),
+            name,
+            "content://com.android.providers.media.documents/document/"
+                + (video ? "video" : "audio") + "%3A" + (100000 + index),
+            video ? MediaType.VIDEO : MediaType.AUDIO,
+            random.nextInt(video ? 3_600_000 : 600_000),
+            video ? random.nextInt(Integer.MAX_VALUE) : random.nextInt(20_000_000)
+        );
+    }
+}
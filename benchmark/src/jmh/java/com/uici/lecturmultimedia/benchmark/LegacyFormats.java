@@ -0,0 +1,60 @@
+package com.uici.lecturmultimedia.benchmark;
+
+import android.os.Parcel;
+import com.uici.lecturmultimedia.MediaFile;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+// Writers for the formats used before the compact ones: the parcel layout with the type as
+// a string and no metadata, and library records of type PUT_EXTENDED. The current readers
+// must still accept both.
+final class LegacyFormats {
+    private static final int STORE_MAGIC = 0x4D4C4942;
+    private static final int STORE_VERSION = 1;
+    private static final byte OP_PUT_EXTENDED = 3;
+
+    private LegacyFormats() {
+    }
+
+    static void writeParcel(Parcel dest, MediaFile mediaFile) {
+        dest.writeString(mediaFile.getId());
+        dest.writeString(mediaFile.getName());
+        dest.writeString(mediaFile.getPath());
+        dest.writeString(mediaFile.getType().getValue());
+        dest.writeLong(mediaFile.getDuration());
+        dest.writeLong(mediaFile.getSize());
+    }
+
+    static void writeStore(File file, List<MediaFile> mediaFiles) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(STORE_MAGIC);
+            out.writeInt(STORE_VERSION);
+            for (MediaFile mediaFile : mediaFiles) {
+                out.writeByte(OP_PUT_EXTENDED);
+                out.writeUTF(mediaFile.getId());
+                writeNullableString(out, mediaFile.getName());
+                writeNullableString(out, mediaFile.getPath());
+                writeNullableString(out, mediaFile.getType().getValue());
+                out.writeLong(mediaFile.getDuration());
+                out.writeLong(mediaFile.getSize());
+                out.writeLong(mediaFile.getLastModified());
+                out.writeInt(mediaFile.getBitrate());
+                writeNullableString(out, mediaFile.getCodec());
+                out.writeInt(mediaFile.getWidth());
+                out.writeInt(mediaFile.getHeight());
+                out.writeInt(mediaFile.getSampleRate());
+            }
+        }
+    }
+
+    private static void writeNullableString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package com.uici.lecturmultimedia.benchmark;
+
+import com.uici.lecturmultimedia.LibraryIndex;
+import com.uici.lecturmultimedia.MediaFile;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// One keystroke of a search over a library of the given size: the indexed query against
+// rescanning and re-sorting the whole list, plus the one-off cost of building the index.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LibraryIndexBenchmark {
+    private static final LibraryIndex.Query PREFIX = new LibraryIndex.Query(
+        "se", LibraryIndex.TypeFilter.ALL, LibraryIndex.SortOrder.ADDED);
+    private static final LibraryIndex.Query TOKENS = new LibraryIndex.Query(
+        "remix liv", LibraryIndex.TypeFilter.ALL, LibraryIndex.SortOrder.NAME);
+    private static final LibraryIndex.Query VIDEO_BY_SIZE = new LibraryIndex.Query(
+        "", LibraryIndex.TypeFilter.VIDEO, LibraryIndex.SortOrder.SIZE);
+
+    @Param({"10000", "100000"})
+    public int size;
+
+    private List<MediaFile> library;
+    private LibraryIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        library = BenchmarkData.library(size);
+        index = build();
+    }
+
+    @Benchmark
+    public LibraryIndex build() {
+        LibraryIndex.Builder builder = new LibraryIndex.Builder();
+        for (MediaFile mediaFile : library) {
+            builder.add(mediaFile);
+        }
+        return builder.build(0);
+    }
+
+    @Benchmark
+    public int[] indexedPrefix() {
+        return index.search(PREFIX, () -> false);
+    }
+
+    @Benchmark
+    public int[] indexedTokensByName() {
+        return index.search(TOKENS, () -> false);
+    }
+
+    @Benchmark
+    public int[] indexedVideoBySize() {
+        return index.search(VIDEO_BY_SIZE, () -> false);
+    }
+
+    @Benchmark
+    public List<MediaFile> scanTokensByName() {
+        List<MediaFile> result = new ArrayList<>();
+        for (MediaFile mediaFile : library) {
+            String name = mediaFile.getName().toLowerCase(Locale.ROOT);
+            if (name.contains("remix") && name.contains("liv")) {
+                result.add(mediaFile);
+            }
+        }
+        result.sort(Comparator.comparing(mediaFile -> mediaFile.getName().toLowerCase(Locale.ROOT)));
+        return result;
+    }
+
+    @Benchmark
+    public List<MediaFile> scanVideoBySize() {
+        List<MediaFile> result = new ArrayList<>();
+        for (MediaFile mediaFile : library) {
+            if (mediaFile.isVideo()) {
+                result.add(mediaFile);
+            }
+        }
+        result.sort((a, b) -> Long.compare(b.getSize(), a.getSize()));
+        return result;
+    }
+}
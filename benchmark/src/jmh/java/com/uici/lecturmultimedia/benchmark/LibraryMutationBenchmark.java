@@ -0,0 +1,94 @@
+package com.uici.lecturmultimedia.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.uici.lecturmultimedia.MediaFile;
+import com.uici.lecturmultimedia.MediaLibraryStore;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Cost of adding then deleting one file in a library of the given size. The store's
+// per-operation cost should stay flat; the legacy read-modify-write of the JSON blob
+// and the list copy grow with the library.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LibraryMutationBenchmark {
+    private static final Type LIST_TYPE = new TypeToken<ArrayList<MediaFile>>() {}.getType();
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private final Gson gson = new Gson();
+    private final Random random = new Random(7);
+    private List<MediaFile> library;
+    private String json;
+    private File dir;
+    private MediaLibraryStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        library = BenchmarkData.library(size);
+        json = gson.toJson(library);
+        dir = Files.createTempDirectory("library-mutation").toFile();
+        store = new MediaLibraryStore(new File(dir, "media_library.log"));
+        store.replaceAll(library);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public boolean storeAddDelete() throws IOException {
+        MediaFile mediaFile = BenchmarkData.mediaFile(random, size);
+        store.put(mediaFile);
+        return store.delete(mediaFile.getId());
+    }
+
+    @Benchmark
+    public MediaFile storeLookup() throws IOException {
+        return store.get(library.get(random.nextInt(size)).getId());
+    }
+
+    @Benchmark
+    public String legacyBlobAddDelete() {
+        MediaFile mediaFile = BenchmarkData.mediaFile(random, size);
+        List<MediaFile> mediaFiles = gson.fromJson(json, LIST_TYPE);
+        mediaFiles.add(mediaFile);
+        String added = gson.toJson(mediaFiles);
+        mediaFiles = gson.fromJson(added, LIST_TYPE);
+        mediaFiles.removeIf(file -> file.getId().equals(mediaFile.getId()));
+        return gson.toJson(mediaFiles);
+    }
+
+    @Benchmark
+    public List<MediaFile> listSnapshotAddDelete() {
+        MediaFile mediaFile = BenchmarkData.mediaFile(random, size);
+        List<MediaFile> mediaFiles = new ArrayList<>(library);
+        mediaFiles.add(mediaFile);
+        mediaFiles.removeIf(file -> file.getId().equals(mediaFile.getId()));
+        return mediaFiles;
+    }
+}
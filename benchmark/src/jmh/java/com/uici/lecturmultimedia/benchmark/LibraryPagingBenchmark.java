@@ -0,0 +1,82 @@
+package com.uici.lecturmultimedia.benchmark;
+
+import com.uici.lecturmultimedia.MediaFile;
+import com.uici.lecturmultimedia.MediaFilePager;
+import com.uici.lecturmultimedia.MediaLibraryStore;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Cost of getting the first screen of the list out of a library of the given size: opening
+// the store and reading the first page, against materializing every entry as the list used
+// to. Run with -prof gc, the allocation of the paged path should not grow with the library.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LibraryPagingBenchmark {
+    @Param({"1000", "100000"})
+    public int size;
+
+    private final Random random = new Random(7);
+    private File dir;
+    private File file;
+    private MediaLibraryStore store;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("library-paging").toFile();
+        file = new File(dir, "media_library.log");
+        MediaLibraryStore writer = new MediaLibraryStore(file);
+        writer.replaceAll(BenchmarkData.library(size));
+        writer.close();
+        store = new MediaLibraryStore(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        store.close();
+        for (File f : dir.listFiles()) {
+            f.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public List<MediaFile> openAndFirstPage() throws IOException {
+        MediaLibraryStore opened = new MediaLibraryStore(file);
+        try {
+            return opened.getRange(0, MediaFilePager.PAGE_SIZE);
+        } finally {
+            opened.close();
+        }
+    }
+
+    @Benchmark
+    public List<MediaFile> openAndLoadAll() throws IOException {
+        MediaLibraryStore opened = new MediaLibraryStore(file);
+        try {
+            return opened.getAll();
+        } finally {
+            opened.close();
+        }
+    }
+
+    // One page anywhere in the library, what a fling costs per page.
+    @Benchmark
+    public List<MediaFile> randomPage() throws IOException {
+        return store.getRange(random.nextInt(size), MediaFilePager.PAGE_SIZE);
+    }
+}
@@ -0,0 +1,84 @@
+package com.uici.lecturmultimedia.benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.uici.lecturmultimedia.MediaFile;
+import com.uici.lecturmultimedia.MediaLibraryStore;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Whole-library load and save: the legacy Gson blob against the library store.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LibrarySerializationBenchmark {
+    private static final Type LIST_TYPE = new TypeToken<ArrayList<MediaFile>>() {}.getType();
+
+    @Param({"100", "10000", "100000"})
+    public int size;
+
+    private final Gson gson = new Gson();
+    private List<MediaFile> library;
+    private String json;
+    private File dir;
+    private File storeFile;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        library = BenchmarkData.library(size);
+        json = gson.toJson(library);
+        dir = Files.createTempDirectory("library-serialization").toFile();
+        storeFile = new File(dir, "media_library.log");
+        MediaLibraryStore store = new MediaLibraryStore(storeFile);
+        store.replaceAll(library);
+        store.close();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public String gsonSerialize() {
+        return gson.toJson(library);
+    }
+
+    @Benchmark
+    public List<MediaFile> gsonDeserialize() {
+        return gson.fromJson(json, LIST_TYPE);
+    }
+
+    @Benchmark
+    public int storeLoad() throws IOException {
+        MediaLibraryStore store = new MediaLibraryStore(storeFile);
+        int loaded = store.size();
+        store.close();
+        return loaded;
+    }
+
+    @Benchmark
+    public void storeCompact() throws IOException {
+        MediaLibraryStore store = new MediaLibraryStore(storeFile);
+        store.compact();
+        store.close();
+    }
+}
@@ -0,0 +1,114 @@
+package com.uici.lecturmultimedia.benchmark;
+
+import android.os.Parcel;
+import com.uici.lecturmultimedia.MediaFile;
+import com.uici.lecturmultimedia.MediaFormatter;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+// Per-item costs on the list bind path. Run with the gc profiler (enabled in
+// build.gradle) to read allocated bytes per operation.
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MediaFileBenchmark {
+    // Rows bound in turn, as when scrolling back over a screen already seen.
+    private static final int ROWS = 64;
+    private static final int THUMBNAIL_SIZE = 144;
+
+    private MediaFile mediaFile;
+    private final MediaFile[] rows = new MediaFile[ROWS];
+    private final TextSink name = new TextSink();
+    private final TextSink type = new TextSink();
+    private final TextSink size = new TextSink();
+    private final TextSink duration = new TextSink();
+    private int row;
+    private final StringBuilder sb = new StringBuilder(16);
+    private final Parcel parcel = Parcel.obtain();
+
+    @Setup
+    public void setUp() {
+        mediaFile = BenchmarkData.mediaFile(new Random(3), 0);
+        mediaFile.getFormattedSize();
+        mediaFile.getFormattedDuration();
+        Random random = new Random(5);
+        for (int i = 0; i < ROWS; i++) {
+            rows[i] = BenchmarkData.mediaFile(random, i);
+            bind(rows[i]);
+        }
+    }
+
+    // What MediaFileAdapter's holder does with a row once its page is loaded, with the views
+    // reduced to the text they are given and the thumbnail to its memory cache key.
+    // gc.alloc.rate.norm is expected to stay at 0 B/op.
+    @Benchmark
+    public String bindRow() {
+        row = (row + 1) % ROWS;
+        return bind(rows[row]);
+    }
+
+    private String bind(MediaFile mediaFile) {
+        name.setText(mediaFile.getName());
+        type.setText(mediaFile.isAudio() ? "Audio" : "Video");
+        size.setText(mediaFile.getFormattedSize());
+        duration.setText(mediaFile.getDuration() > 0 ? mediaFile.getFormattedDuration() : "--:--");
+        return mediaFile.getThumbnailKey(THUMBNAIL_SIZE);
+    }
+
+    @Benchmark
+    public String formattedSizeMemoized() {
+        return mediaFile.getFormattedSize();
+    }
+
+    @Benchmark
+    public String formattedDurationMemoized() {
+        return mediaFile.getFormattedDuration();
+    }
+
+    @Benchmark
+    public StringBuilder formatSizeIntoBuilder() {
+        sb.setLength(0);
+        return MediaFormatter.appendSize(sb, mediaFile.getSize());
+    }
+
+    @Benchmark
+    public StringBuilder formatDurationIntoBuilder() {
+        sb.setLength(0);
+        return MediaFormatter.appendDuration(sb, mediaFile.getDuration());
+    }
+
+    @Benchmark
+    public String legacyStringFormatSize() {
+        return String.format("%.2f MB", mediaFile.getSize() / (1024.0 * 1024.0));
+    }
+
+    @Benchmark
+    public String legacyStringFormatDuration() {
+        long seconds = mediaFile.getDuration() / 1000;
+        return String.format("%02d:%02d", seconds / 60 % 60, seconds % 60);
+    }
+
+    @Benchmark
+    public MediaFile parcelRoundTrip() {
+        parcel.recycle();
+        mediaFile.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        return MediaFile.CREATOR.createFromParcel(parcel);
+    }
+
+    // Stands in for a TextView, which keeps the CharSequence it is given.
+    private static final class TextSink {
+        CharSequence text;
+
+        void setText(CharSequence text) {
+            this.text = text;
+        }
+    }
+}
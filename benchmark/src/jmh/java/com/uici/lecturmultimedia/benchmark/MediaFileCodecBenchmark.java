@@ -0,0 +1,157 @@
+package com.uici.lecturmultimedia.benchmark;
+
+import android.os.Parcel;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import com.uici.lecturmultimedia.MediaFile;
+import com.uici.lecturmultimedia.MediaLibraryStore;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+// Encoding and decoding a whole library, half of it probed, in the compact parcel layout and
+// library records against the formats they replace. The byte sizes of each are printed at
+// setup; the legacy decodes go through the current readers, which must still accept them.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MediaFileCodecBenchmark {
+    private static final Type LIST_TYPE = new TypeToken<ArrayList<MediaFile>>() {}.getType();
+
+    @Param({"100000"})
+    public int size;
+
+    private final Gson gson = new Gson();
+    private final Parcel parcel = Parcel.obtain();
+    private List<MediaFile> library;
+    private Parcel compactParcel;
+    private Parcel legacyParcel;
+    private String json;
+    private File dir;
+    private File compactStore;
+    private File legacyStore;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        library = BenchmarkData.probedLibrary(size);
+        compactParcel = Parcel.obtain();
+        legacyParcel = Parcel.obtain();
+        for (MediaFile mediaFile : library) {
+            mediaFile.writeToParcel(compactParcel, 0);
+            LegacyFormats.writeParcel(legacyParcel, mediaFile);
+        }
+        json = gson.toJson(library);
+
+        dir = Files.createTempDirectory("media-file-codec").toFile();
+        compactStore = new File(dir, "compact.log");
+        MediaLibraryStore store = new MediaLibraryStore(compactStore);
+        store.replaceAll(library);
+        store.close();
+        legacyStore = new File(dir, "legacy.log");
+        LegacyFormats.writeStore(legacyStore, library);
+
+        System.out.printf("%nbytes per entry: parcel %d (legacy %d), store %d (legacy %d), json %d%n",
+            compactParcel.dataSize() / size, legacyParcel.dataSize() / size,
+            compactStore.length() / size, legacyStore.length() / size, json.length() / size);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        for (File file : dir.listFiles()) {
+            file.delete();
+        }
+        dir.delete();
+    }
+
+    @Benchmark
+    public int parcelWrite() {
+        parcel.recycle();
+        for (MediaFile mediaFile : library) {
+            mediaFile.writeToParcel(parcel, 0);
+        }
+        return parcel.dataSize();
+    }
+
+    @Benchmark
+    public int parcelWriteLegacy() {
+        parcel.recycle();
+        for (MediaFile mediaFile : library) {
+            LegacyFormats.writeParcel(parcel, mediaFile);
+        }
+        return parcel.dataSize();
+    }
+
+    @Benchmark
+    public MediaFile parcelRead() {
+        return readAll(compactParcel);
+    }
+
+    @Benchmark
+    public MediaFile parcelReadLegacy() {
+        return readAll(legacyParcel);
+    }
+
+    @Benchmark
+    public void storeWrite() throws IOException {
+        MediaLibraryStore store = new MediaLibraryStore(new File(dir, "write.log"));
+        store.replaceAll(library);
+        store.close();
+    }
+
+    @Benchmark
+    public void storeWriteLegacy() throws IOException {
+        LegacyFormats.writeStore(new File(dir, "write-legacy.log"), library);
+    }
+
+    @Benchmark
+    public List<MediaFile> storeRead() throws IOException {
+        return readStore(compactStore);
+    }
+
+    // Opening a legacy log upgrades it in place, so each read gets a fresh copy and includes
+    // that one-time rewrite.
+    @Benchmark
+    public List<MediaFile> storeReadLegacy() throws IOException {
+        File copy = new File(dir, "read-legacy.log");
+        Files.copy(legacyStore.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return readStore(copy);
+    }
+
+    @Benchmark
+    public List<MediaFile> jsonRead() {
+        return gson.fromJson(json, LIST_TYPE);
+    }
+
+    private MediaFile readAll(Parcel source) {
+        source.setDataPosition(0);
+        MediaFile last = null;
+        for (int i = 0; i < size; i++) {
+            last = MediaFile.CREATOR.createFromParcel(source);
+        }
+        return last;
+    }
+
+    private static List<MediaFile> readStore(File file) throws IOException {
+        MediaLibraryStore store = new MediaLibraryStore(file);
+        try {
+            return store.getAll();
+        } finally {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package android.os;
+
+import java.util.Arrays;
+
+// Plain-JVM stand-in for android.os.Parcel. It keeps the framework's wire layout for the
+// types MediaFile uses (4-byte aligned ints, 8-byte longs, length-prefixed UTF-16 strings
+// padded to 4 bytes) so byte sizes and copy costs are representative.
+public final class Parcel {
+    private byte[] data = new byte[256];
+    private int size;
+    private int position;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        size = 0;
+        position = 0;
+    }
+
+    public int dataSize() {
+        return size;
+    }
+
+    public int dataPosition() {
+        return position;
+    }
+
+    public void setDataPosition(int pos) {
+        position = pos;
+    }
+
+    public byte[] marshall() {
+        return Arrays.copyOf(data, size);
+    }
+
+    public void writeInt(int val) {
+        ensureCapacity(4);
+        data[position++] = (byte) val;
+        data[position++] = (byte) (val >>> 8);
+        data[position++] = (byte) (val >>> 16);
+        data[position++] = (byte) (val >>> 24);
+        size = Math.max(size, position);
+    }
+
+    public int readInt() {
+        int val = (data[position] & 0xff)
+            | (data[position + 1] & 0xff) << 8
+            | (data[position + 2] & 0xff) << 16
+            | (data[position + 3] & 0xff) << 24;
+        position += 4;
+        return val;
+    }
+
+    public void writeLong(long val) {
+        writeInt((int) val);
+        writeInt((int) (val >>> 32));
+    }
+
+    public long readLong() {
+        long low = readInt() & 0xffffffffL;
+        long high = readInt() & 0xffffffffL;
+        return low | high << 32;
+    }
+
+    public void writeByte(byte val) {
+        writeInt(val);
+    }
+
+    public byte readByte() {
+        return (byte) readInt();
+    }
+
+    public void writeString(String val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        int length = val.length();
+        writeInt(length);
+        // UTF-16 chars plus a terminating zero char, padded to a multiple of 4 bytes.
+        int bytes = ((length + 1) * 2 + 3) & ~3;
+        ensureCapacity(bytes);
+        for (int i = 0; i < length; i++) {
+            char c = val.charAt(i);
+            data[position + i * 2] = (byte) c;
+            data[position + i * 2 + 1] = (byte) (c >>> 8);
+        }
+        Arrays.fill(data, position + length * 2, position + bytes, (byte) 0);
+        position += bytes;
+        size = Math.max(size, position);
+    }
+
+    public String readString() {
+        int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ((data[position + i * 2] & 0xff) | (data[position + i * 2 + 1] & 0xff) << 8);
+        }
+        position += ((length + 1) * 2 + 3) & ~3;
+        return new String(chars);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (position + bytes > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, position + bytes));
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package android.os;
+
+// Plain-JVM stand-in for android.os.Trace: sections cost nothing outside a device trace.
+public final class Trace {
+    private Trace() {
+    }
+
+    public static void beginSection(String sectionName) {
+    }
+
+    public static void endSection() {
+    }
+}
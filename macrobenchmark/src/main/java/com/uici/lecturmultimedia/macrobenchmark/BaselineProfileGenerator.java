@@ -0,0 +1,28 @@
+package com.uici.lecturmultimedia.macrobenchmark;
+
+import androidx.benchmark.macro.junit4.BaselineProfileRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import kotlin.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+// Records the classes and methods used from a cold start through the list to playback.
+// Run with ./gradlew :app:generateBaselineProfile; the result is written to
+// app/src/release/generated/baselineProfiles and shipped by profileinstaller.
+@RunWith(AndroidJUnit4.class)
+public class BaselineProfileGenerator {
+
+    @Rule
+    public BaselineProfileRule baselineProfileRule = new BaselineProfileRule();
+
+    @Test
+    public void startListAndPlay() {
+        baselineProfileRule.collect(MediaFlows.PACKAGE, 15, 3, null, true, false, line -> true, scope -> {
+            MediaFlows.startAndWaitForList(scope);
+            MediaFlows.scrollList(scope);
+            MediaFlows.playFirstItem(scope);
+            return Unit.INSTANCE;
+        });
+    }
+}
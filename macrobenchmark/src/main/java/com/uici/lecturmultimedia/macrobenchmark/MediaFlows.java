@@ -0,0 +1,60 @@
+package com.uici.lecturmultimedia.macrobenchmark;
+
+import androidx.benchmark.macro.MacrobenchmarkScope;
+import androidx.test.uiautomator.By;
+import androidx.test.uiautomator.BySelector;
+import androidx.test.uiautomator.Direction;
+import androidx.test.uiautomator.UiDevice;
+import androidx.test.uiautomator.UiObject2;
+import androidx.test.uiautomator.Until;
+
+// The user journeys shared by the benchmarks and the profile generator. They expect a
+// library that is already populated on the device; with an empty one only startup runs.
+final class MediaFlows {
+    static final String PACKAGE = "com.uici.lecturmultimedia";
+
+    private static final long TIMEOUT_MS = 5_000;
+
+    private MediaFlows() {
+    }
+
+    static void startAndWaitForList(MacrobenchmarkScope scope) {
+        scope.pressHome();
+        scope.startActivityAndWait();
+        UiDevice device = scope.getDevice();
+        device.wait(Until.hasObject(By.res(PACKAGE, "recyclerViewMediaFiles")
+            .hasDescendant(By.res(PACKAGE, "textViewFileName"))), TIMEOUT_MS);
+    }
+
+    static void scrollList(MacrobenchmarkScope scope) {
+        UiDevice device = scope.getDevice();
+        UiObject2 list = device.findObject(By.res(PACKAGE, "recyclerViewMediaFiles"));
+        if (list == null) {
+            return;
+        }
+        // Keeps the gesture clear of the system navigation area.
+        list.setGestureMargin(device.getDisplayWidth() / 5);
+        for (int i = 0; i < 3; i++) {
+            list.fling(Direction.DOWN);
+            device.waitForIdle();
+        }
+        list.fling(Direction.UP);
+        device.waitForIdle();
+    }
+
+    static void playFirstItem(MacrobenchmarkScope scope) {
+        UiDevice device = scope.getDevice();
+        UiObject2 play = device.findObject(By.res(PACKAGE, "imageButtonPlay"));
+        if (play == null) {
+            return;
+        }
+        play.click();
+        BySelector playButton = By.res(PACKAGE, "buttonPlayPause");
+        if (device.wait(Until.hasObject(playButton), TIMEOUT_MS)) {
+            device.findObject(playButton).click();
+            device.waitForIdle();
+            device.pressBack();
+            device.waitForIdle();
+        }
+    }
+}
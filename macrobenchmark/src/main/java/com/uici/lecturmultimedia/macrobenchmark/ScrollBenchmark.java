@@ -0,0 +1,43 @@
+package com.uici.lecturmultimedia.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.FrameTimingMetric;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Collections;
+import kotlin.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+// Frame durations and overruns while flinging through the media list.
+@RunWith(AndroidJUnit4.class)
+public class ScrollBenchmark {
+    private static final int ITERATIONS = 10;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void scrollNoCompilation() {
+        scroll(new CompilationMode.None());
+    }
+
+    @Test
+    public void scrollBaselineProfile() {
+        scroll(new CompilationMode.Partial());
+    }
+
+    private void scroll(CompilationMode compilationMode) {
+        benchmarkRule.measureRepeated(MediaFlows.PACKAGE,
+            Collections.singletonList(new FrameTimingMetric()), compilationMode, StartupMode.WARM,
+            ITERATIONS, scope -> {
+                MediaFlows.startAndWaitForList(scope);
+                return Unit.INSTANCE;
+            }, scope -> {
+                MediaFlows.scrollList(scope);
+                return Unit.INSTANCE;
+            });
+    }
+}
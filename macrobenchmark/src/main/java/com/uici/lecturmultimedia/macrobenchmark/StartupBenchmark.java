@@ -0,0 +1,54 @@
+package com.uici.lecturmultimedia.macrobenchmark;
+
+import androidx.benchmark.macro.CompilationMode;
+import androidx.benchmark.macro.StartupMode;
+import androidx.benchmark.macro.StartupTimingMetric;
+import androidx.benchmark.macro.junit4.MacrobenchmarkRule;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.Collections;
+import kotlin.Unit;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+// Time to initial and fully drawn display (reportFullyDrawn after the first list frame),
+// without any AOT compilation and with the baseline profile, for cold and warm starts.
+@RunWith(AndroidJUnit4.class)
+public class StartupBenchmark {
+    private static final int ITERATIONS = 10;
+
+    @Rule
+    public MacrobenchmarkRule benchmarkRule = new MacrobenchmarkRule();
+
+    @Test
+    public void coldStartNoCompilation() {
+        startup(new CompilationMode.None(), StartupMode.COLD);
+    }
+
+    @Test
+    public void coldStartBaselineProfile() {
+        startup(new CompilationMode.Partial(), StartupMode.COLD);
+    }
+
+    @Test
+    public void warmStartNoCompilation() {
+        startup(new CompilationMode.None(), StartupMode.WARM);
+    }
+
+    @Test
+    public void warmStartBaselineProfile() {
+        startup(new CompilationMode.Partial(), StartupMode.WARM);
+    }
+
+    private void startup(CompilationMode compilationMode, StartupMode startupMode) {
+        benchmarkRule.measureRepeated(MediaFlows.PACKAGE,
+            Collections.singletonList(new StartupTimingMetric()), compilationMode, startupMode,
+            ITERATIONS, scope -> {
+                scope.pressHome();
+                return Unit.INSTANCE;
+            }, scope -> {
+                MediaFlows.startAndWaitForList(scope);
+                return Unit.INSTANCE;
+            });
+    }
+}